@@ -0,0 +1,148 @@
+package org.redquark.hotspring.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.redquark.hotspring.commons.configs.ExecutorConfig;
+import org.redquark.hotspring.commons.configs.PoolConfig;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
+import org.redquark.hotspring.document.configs.ExtractionDownloaderConfig;
+import org.redquark.hotspring.document.process.ArchiveDecoder;
+import org.redquark.hotspring.document.process.DocumentUnzipper;
+import org.redquark.hotspring.document.process.ZstdArchiveDecoder;
+import org.redquark.hotspring.uploader.domains.Document;
+import org.redquark.hotspring.uploader.process.ContentAwareCompressionPolicy;
+import org.redquark.hotspring.uploader.process.DocumentZipper;
+import org.redquark.hotspring.uploader.process.ParallelZipper;
+import org.redquark.hotspring.uploader.process.ZstdArchiveEncoder;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Compares the archive formats on the same corpus. The codecs run with the settings of the yml:
+//   zip           DocumentZipper on one thread, the downloader inflating the stream as it arrives
+//   zip-parallel  ParallelZipper on every core, the downloader inflating entries on the entry-inflater pool
+//   zstd          tar through zstd with a worker per core, decoded as one stream
+// The megabytes counter is the size of the corpus, so its rate is the plain MB/s of each codec;
+// the compression ratio is printed once per trial.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ArchiveCodecBenchmark {
+
+    @Param({"zip", "zip-parallel", "zstd"})
+    public String codec;
+
+    @Param({"256MB"})
+    public String corpusSize;
+
+    private List<Document> corpus;
+    private long corpusBytes;
+    private byte[] archive;
+    private Encoder encoder;
+    private ArchiveDecoder decoder;
+    private ForkJoinPool deflaterPool;
+    private ExecutorRegistry executorRegistry;
+    private Path spoolDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = Corpus.generate(DataSize.parse(corpusSize).toBytes(), 42);
+        corpusBytes = Corpus.size(corpus);
+        BenchmarkUploaderConfig uploaderConfig = new BenchmarkUploaderConfig();
+        ContentAwareCompressionPolicy compressionPolicy = new ContentAwareCompressionPolicy(uploaderConfig);
+        int parallelism = Runtime.getRuntime().availableProcessors();
+
+        PoolConfig inflaterPool = new PoolConfig();
+        inflaterPool.setSize(parallelism);
+        ExecutorConfig executorConfig = new ExecutorConfig();
+        executorConfig.getPools().put("entry-inflater", inflaterPool);
+        executorRegistry = new ExecutorRegistry(executorConfig, new SimpleMeterRegistry());
+        spoolDirectory = Files.createTempDirectory("codec-benchmark-");
+        ExtractionDownloaderConfig extractionConfig = new ExtractionDownloaderConfig();
+        extractionConfig.setSpoolDirectory(spoolDirectory.toString());
+        extractionConfig.setMaxEntriesInFlight(2 * parallelism);
+
+        switch (codec) {
+            case "zip" -> {
+                DocumentZipper zipper = new DocumentZipper(uploaderConfig, compressionPolicy);
+                encoder = target -> zipper.archive(corpus, target);
+                extractionConfig.setParallel(false);
+                decoder = new DocumentUnzipper(extractionConfig, executorRegistry);
+            }
+            case "zip-parallel" -> {
+                deflaterPool = new ForkJoinPool(parallelism);
+                ParallelZipper zipper = new ParallelZipper(deflaterPool, compressionPolicy,
+                        (int) uploaderConfig.getArchiveConfig().getBlockSize().toBytes());
+                encoder = target -> zipper.zip(corpus, target);
+                extractionConfig.setParallel(true);
+                decoder = new DocumentUnzipper(extractionConfig, executorRegistry);
+            }
+            case "zstd" -> {
+                ZstdArchiveEncoder zstdEncoder = new ZstdArchiveEncoder(uploaderConfig);
+                encoder = target -> zstdEncoder.archive(corpus, target);
+                decoder = new ZstdArchiveDecoder();
+            }
+            default -> throw new IllegalArgumentException("Unknown codec " + codec);
+        }
+
+        ByteArrayOutputStream archiveStream = new ByteArrayOutputStream((int) Math.min(corpusBytes, Integer.MAX_VALUE - 8));
+        encoder.encode(archiveStream);
+        archive = archiveStream.toByteArray();
+        System.out.printf("%n%s: %d documents, %d bytes archived into %d bytes (ratio %.3f)%n", codec, corpus.size(),
+                corpusBytes, archive.length, (double) archive.length / corpusBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (deflaterPool != null) {
+            deflaterPool.shutdownNow();
+        }
+        executorRegistry.get("entry-inflater").shutdownNow();
+        Files.deleteIfExists(spoolDirectory);
+    }
+
+    @Benchmark
+    public void encode(Throughput throughput) throws IOException {
+        encoder.encode(NullOutputStream.NULL_OUTPUT_STREAM);
+        throughput.megabytes += corpusBytes / (double) (1 << 20);
+    }
+
+    @Benchmark
+    public int decode(Throughput throughput, Blackhole blackhole) {
+        int entries = decoder.extract(new ByteArrayInputStream(archive), Map.of(), blackhole::consume);
+        throughput.megabytes += corpusBytes / (double) (1 << 20);
+        return entries;
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+
+        void encode(OutputStream target) throws IOException;
+    }
+}
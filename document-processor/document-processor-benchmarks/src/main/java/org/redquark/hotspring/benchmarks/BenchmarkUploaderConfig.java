@@ -0,0 +1,58 @@
+package org.redquark.hotspring.benchmarks;
+
+import org.redquark.hotspring.uploader.configs.ArchiveConfig;
+import org.redquark.hotspring.uploader.configs.CompressionConfig;
+import org.redquark.hotspring.uploader.configs.CryptoConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.domains.ArchiveFormat;
+import org.redquark.hotspring.uploader.domains.PGPCompressionAlgorithm;
+import org.redquark.hotspring.uploader.domains.PGPSymmetricAlgorithm;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+// Outside of Spring every getter of DocumentUploaderConfig returns a new object, so the benchmarks
+// hand the components one shared instance of each config, filled with the defaults of the yml;
+// the crypto config leaves out armor and compression so that only the cipher is measured
+class BenchmarkUploaderConfig extends DocumentUploaderConfig {
+
+    private final ArchiveConfig archiveConfig = new ArchiveConfig();
+    private final CompressionConfig compressionConfig = new CompressionConfig();
+    private final CryptoConfig cryptoConfig = new CryptoConfig();
+
+    BenchmarkUploaderConfig() {
+        archiveConfig.setFormat(ArchiveFormat.ZIP);
+        archiveConfig.setParallel(false);
+        archiveConfig.setParallelism(0);
+        archiveConfig.setBlockSize(DataSize.ofMegabytes(1));
+        archiveConfig.setCompressionLevel(6);
+        archiveConfig.setZstdLevel(3);
+        compressionConfig.setSampleSize(DataSize.ofKilobytes(4));
+        compressionConfig.setStoredExtensions(List.of("jpg", "jpeg", "png", "gif", "pdf", "zip", "gz", "bz2", "xz", "7z",
+                "rar", "zst", "mp3", "mp4", "docx", "xlsx", "pptx"));
+        compressionConfig.setStoredEntropyThreshold(7.5);
+        compressionConfig.setFastEntropyThreshold(6.5);
+        compressionConfig.setFastLevel(1);
+        cryptoConfig.setIsArmored(false);
+        cryptoConfig.setSymmetricAlgorithm(PGPSymmetricAlgorithm.AES_256);
+        cryptoConfig.setCompressionAlgorithm(PGPCompressionAlgorithm.UNCOMPRESSED);
+        cryptoConfig.setCipherProvider("SunJCE");
+        cryptoConfig.setEnabled(true);
+        cryptoConfig.setBufferSize(DataSize.ofKilobytes(64));
+    }
+
+    @Override
+    public ArchiveConfig getArchiveConfig() {
+        return archiveConfig;
+    }
+
+    @Override
+    public CompressionConfig getCompressionConfig() {
+        return compressionConfig;
+    }
+
+    @Override
+    public CryptoConfig getCryptoConfig() {
+        return cryptoConfig;
+    }
+}
@@ -0,0 +1,102 @@
+package org.redquark.hotspring.benchmarks;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.redquark.hotspring.uploader.configs.CryptoConfig;
+import org.redquark.hotspring.uploader.domains.PGPSymmetricAlgorithm;
+import org.redquark.hotspring.uploader.process.PGPEncryptor;
+import org.redquark.hotspring.uploader.process.PGPKeyService;
+import org.redquark.hotspring.uploader.process.RSAKeyPairGenerator;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Streams a payload through PGPEncryptor for every symmetric algorithm and cipher provider the
+// crypto config accepts. Armor and compression are off, so the rate is that of the cipher and the
+// integrity packet alone. SunJCE has no CAST5 or Camellia, which PGPEncryptor hands to BouncyCastle,
+// so those two only run on BC.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class CipherBenchmark {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    // symmetricAlgorithm/cipherProvider, since JMH crosses separate parameters
+    @Param({"CAST5/BC", "AES_128/BC", "AES_192/BC", "AES_256/BC", "CAMELLIA_256/BC",
+            "AES_128/SunJCE", "AES_192/SunJCE", "AES_256/SunJCE"})
+    public String cipher;
+
+    @Param({"1MB", "16MB", "256MB", "1GB"})
+    public String payloadSize;
+
+    private PGPEncryptor encryptor;
+    private long payloadBytes;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+
+    @Setup(Level.Trial)
+    public void setUp() throws GeneralSecurityException, PGPException, IOException {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        BenchmarkUploaderConfig uploaderConfig = new BenchmarkUploaderConfig();
+        CryptoConfig cryptoConfig = uploaderConfig.getCryptoConfig();
+        String[] algorithmAndProvider = cipher.split("/");
+        cryptoConfig.setSymmetricAlgorithm(PGPSymmetricAlgorithm.valueOf(algorithmAndProvider[0]));
+        cryptoConfig.setCipherProvider(algorithmAndProvider[1]);
+
+        // Only the session key is wrapped with RSA, once per payload, so its size hardly shows
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        PGPPublicKey publicKey = new JcaPGPKeyPair(PGPPublicKey.RSA_GENERAL, keyPairGenerator.generateKeyPair(), new Date())
+                .getPublicKey();
+        PGPKeyService keyService = new PGPKeyService(new RSAKeyPairGenerator(uploaderConfig), uploaderConfig) {
+            @Override
+            public PGPPublicKey getEncryptionKey() {
+                return publicKey;
+            }
+        };
+        encryptor = new PGPEncryptor(keyService, uploaderConfig);
+        payloadBytes = DataSize.parse(payloadSize).toBytes();
+        new Random(42).nextBytes(chunk);
+    }
+
+    @Benchmark
+    public void encrypt(Throughput throughput) throws IOException {
+        encrypt(payloadBytes);
+        throughput.megabytes += payloadBytes / (double) (1 << 20);
+    }
+
+    private void encrypt(long bytes) throws IOException {
+        try (OutputStream encryptedStream = encryptor.open("payload", NullOutputStream.NULL_OUTPUT_STREAM)) {
+            for (long written = 0; written < bytes; written += CHUNK_SIZE) {
+                encryptedStream.write(chunk, 0, (int) Math.min(CHUNK_SIZE, bytes - written));
+            }
+        }
+    }
+}
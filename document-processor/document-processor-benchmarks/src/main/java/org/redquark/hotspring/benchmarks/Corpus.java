@@ -0,0 +1,96 @@
+package org.redquark.hotspring.benchmarks;
+
+import org.redquark.hotspring.uploader.domains.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// A seeded mix of what users upload: prose, JSON exports and CSV reports that compress well,
+// and already compressed PDFs that the compression policy stores as they are
+final class Corpus {
+
+    private static final int MIN_DOCUMENT_SIZE = 16 * 1024;
+    private static final int MAX_DOCUMENT_SIZE = 2 * 1024 * 1024;
+    private static final String[] WORDS = ("the document archive upload session part shard manifest checksum "
+            + "customer invoice order payment account balance statement report quarterly annual total amount "
+            + "address city country region status pending approved rejected processed shipped delivered "
+            + "a of and to in is for on with as by at from that this be are was were it an or not")
+            .split(" ");
+
+    private Corpus() {
+    }
+
+    static List<Document> generate(long totalBytes, long seed) {
+        Random random = new Random(seed);
+        List<Document> documents = new ArrayList<>();
+        long generated = 0;
+        while (generated < totalBytes) {
+            int size = (int) Math.min(MIN_DOCUMENT_SIZE + random.nextInt(MAX_DOCUMENT_SIZE - MIN_DOCUMENT_SIZE), totalBytes - generated);
+            int kind = random.nextInt(20);
+            String name;
+            byte[] contents;
+            if (kind < 8) {
+                name = "notes-" + documents.size() + ".txt";
+                contents = text(random, size);
+            } else if (kind < 13) {
+                name = "export-" + documents.size() + ".json";
+                contents = json(random, size);
+            } else if (kind < 16) {
+                name = "report-" + documents.size() + ".csv";
+                contents = csv(random, size);
+            } else {
+                name = "scan-" + documents.size() + ".pdf";
+                contents = new byte[size];
+                random.nextBytes(contents);
+            }
+            documents.add(Document.builder().name(name).contents(contents).size(contents.length).build());
+            generated += contents.length;
+        }
+        return documents;
+    }
+
+    static long size(List<Document> documents) {
+        return documents.stream().mapToLong(Document::getSize).sum();
+    }
+
+    private static byte[] text(Random random, int size) {
+        StringBuilder builder = new StringBuilder(size + 64);
+        while (builder.length() < size) {
+            // Squaring the uniform draw makes a few words far more frequent than the rest, as in real prose
+            double draw = random.nextDouble();
+            builder.append(WORDS[(int) (draw * draw * WORDS.length)]).append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        return truncate(builder, size);
+    }
+
+    private static byte[] json(Random random, int size) {
+        StringBuilder builder = new StringBuilder(size + 256).append('[');
+        for (int id = 0; builder.length() < size; id++) {
+            builder.append("{\"id\":").append(id)
+                    .append(",\"customer\":\"").append(WORDS[random.nextInt(WORDS.length)]).append('-').append(random.nextInt(10_000))
+                    .append("\",\"amount\":").append(random.nextInt(1_000_000) / 100.0)
+                    .append(",\"status\":\"").append(WORDS[26 + random.nextInt(6)])
+                    .append("\"},\n");
+        }
+        return truncate(builder, size);
+    }
+
+    private static byte[] csv(Random random, int size) {
+        StringBuilder builder = new StringBuilder(size + 128).append("id,account,amount,balance,region\n");
+        for (int id = 0; builder.length() < size; id++) {
+            builder.append(id).append(',')
+                    .append(100_000 + random.nextInt(900_000)).append(',')
+                    .append(random.nextInt(100_000) / 100.0).append(',')
+                    .append(random.nextInt(10_000_000) / 100.0).append(',')
+                    .append(WORDS[21 + random.nextInt(4)]).append('\n');
+        }
+        return truncate(builder, size);
+    }
+
+    private static byte[] truncate(StringBuilder builder, int size) {
+        builder.setLength(size);
+        return builder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,99 @@
+package org.redquark.hotspring.commons.blobs;
+
+import org.redquark.hotspring.commons.domains.TransferDirection;
+import org.redquark.hotspring.commons.domains.TransferPlan;
+import org.redquark.hotspring.commons.transfers.TransferPlanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Reads a blob front to back with ranged reads, keeping a few blocks in flight ahead of the reader
+public class BlobInputStream extends InputStream {
+
+    private final BlobStore blobStore;
+    private final String key;
+    private final long contentLength;
+    private final int blockSize;
+    private final int blocksAhead;
+    private final TransferPlan plan;
+    private final TransferPlanner transferPlanner;
+    private final long start = System.nanoTime();
+    private final Deque<CompletableFuture<ByteBuffer>> pendingBlocks = new ArrayDeque<>();
+
+    private long nextOffset;
+    private ByteBuffer current = ByteBuffer.allocate(0);
+    private boolean recorded;
+
+    public BlobInputStream(BlobStore blobStore, String key, TransferPlan plan, TransferPlanner transferPlanner) {
+        this.blobStore = blobStore;
+        this.key = key;
+        this.contentLength = plan.getObjectSize();
+        this.blockSize = plan.getPartSize();
+        this.blocksAhead = plan.getConcurrency();
+        this.plan = plan;
+        this.transferPlanner = transferPlanner;
+        prefetch();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (!current.hasRemaining()) {
+            if (pendingBlocks.isEmpty()) {
+                if (!recorded) {
+                    recorded = true;
+                    transferPlanner.recordTransfer(key, plan, contentLength, System.nanoTime() - start);
+                }
+                return -1;
+            }
+            try {
+                current = pendingBlocks.poll().join();
+            } catch (CompletionException e) {
+                close();
+                throw new IOException("Could not read " + key, e.getCause());
+            }
+            prefetch();
+        }
+        int chunk = Math.min(len, current.remaining());
+        current.get(b, off, chunk);
+        return chunk;
+    }
+
+    @Override
+    public int available() {
+        return current.remaining();
+    }
+
+    @Override
+    public void close() {
+        pendingBlocks.forEach(block -> block.cancel(true));
+        pendingBlocks.clear();
+    }
+
+    private void prefetch() {
+        while (nextOffset < contentLength && pendingBlocks.size() < blocksAhead) {
+            int length = (int) Math.min(blockSize, contentLength - nextOffset);
+            long requestStart = System.nanoTime();
+            pendingBlocks.add(blobStore.getRange(key, nextOffset, length).whenComplete((block, e) -> {
+                if (e == null) {
+                    transferPlanner.recordRequest(TransferDirection.DOWNLOAD, length, System.nanoTime() - requestStart);
+                }
+            }));
+            nextOffset += length;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.redquark.hotspring.commons.blobs;
+
+import org.redquark.hotspring.commons.domains.BlobMetadata;
+import org.redquark.hotspring.commons.domains.BlobPage;
+import org.redquark.hotspring.commons.domains.BlobPart;
+import org.redquark.hotspring.commons.domains.BlobUpload;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+// Storage of one bucket. Every call returns at once; the futures complete when the backend is done,
+// so callers can keep many transfers in flight without holding a thread for each of them.
+public interface BlobStore {
+
+    int MAX_KEYS_PER_PAGE = 1000;
+
+    String getBucket();
+
+    CompletableFuture<Void> put(String key, ByteBuffer data, Map<String, String> metadata);
+
+    CompletableFuture<Void> put(String key, Path source, Map<String, String> metadata);
+
+    CompletableFuture<Optional<BlobMetadata>> head(String key);
+
+    CompletableFuture<ByteBuffer> getRange(String key, long offset, int length);
+
+    CompletableFuture<Void> download(String key, Path target);
+
+    // Lists at most MAX_KEYS_PER_PAGE blobs; with a delimiter, deeper keys are rolled up into common prefixes
+    CompletableFuture<BlobPage> list(String prefix, String delimiter, String continuationToken);
+
+    // Completes with the keys that could not be deleted
+    CompletableFuture<List<String>> delete(List<String> keys);
+
+    CompletableFuture<String> createMultipartUpload(String key, Map<String, String> metadata);
+
+    CompletableFuture<String> uploadPart(String key, String uploadId, int partNumber, ByteBuffer data);
+
+    CompletableFuture<Void> completeMultipartUpload(String key, String uploadId, List<BlobPart> parts);
+
+    CompletableFuture<Void> abortMultipartUpload(String key, String uploadId);
+
+    CompletableFuture<List<BlobUpload>> listMultipartUploads(String prefix);
+}
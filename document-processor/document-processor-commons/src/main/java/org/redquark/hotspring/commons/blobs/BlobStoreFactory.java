@@ -0,0 +1,59 @@
+package org.redquark.hotspring.commons.blobs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.configs.BlobStoreConfig;
+import org.redquark.hotspring.commons.connections.S3ClientFactory;
+import org.redquark.hotspring.commons.domains.TransferDirection;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
+import org.redquark.hotspring.commons.transfers.TransferPlanner;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@Slf4j
+public class BlobStoreFactory {
+
+    private static final String LOCAL_BLOB_STORE_EXECUTOR = "local-blob-store";
+
+    private final BlobStoreConfig blobStoreConfig;
+    private final S3ClientFactory s3ClientFactory;
+    private final ExecutorRegistry executorRegistry;
+    private final TransferPlanner transferPlanner;
+    private final Map<String, BlobStore> blobStores = new ConcurrentHashMap<>();
+
+    public BlobStoreFactory(
+            BlobStoreConfig blobStoreConfig,
+            S3ClientFactory s3ClientFactory,
+            ExecutorRegistry executorRegistry,
+            TransferPlanner transferPlanner
+    ) {
+        this.blobStoreConfig = blobStoreConfig;
+        this.s3ClientFactory = s3ClientFactory;
+        this.executorRegistry = executorRegistry;
+        this.transferPlanner = transferPlanner;
+    }
+
+    public BlobStore getBlobStore(String bucket) {
+        return blobStores.computeIfAbsent(bucket, this::create);
+    }
+
+    // Streams a blob through ranged reads, sized and overlapped as planned for its length
+    public InputStream openStream(BlobStore blobStore, String key, long contentLength) {
+        return new BlobInputStream(blobStore, key, transferPlanner.plan(TransferDirection.DOWNLOAD, contentLength), transferPlanner);
+    }
+
+    private BlobStore create(String bucket) {
+        switch (blobStoreConfig.getType()) {
+            case LOCAL:
+                return new LocalBlobStore(Path.of(blobStoreConfig.getRootDirectory(), bucket), bucket,
+                        executorRegistry.get(LOCAL_BLOB_STORE_EXECUTOR));
+            case S3:
+            default:
+                return new S3BlobStore(s3ClientFactory.getConnection(), bucket);
+        }
+    }
+}
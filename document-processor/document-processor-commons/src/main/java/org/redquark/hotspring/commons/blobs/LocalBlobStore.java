@@ -0,0 +1,440 @@
+package org.redquark.hotspring.commons.blobs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.domains.BlobMetadata;
+import org.redquark.hotspring.commons.domains.BlobPage;
+import org.redquark.hotspring.commons.domains.BlobPart;
+import org.redquark.hotspring.commons.domains.BlobSummary;
+import org.redquark.hotspring.commons.domains.BlobUpload;
+import org.redquark.hotspring.commons.exceptions.BlobStoreException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Keeps a bucket in a directory: blobs under objects/, their user metadata under metadata/ and
+// unfinished multipart uploads under uploads/. Ranged reads are served from memory-mapped files.
+// Unlike S3, a key cannot be both a blob and the prefix of another blob.
+@Slf4j
+public class LocalBlobStore implements BlobStore {
+
+    private static final String OBJECTS = "objects";
+    private static final String METADATA = "metadata";
+    private static final String UPLOADS = "uploads";
+    private static final String TEMP = "tmp";
+    private static final String METADATA_EXTENSION = ".properties";
+    private static final String UPLOAD_FILE = "upload.properties";
+    private static final String UPLOAD_KEY = "key";
+    private static final String UPLOAD_INITIATED = "initiated";
+    private static final String UPLOAD_METADATA_PREFIX = "metadata.";
+
+    private final String bucket;
+    private final Path objects;
+    private final Path metadata;
+    private final Path uploads;
+    private final Path temp;
+    private final Executor executor;
+
+    public LocalBlobStore(Path bucketDirectory, String bucket, Executor executor) {
+        this.bucket = bucket;
+        this.objects = bucketDirectory.resolve(OBJECTS);
+        this.metadata = bucketDirectory.resolve(METADATA);
+        this.uploads = bucketDirectory.resolve(UPLOADS);
+        this.temp = bucketDirectory.resolve(TEMP);
+        this.executor = executor;
+        try {
+            Files.createDirectories(objects);
+            Files.createDirectories(metadata);
+            Files.createDirectories(uploads);
+            Files.createDirectories(temp);
+        } catch (IOException e) {
+            throw new BlobStoreException("Could not create the local blob store in " + bucketDirectory, e);
+        }
+        log.info("Bucket={} is stored locally in {}", bucket, bucketDirectory.toAbsolutePath());
+    }
+
+    @Override
+    public String getBucket() {
+        return bucket;
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, ByteBuffer data, Map<String, String> userMetadata) {
+        return run(() -> {
+            Path stagedFile = Files.createTempFile(temp, "put", null);
+            try (FileChannel channel = FileChannel.open(stagedFile, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            publish(key, stagedFile, userMetadata);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, Path source, Map<String, String> userMetadata) {
+        return run(() -> {
+            Path stagedFile = Files.createTempFile(temp, "put", null);
+            Files.copy(source, stagedFile, StandardCopyOption.REPLACE_EXISTING);
+            publish(key, stagedFile, userMetadata);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Optional<BlobMetadata>> head(String key) {
+        return run(() -> {
+            Path object = objectPath(key);
+            if (!Files.isRegularFile(object)) {
+                return Optional.empty();
+            }
+            return Optional.of(new BlobMetadata(key, Files.size(object), readMetadata(key)));
+        });
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> getRange(String key, long offset, int length) {
+        return run(() -> {
+            try (FileChannel channel = FileChannel.open(objectPath(key), StandardOpenOption.READ)) {
+                // Like S3, a range running past the end is cut at the end of the blob
+                long available = Math.max(0, channel.size() - offset);
+                // The mapping stays valid after the channel is closed and is read without copying through the heap
+                return channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(length, available));
+            } catch (NoSuchFileException e) {
+                throw new BlobStoreException("No such key " + key + " in bucket " + bucket, e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> download(String key, Path target) {
+        return run(() -> {
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            Files.copy(objectPath(key), target, StandardCopyOption.REPLACE_EXISTING);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<BlobPage> list(String prefix, String delimiter, String continuationToken) {
+        return run(() -> {
+            Listing listing = new Listing(prefix, delimiter, continuationToken);
+            listing.walk(objects, "");
+            return listing.toPage();
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<String>> delete(List<String> keys) {
+        return run(() -> {
+            List<String> failedKeys = new ArrayList<>();
+            for (String key : keys) {
+                try {
+                    Files.deleteIfExists(objectPath(key));
+                    Files.deleteIfExists(metadataPath(key));
+                } catch (IOException e) {
+                    log.warn("Could not delete {} from bucket={}: {}", key, bucket, e.getMessage());
+                    failedKeys.add(key);
+                }
+            }
+            return failedKeys;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> createMultipartUpload(String key, Map<String, String> userMetadata) {
+        return run(() -> {
+            objectPath(key);
+            String uploadId = UUID.randomUUID().toString();
+            Path uploadDirectory = Files.createDirectories(uploads.resolve(uploadId));
+            Properties properties = new Properties();
+            properties.setProperty(UPLOAD_KEY, key);
+            properties.setProperty(UPLOAD_INITIATED, Instant.now().toString());
+            userMetadata.forEach((name, value) -> properties.setProperty(UPLOAD_METADATA_PREFIX + name, value));
+            try (OutputStream uploadFile = Files.newOutputStream(uploadDirectory.resolve(UPLOAD_FILE))) {
+                properties.store(uploadFile, null);
+            }
+            return uploadId;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> uploadPart(String key, String uploadId, int partNumber, ByteBuffer data) {
+        return run(() -> {
+            Path partFile = uploadDirectory(uploadId).resolve(String.valueOf(partNumber));
+            MessageDigest digest = md5();
+            digest.update(data.duplicate());
+            try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> completeMultipartUpload(String key, String uploadId, List<BlobPart> parts) {
+        return run(() -> {
+            Path uploadDirectory = uploadDirectory(uploadId);
+            Properties properties = readUpload(uploadDirectory);
+            Path stagedFile = Files.createTempFile(temp, "upload", null);
+            try (FileChannel target = FileChannel.open(stagedFile, StandardOpenOption.WRITE)) {
+                for (BlobPart part : parts.stream().sorted(Comparator.comparingInt(BlobPart::getPartNumber)).collect(Collectors.toList())) {
+                    try (FileChannel source = FileChannel.open(uploadDirectory.resolve(String.valueOf(part.getPartNumber())), StandardOpenOption.READ)) {
+                        long position = 0;
+                        while (position < source.size()) {
+                            position += source.transferTo(position, source.size() - position, target);
+                        }
+                    }
+                }
+            }
+            Map<String, String> userMetadata = new HashMap<>();
+            properties.stringPropertyNames().stream()
+                    .filter(name -> name.startsWith(UPLOAD_METADATA_PREFIX))
+                    .forEach(name -> userMetadata.put(name.substring(UPLOAD_METADATA_PREFIX.length()), properties.getProperty(name)));
+            publish(key, stagedFile, userMetadata);
+            deleteRecursively(uploadDirectory);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> abortMultipartUpload(String key, String uploadId) {
+        return run(() -> {
+            deleteRecursively(uploads.resolve(uploadId));
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<BlobUpload>> listMultipartUploads(String prefix) {
+        return run(() -> {
+            List<BlobUpload> pendingUploads = new ArrayList<>();
+            try (Stream<Path> uploadDirectories = Files.list(uploads)) {
+                for (Path uploadDirectory : uploadDirectories.collect(Collectors.toList())) {
+                    Properties properties = readUpload(uploadDirectory);
+                    String key = properties.getProperty(UPLOAD_KEY);
+                    if (key.startsWith(prefix)) {
+                        pendingUploads.add(new BlobUpload(key, uploadDirectory.getFileName().toString(),
+                                Instant.parse(properties.getProperty(UPLOAD_INITIATED))));
+                    }
+                }
+            }
+            return pendingUploads;
+        });
+    }
+
+    private void publish(String key, Path stagedFile, Map<String, String> userMetadata) throws IOException {
+        Path object = objectPath(key);
+        Files.createDirectories(object.getParent());
+        // Readers either see the previous blob or the complete new one
+        Files.move(stagedFile, object, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path metadataFile = metadataPath(key);
+        if (userMetadata == null || userMetadata.isEmpty()) {
+            Files.deleteIfExists(metadataFile);
+            return;
+        }
+        Files.createDirectories(metadataFile.getParent());
+        Properties properties = new Properties();
+        properties.putAll(userMetadata);
+        try (OutputStream metadataStream = Files.newOutputStream(metadataFile)) {
+            properties.store(metadataStream, null);
+        }
+    }
+
+    private Map<String, String> readMetadata(String key) throws IOException {
+        Path metadataFile = metadataPath(key);
+        Map<String, String> userMetadata = new HashMap<>();
+        if (Files.isRegularFile(metadataFile)) {
+            Properties properties = new Properties();
+            try (InputStream metadataStream = Files.newInputStream(metadataFile)) {
+                properties.load(metadataStream);
+            }
+            properties.stringPropertyNames().forEach(name -> userMetadata.put(name, properties.getProperty(name)));
+        }
+        return userMetadata;
+    }
+
+    private Properties readUpload(Path uploadDirectory) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream uploadFile = Files.newInputStream(uploadDirectory.resolve(UPLOAD_FILE))) {
+            properties.load(uploadFile);
+        }
+        return properties;
+    }
+
+    private Path uploadDirectory(String uploadId) {
+        Path uploadDirectory = uploads.resolve(uploadId).normalize();
+        if (!uploadDirectory.getParent().equals(uploads) || !Files.isDirectory(uploadDirectory)) {
+            throw new BlobStoreException("No such upload " + uploadId + " in bucket " + bucket, null);
+        }
+        return uploadDirectory;
+    }
+
+    private Path objectPath(String key) {
+        return resolve(objects, key);
+    }
+
+    private Path metadataPath(String key) {
+        return resolve(metadata, key + METADATA_EXTENSION);
+    }
+
+    private Path resolve(Path directory, String key) {
+        Path path = directory.resolve(key).normalize();
+        if (!path.startsWith(directory) || path.equals(directory)) {
+            throw new BlobStoreException("Invalid key " + key, null);
+        }
+        return path;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BlobStoreException("MD5 is not available", e);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> run(IOCallable<T> operation) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return operation.call();
+            } catch (IOException e) {
+                throw new CompletionException(new BlobStoreException("Local blob store operation failed in bucket " + bucket, e));
+            }
+        }, executor);
+    }
+
+    @FunctionalInterface
+    private interface IOCallable<T> {
+
+        T call() throws IOException;
+    }
+
+    // Walks the objects in key order, one directory at a time, starting below the continuation token and
+    // stopping as soon as the page is full, so a page costs about as much as the keys it returns
+    private static class Listing {
+
+        private final String prefix;
+        private final String delimiter;
+        private final String continuationToken;
+        private final List<BlobSummary> blobs = new ArrayList<>();
+        private final List<String> commonPrefixes = new ArrayList<>();
+        private String lastEntry;
+        private boolean truncated;
+
+        private Listing(String prefix, String delimiter, String continuationToken) {
+            this.prefix = prefix;
+            this.delimiter = delimiter;
+            this.continuationToken = continuationToken;
+        }
+
+        // Returns false once the page is full
+        private boolean walk(Path directory, String directoryKey) throws IOException {
+            // Keys below a directory sort as its name followed by a slash, which is not where the name alone sorts
+            Map<String, Path> entries = new TreeMap<>();
+            try (Stream<Path> children = Files.list(directory)) {
+                children.forEach(child -> {
+                    String key = directoryKey + child.getFileName();
+                    entries.put(Files.isDirectory(child) ? key + "/" : key, child);
+                });
+            }
+            for (Map.Entry<String, Path> entry : entries.entrySet()) {
+                String key = entry.getKey();
+                if (key.endsWith("/")) {
+                    if (mayContainKeys(key) && !walk(entry.getValue(), key)) {
+                        return false;
+                    }
+                } else if (key.startsWith(prefix) && isAfterToken(key) && !add(key, entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean mayContainKeys(String directoryKey) {
+            if (!directoryKey.startsWith(prefix) && !prefix.startsWith(directoryKey)) {
+                return false;
+            }
+            if (continuationToken != null && directoryKey.compareTo(continuationToken) < 0 && !continuationToken.startsWith(directoryKey)) {
+                // Every key below sorts before the token
+                return false;
+            }
+            return isAfterToken(directoryKey) && (commonPrefixes.isEmpty() || !directoryKey.startsWith(commonPrefixes.get(commonPrefixes.size() - 1)));
+        }
+
+        // A page may end on a common prefix, in which case every key below it was already covered
+        private boolean isAfterToken(String key) {
+            if (continuationToken == null) {
+                return true;
+            }
+            if (delimiter != null && continuationToken.endsWith(delimiter) && key.startsWith(continuationToken)) {
+                return false;
+            }
+            return key.endsWith("/") || key.compareTo(continuationToken) > 0;
+        }
+
+        private boolean add(String key, Path object) throws IOException {
+            int delimiterIndex = delimiter == null ? -1 : key.indexOf(delimiter, prefix.length());
+            String commonPrefix = delimiterIndex < 0 ? null : key.substring(0, delimiterIndex + delimiter.length());
+            if (commonPrefix != null && commonPrefix.equals(lastEntry)) {
+                return true;
+            }
+            if (blobs.size() + commonPrefixes.size() == MAX_KEYS_PER_PAGE) {
+                truncated = true;
+                return false;
+            }
+            if (commonPrefix == null) {
+                blobs.add(new BlobSummary(key, Files.size(object)));
+                lastEntry = key;
+            } else {
+                commonPrefixes.add(commonPrefix);
+                lastEntry = commonPrefix;
+            }
+            return true;
+        }
+
+        private BlobPage toPage() {
+            return new BlobPage(blobs, commonPrefixes, truncated ? lastEntry : null);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.redquark.hotspring.commons.blobs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.domains.BlobMetadata;
+import org.redquark.hotspring.commons.domains.BlobPage;
+import org.redquark.hotspring.commons.domains.BlobPart;
+import org.redquark.hotspring.commons.domains.BlobSummary;
+import org.redquark.hotspring.commons.domains.BlobUpload;
+import org.redquark.hotspring.commons.exceptions.BlobStoreException;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+@Slf4j
+public class S3BlobStore implements BlobStore {
+
+    private final S3AsyncClient s3AsyncClient;
+    private final String bucket;
+
+    public S3BlobStore(S3AsyncClient s3AsyncClient, String bucket) {
+        this.s3AsyncClient = s3AsyncClient;
+        this.bucket = bucket;
+    }
+
+    @Override
+    public String getBucket() {
+        return bucket;
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, ByteBuffer data, Map<String, String> metadata) {
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .metadata(metadata)
+                .contentLength((long) data.remaining())
+                .build();
+        return s3AsyncClient.putObject(request, AsyncRequestBody.fromByteBuffer(data)).thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, Path source, Map<String, String> metadata) {
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .metadata(metadata)
+                .build();
+        // The file is streamed from disk by the client, it is never loaded into memory
+        return s3AsyncClient.putObject(request, AsyncRequestBody.fromFile(source)).thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BlobMetadata>> head(String key) {
+        return s3AsyncClient.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build())
+                .thenApply(response -> Optional.of(new BlobMetadata(key, response.contentLength(), response.metadata())))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof NoSuchKeyException || cause instanceof S3Exception s3Exception && s3Exception.statusCode() == 404) {
+                        return Optional.empty();
+                    }
+                    throw e instanceof CompletionException completionException ? completionException : new CompletionException(e);
+                });
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> getRange(String key, long offset, int length) {
+        if (length == 0) {
+            return CompletableFuture.completedFuture(ByteBuffer.allocate(0));
+        }
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .range("bytes=" + offset + "-" + (offset + length - 1))
+                .build();
+        return s3AsyncClient.getObject(request, AsyncResponseTransformer.toBytes()).thenApply(ResponseBytes::asByteBuffer);
+    }
+
+    @Override
+    public CompletableFuture<Void> download(String key, Path target) {
+        try {
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            Files.deleteIfExists(target);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new BlobStoreException("Could not prepare " + target, e));
+        }
+        GetObjectRequest request = GetObjectRequest.builder().bucket(bucket).key(key).build();
+        return s3AsyncClient.getObject(request, AsyncResponseTransformer.toFile(target)).thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<BlobPage> list(String prefix, String delimiter, String continuationToken) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucket)
+                .prefix(prefix)
+                .delimiter(delimiter)
+                .continuationToken(continuationToken)
+                .maxKeys(MAX_KEYS_PER_PAGE)
+                .build();
+        return s3AsyncClient.listObjectsV2(request).thenApply(response -> new BlobPage(
+                response.contents().stream()
+                        .map(s3Object -> new BlobSummary(s3Object.key(), s3Object.size()))
+                        .collect(Collectors.toList()),
+                response.commonPrefixes().stream()
+                        .map(CommonPrefix::prefix)
+                        .collect(Collectors.toList()),
+                Boolean.TRUE.equals(response.isTruncated()) ? response.nextContinuationToken() : null));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> delete(List<String> keys) {
+        if (keys.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        List<ObjectIdentifier> objects = keys.stream()
+                .map(key -> ObjectIdentifier.builder().key(key).build())
+                .collect(Collectors.toList());
+        // Quiet mode only reports the keys that could not be deleted
+        DeleteObjectsRequest request = DeleteObjectsRequest.builder()
+                .bucket(bucket)
+                .delete(Delete.builder().objects(objects).quiet(true).build())
+                .build();
+        return s3AsyncClient.deleteObjects(request).thenApply(response -> {
+            response.errors().forEach(error -> log.warn("Could not delete {} from bucket={}: {}", error.key(), bucket, error.message()));
+            return response.errors().stream().map(S3Error::key).collect(Collectors.toList());
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> createMultipartUpload(String key, Map<String, String> metadata) {
+        CreateMultipartUploadRequest request = CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .metadata(metadata)
+                .build();
+        return s3AsyncClient.createMultipartUpload(request).thenApply(CreateMultipartUploadResponse::uploadId);
+    }
+
+    @Override
+    public CompletableFuture<String> uploadPart(String key, String uploadId, int partNumber, ByteBuffer data) {
+        UploadPartRequest request = UploadPartRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength((long) data.remaining())
+                .build();
+        return s3AsyncClient.uploadPart(request, AsyncRequestBody.fromByteBuffer(data)).thenApply(UploadPartResponse::eTag);
+    }
+
+    @Override
+    public CompletableFuture<Void> completeMultipartUpload(String key, String uploadId, List<BlobPart> parts) {
+        List<CompletedPart> completedParts = parts.stream()
+                .sorted(Comparator.comparingInt(BlobPart::getPartNumber))
+                .map(part -> CompletedPart.builder().partNumber(part.getPartNumber()).eTag(part.getETag()).build())
+                .collect(Collectors.toList());
+        CompleteMultipartUploadRequest request = CompleteMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                .build();
+        return s3AsyncClient.completeMultipartUpload(request).thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> abortMultipartUpload(String key, String uploadId) {
+        AbortMultipartUploadRequest request = AbortMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(uploadId)
+                .build();
+        return s3AsyncClient.abortMultipartUpload(request).thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<List<BlobUpload>> listMultipartUploads(String prefix) {
+        return listMultipartUploads(prefix, null, null, new ArrayList<>());
+    }
+
+    private CompletableFuture<List<BlobUpload>> listMultipartUploads(String prefix, String keyMarker, String uploadIdMarker, List<BlobUpload> uploads) {
+        ListMultipartUploadsRequest request = ListMultipartUploadsRequest.builder()
+                .bucket(bucket)
+                .prefix(prefix)
+                .keyMarker(keyMarker)
+                .uploadIdMarker(uploadIdMarker)
+                .build();
+        return s3AsyncClient.listMultipartUploads(request).thenCompose(response -> {
+            response.uploads().forEach(upload -> uploads.add(new BlobUpload(upload.key(), upload.uploadId(), upload.initiated())));
+            return Boolean.TRUE.equals(response.isTruncated())
+                    ? listMultipartUploads(prefix, response.nextKeyMarker(), response.nextUploadIdMarker(), uploads)
+                    : CompletableFuture.completedFuture(uploads);
+        });
+    }
+}
@@ -0,0 +1,11 @@
+package org.redquark.hotspring.commons.configs;
+
+import lombok.Data;
+import org.redquark.hotspring.commons.domains.BlobStoreType;
+
+@Data
+public class BlobStoreConfig {
+
+    private BlobStoreType type;
+    private String rootDirectory;
+}
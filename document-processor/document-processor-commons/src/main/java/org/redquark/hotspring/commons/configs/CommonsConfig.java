@@ -0,0 +1,33 @@
+package org.redquark.hotspring.commons.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CommonsConfig {
+
+    @Bean
+    @ConfigurationProperties(prefix = "executor-commons-config")
+    public ExecutorConfig getExecutorConfig() {
+        return new ExecutorConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "s3-commons-config")
+    public S3ClientConfig getS3ClientConfig() {
+        return new S3ClientConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "blob-store-commons-config")
+    public BlobStoreConfig getBlobStoreConfig() {
+        return new BlobStoreConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "transfer-commons-config")
+    public TransferConfig getTransferConfig() {
+        return new TransferConfig();
+    }
+}
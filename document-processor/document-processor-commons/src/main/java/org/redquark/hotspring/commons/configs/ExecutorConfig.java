@@ -0,0 +1,12 @@
+package org.redquark.hotspring.commons.configs;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class ExecutorConfig {
+
+    private Map<String, PoolConfig> pools = new HashMap<>();
+}
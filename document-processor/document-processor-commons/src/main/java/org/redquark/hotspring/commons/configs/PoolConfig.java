@@ -0,0 +1,15 @@
+package org.redquark.hotspring.commons.configs;
+
+import lombok.Data;
+import org.redquark.hotspring.commons.domains.QueueType;
+import org.redquark.hotspring.commons.domains.RejectionPolicy;
+
+@Data
+public class PoolConfig {
+
+    private Integer size;
+    private QueueType queueType;
+    private Integer queueCapacity;
+    private RejectionPolicy rejectionPolicy;
+    private Boolean virtualThreads;
+}
@@ -0,0 +1,24 @@
+package org.redquark.hotspring.commons.configs;
+
+import lombok.Data;
+import software.amazon.awssdk.core.retry.RetryMode;
+
+import java.time.Duration;
+
+@Data
+public class S3ClientConfig {
+
+    private String accessKey;
+    private String secretKey;
+    private String region;
+    private String endpointUrl;
+    private Boolean pathStyleAccess;
+    private Integer maxConnections;
+    private Duration connectionTtl;
+    private Duration connectionMaxIdle;
+    private Boolean tcpKeepAlive;
+    private Duration connectionTimeout;
+    private Duration socketTimeout;
+    private Integer maxErrorRetry;
+    private RetryMode retryMode;
+}
@@ -0,0 +1,19 @@
+package org.redquark.hotspring.commons.configs;
+
+import lombok.Data;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+public class TransferConfig {
+
+    private DataSize multipartThreshold;
+    private DataSize minPartSize;
+    private DataSize maxPartSize;
+    private Duration targetPartDuration;
+    private Integer maxConcurrency;
+    private DataSize maxBufferMemory;
+    private DataSize initialThroughput;
+    private Double throughputSmoothing;
+}
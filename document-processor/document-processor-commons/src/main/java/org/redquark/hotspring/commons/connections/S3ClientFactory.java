@@ -0,0 +1,76 @@
+package org.redquark.hotspring.commons.connections;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.configs.S3ClientConfig;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.URI;
+
+@Component
+@Slf4j
+public class S3ClientFactory {
+
+    private final S3ClientConfig s3ClientConfig;
+    private final MeterRegistry meterRegistry;
+    private S3AsyncClient s3AsyncClient;
+
+    public S3ClientFactory(S3ClientConfig s3ClientConfig, MeterRegistry meterRegistry) {
+        this.s3ClientConfig = s3ClientConfig;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    protected void init() {
+        // One non-blocking client, and with it one HTTP connection pool, for every module in the process.
+        // Requests wait on the event loop instead of on a thread, so the pool size alone bounds concurrency
+        NettyNioAsyncHttpClient.Builder httpClient = NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(s3ClientConfig.getMaxConnections())
+                .connectionTimeToLive(s3ClientConfig.getConnectionTtl())
+                .connectionMaxIdleTime(s3ClientConfig.getConnectionMaxIdle())
+                .tcpKeepAlive(s3ClientConfig.getTcpKeepAlive())
+                .connectionTimeout(s3ClientConfig.getConnectionTimeout())
+                .readTimeout(s3ClientConfig.getSocketTimeout())
+                .writeTimeout(s3ClientConfig.getSocketTimeout());
+        RetryPolicy retryPolicy = RetryPolicy.builder(s3ClientConfig.getRetryMode())
+                .numRetries(s3ClientConfig.getMaxErrorRetry())
+                .build();
+        S3AsyncClientBuilder clientBuilder = S3AsyncClient.builder()
+                .region(Region.of(s3ClientConfig.getRegion()))
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(s3ClientConfig.getAccessKey(), s3ClientConfig.getSecretKey())))
+                .httpClientBuilder(httpClient)
+                .serviceConfiguration(S3Configuration.builder()
+                        .pathStyleAccessEnabled(s3ClientConfig.getPathStyleAccess())
+                        .build())
+                .overrideConfiguration(override -> override
+                        .retryPolicy(retryPolicy)
+                        .addMetricPublisher(new S3PoolMetricPublisher(meterRegistry, s3ClientConfig.getMaxConnections())));
+        if (StringUtils.hasText(s3ClientConfig.getEndpointUrl())) {
+            clientBuilder.endpointOverride(URI.create(s3ClientConfig.getEndpointUrl()));
+        }
+        s3AsyncClient = clientBuilder.build();
+        log.info("S3 client is pooling up to {} connections with {} retries in {} mode", s3ClientConfig.getMaxConnections(),
+                s3ClientConfig.getMaxErrorRetry(), s3ClientConfig.getRetryMode());
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        s3AsyncClient.close();
+    }
+
+    public S3AsyncClient getConnection() {
+        return s3AsyncClient;
+    }
+}
@@ -0,0 +1,47 @@
+package org.redquark.hotspring.commons.connections;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The SDK does not expose its connection pool, but it samples the pool on every request attempt;
+// the last sample is published as gauges
+class S3PoolMetricPublisher implements MetricPublisher {
+
+    private final AtomicLong leased = new AtomicLong();
+    private final AtomicLong available = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+
+    S3PoolMetricPublisher(MeterRegistry meterRegistry, int maxConnections) {
+        Gauge.builder("s3.client.pool.leased", leased, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("s3.client.pool.available", available, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("s3.client.pool.pending", pending, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("s3.client.pool.max", () -> maxConnections).register(meterRegistry);
+    }
+
+    @Override
+    public void publish(MetricCollection metricCollection) {
+        // The HTTP metrics sit in the attempt collections below the call collection
+        update(leased, metricCollection, HttpMetric.LEASED_CONCURRENCY);
+        update(available, metricCollection, HttpMetric.AVAILABLE_CONCURRENCY);
+        update(pending, metricCollection, HttpMetric.PENDING_CONCURRENCY_ACQUIRES);
+        metricCollection.children().forEach(this::publish);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static void update(AtomicLong gauge, MetricCollection metricCollection, SdkMetric<Integer> metric) {
+        List<Integer> samples = metricCollection.metricValues(metric);
+        if (!samples.isEmpty()) {
+            gauge.set(samples.get(samples.size() - 1));
+        }
+    }
+}
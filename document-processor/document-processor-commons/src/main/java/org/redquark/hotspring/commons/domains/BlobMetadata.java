@@ -0,0 +1,15 @@
+package org.redquark.hotspring.commons.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+public class BlobMetadata {
+
+    private String key;
+    private long contentLength;
+    private Map<String, String> userMetadata;
+}
@@ -0,0 +1,16 @@
+package org.redquark.hotspring.commons.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class BlobPage {
+
+    private List<BlobSummary> blobs;
+    private List<String> commonPrefixes;
+    // Null on the last page
+    private String continuationToken;
+}
@@ -0,0 +1,12 @@
+package org.redquark.hotspring.commons.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BlobPart {
+
+    private int partNumber;
+    private String eTag;
+}
@@ -0,0 +1,9 @@
+package org.redquark.hotspring.commons.domains;
+
+public enum BlobStoreType {
+
+    // Non-blocking S3 client, or any S3 compatible endpoint
+    S3,
+    // Directory tree on the local filesystem, for offline runs and local performance tests
+    LOCAL
+}
@@ -0,0 +1,15 @@
+package org.redquark.hotspring.commons.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+public class BlobUpload {
+
+    private String key;
+    private String uploadId;
+    private Instant initiated;
+}
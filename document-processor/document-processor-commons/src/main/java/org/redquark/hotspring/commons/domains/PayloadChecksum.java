@@ -0,0 +1,36 @@
+package org.redquark.hotspring.commons.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Optional;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PayloadChecksum implements Serializable {
+
+    public static final String CRC32C_METADATA = "crc32c";
+    public static final String SHA256_METADATA = "sha256";
+
+    private long size;
+    private String crc32c;
+    private String sha256;
+
+    public Map<String, String> toMetadata() {
+        return Map.of(CRC32C_METADATA, crc32c, SHA256_METADATA, sha256);
+    }
+
+    // The size is not stored in the metadata, the content length of the object stands in for it
+    public static Optional<PayloadChecksum> fromMetadata(BlobMetadata blobMetadata) {
+        Map<String, String> userMetadata = blobMetadata.getUserMetadata();
+        if (userMetadata == null || !userMetadata.containsKey(CRC32C_METADATA) || !userMetadata.containsKey(SHA256_METADATA)) {
+            return Optional.empty();
+        }
+        return Optional.of(new PayloadChecksum(blobMetadata.getContentLength(),
+                userMetadata.get(CRC32C_METADATA), userMetadata.get(SHA256_METADATA)));
+    }
+}
@@ -0,0 +1,11 @@
+package org.redquark.hotspring.commons.domains;
+
+public enum QueueType {
+
+    // Tasks wait in a queue of queue-capacity, further submissions are handled by the rejection policy
+    BOUNDED,
+    // Tasks wait without limit
+    UNBOUNDED,
+    // Tasks are only accepted when a thread is idle
+    SYNCHRONOUS
+}
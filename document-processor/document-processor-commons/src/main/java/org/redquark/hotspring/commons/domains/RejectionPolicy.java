@@ -0,0 +1,22 @@
+package org.redquark.hotspring.commons.domains;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+public enum RejectionPolicy {
+
+    ABORT {
+        @Override
+        public RejectedExecutionHandler handler() {
+            return new ThreadPoolExecutor.AbortPolicy();
+        }
+    },
+    CALLER_RUNS {
+        @Override
+        public RejectedExecutionHandler handler() {
+            return new ThreadPoolExecutor.CallerRunsPolicy();
+        }
+    };
+
+    public abstract RejectedExecutionHandler handler();
+}
@@ -0,0 +1,7 @@
+package org.redquark.hotspring.commons.domains;
+
+public enum TransferDirection {
+
+    UPLOAD,
+    DOWNLOAD
+}
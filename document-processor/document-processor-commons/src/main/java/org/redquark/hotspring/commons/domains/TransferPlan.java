@@ -0,0 +1,17 @@
+package org.redquark.hotspring.commons.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class TransferPlan {
+
+    private TransferDirection direction;
+    private long objectSize;
+    private boolean multipart;
+    private int partSize;
+    private int partCount;
+    private int concurrency;
+    private long connectionThroughput;
+}
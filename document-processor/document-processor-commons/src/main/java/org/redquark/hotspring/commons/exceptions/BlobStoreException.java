@@ -0,0 +1,8 @@
+package org.redquark.hotspring.commons.exceptions;
+
+public class BlobStoreException extends RuntimeException {
+
+    public BlobStoreException(String message, Exception e) {
+        super(message, e);
+    }
+}
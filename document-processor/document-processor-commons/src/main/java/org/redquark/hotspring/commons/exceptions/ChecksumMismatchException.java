@@ -0,0 +1,8 @@
+package org.redquark.hotspring.commons.exceptions;
+
+public class ChecksumMismatchException extends RuntimeException {
+
+    public ChecksumMismatchException(String message, Exception e) {
+        super(message, e);
+    }
+}
@@ -0,0 +1,8 @@
+package org.redquark.hotspring.commons.exceptions;
+
+public class ExecutorRegistryException extends RuntimeException {
+
+    public ExecutorRegistryException(String message, Exception e) {
+        super(message, e);
+    }
+}
@@ -0,0 +1,107 @@
+package org.redquark.hotspring.commons.executors;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.configs.ExecutorConfig;
+import org.redquark.hotspring.commons.configs.PoolConfig;
+import org.redquark.hotspring.commons.domains.QueueType;
+import org.redquark.hotspring.commons.domains.RejectionPolicy;
+import org.redquark.hotspring.commons.exceptions.ExecutorRegistryException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+@Slf4j
+public class ExecutorRegistry {
+
+    private static final QueueType DEFAULT_QUEUE_TYPE = QueueType.UNBOUNDED;
+    private static final RejectionPolicy DEFAULT_REJECTION_POLICY = RejectionPolicy.ABORT;
+
+    private final ExecutorConfig executorConfig;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, ExecutorService> executors = new ConcurrentHashMap<>();
+
+    public ExecutorRegistry(ExecutorConfig executorConfig, MeterRegistry meterRegistry) {
+        this.executorConfig = executorConfig;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        executors.values().forEach(ExecutorService::shutdownNow);
+    }
+
+    // Pools are shared by name and owned by the registry, callers must not shut them down
+    public ExecutorService get(String name) {
+        return executors.computeIfAbsent(name, this::create);
+    }
+
+    public int getSize(String name) {
+        Integer size = getPoolConfig(name).getSize();
+        return size != null ? size : Runtime.getRuntime().availableProcessors();
+    }
+
+    private ExecutorService create(String name) {
+        PoolConfig poolConfig = getPoolConfig(name);
+        ExecutorService executor;
+        Optional<ExecutorService> virtualExecutor = Boolean.TRUE.equals(poolConfig.getVirtualThreads())
+                ? VirtualThreads.newThreadPerTaskExecutor(name)
+                : Optional.empty();
+        if (virtualExecutor.isPresent()) {
+            // One virtual thread per task; size and queue do not apply, so pools relying on them for
+            // backpressure should stay on platform threads
+            executor = virtualExecutor.get();
+            log.info("Created executor={} on virtual threads", name);
+        } else {
+            if (Boolean.TRUE.equals(poolConfig.getVirtualThreads())) {
+                log.warn("Virtual threads are not available on Java {}, executor={} uses platform threads", Runtime.version().feature(), name);
+            }
+            int size = getSize(name);
+            QueueType queueType = Objects.requireNonNullElse(poolConfig.getQueueType(), DEFAULT_QUEUE_TYPE);
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                    createQueue(name, queueType, poolConfig.getQueueCapacity()),
+                    runnable -> new Thread(runnable, name + "-" + threadCount.getAndIncrement()),
+                    Objects.requireNonNullElse(poolConfig.getRejectionPolicy(), DEFAULT_REJECTION_POLICY).handler());
+            log.info("Created executor={} with {} threads and a {} queue", name, size, queueType);
+        }
+        // Publishes executor.active, executor.queued, executor.completed and the pool size, tagged with the name
+        return ExecutorServiceMetrics.monitor(meterRegistry, executor, name);
+    }
+
+    private PoolConfig getPoolConfig(String name) {
+        PoolConfig poolConfig = executorConfig.getPools().get(name);
+        if (poolConfig == null) {
+            log.warn("No configuration for executor={}, using the defaults", name);
+            return new PoolConfig();
+        }
+        return poolConfig;
+    }
+
+    private static BlockingQueue<Runnable> createQueue(String name, QueueType queueType, Integer queueCapacity) {
+        return switch (queueType) {
+            case BOUNDED -> {
+                if (queueCapacity == null || queueCapacity < 1) {
+                    throw new ExecutorRegistryException("Executor " + name + " needs a positive queue-capacity", null);
+                }
+                yield new ArrayBlockingQueue<>(queueCapacity);
+            }
+            case UNBOUNDED -> new LinkedBlockingQueue<>();
+            case SYNCHRONOUS -> new SynchronousQueue<>();
+        };
+    }
+}
@@ -0,0 +1,86 @@
+package org.redquark.hotspring.commons.integrity;
+
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+import org.redquark.hotspring.commons.exceptions.ChecksumMismatchException;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+
+// Accumulates CRC32C and SHA-256 over bytes as they pass by, so that no separate read of the payload is needed
+public class PayloadDigest {
+
+    private final CRC32C crc32c = new CRC32C();
+    private final MessageDigest sha256;
+    private long size;
+    private PayloadChecksum checksum;
+
+    public PayloadDigest() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM ships SHA-256
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static PayloadChecksum of(byte[] data, int offset, int length) {
+        PayloadDigest digest = new PayloadDigest();
+        digest.update(data, offset, length);
+        return digest.toChecksum();
+    }
+
+    public static PayloadChecksum of(ByteBuffer data) {
+        PayloadDigest digest = new PayloadDigest();
+        digest.update(data.duplicate());
+        return digest.toChecksum();
+    }
+
+    public void update(byte[] data, int offset, int length) {
+        ensureOpen();
+        crc32c.update(data, offset, length);
+        sha256.update(data, offset, length);
+        size += length;
+    }
+
+    public void update(ByteBuffer data) {
+        ensureOpen();
+        int length = data.remaining();
+        crc32c.update(data.duplicate());
+        sha256.update(data);
+        size += length;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    // Finishing the SHA-256 resets it, so the checksum is taken once and no more bytes are accepted afterwards
+    public PayloadChecksum toChecksum() {
+        if (checksum == null) {
+            HexFormat hex = HexFormat.of();
+            checksum = new PayloadChecksum(size, hex.toHexDigits((int) crc32c.getValue()), hex.formatHex(sha256.digest()));
+        }
+        return checksum;
+    }
+
+    public void verify(String name, PayloadChecksum expected) {
+        PayloadChecksum actual = toChecksum();
+        if (actual.getSize() != expected.getSize()
+                || !actual.getCrc32c().equalsIgnoreCase(expected.getCrc32c())
+                || !actual.getSha256().equalsIgnoreCase(expected.getSha256())) {
+            throw new ChecksumMismatchException(String.format(
+                    "Checksum mismatch for entry=%s: expected size=%d crc32c=%s sha256=%s but got size=%d crc32c=%s sha256=%s",
+                    name, expected.getSize(), expected.getCrc32c(), expected.getSha256(),
+                    actual.getSize(), actual.getCrc32c(), actual.getSha256()), null);
+        }
+    }
+
+    private void ensureOpen() {
+        if (checksum != null) {
+            throw new IllegalStateException("Digest is already finished");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.redquark.hotspring.commons.integrity;
+
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Digests the bytes while the reader consumes them and checks them against the expected checksum at the end of the stream
+public class VerifyingInputStream extends FilterInputStream {
+
+    private final String name;
+    private final PayloadChecksum expected;
+    private final PayloadDigest digest = new PayloadDigest();
+    private boolean verified;
+
+    public VerifyingInputStream(InputStream in, String name, PayloadChecksum expected) {
+        super(in);
+        this.name = name;
+        this.expected = expected;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            digest.update(b, off, read);
+        } else if (read == -1 && !verified) {
+            verified = true;
+            digest.verify(name, expected);
+        }
+        return read;
+    }
+
+    // Skipped bytes would escape the digest, so they are read through it instead
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 1 << 13)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
@@ -0,0 +1,108 @@
+package org.redquark.hotspring.commons.transfers;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.configs.TransferConfig;
+import org.redquark.hotspring.commons.domains.TransferDirection;
+import org.redquark.hotspring.commons.domains.TransferPlan;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@Component
+@Slf4j
+public class TransferPlanner {
+
+    public static final int MAX_PARTS = 10_000;
+    private static final long MEGABYTE = 1 << 20;
+    // Requests this small are dominated by latency, they say little about the bandwidth of a connection
+    private static final long MIN_SAMPLE_BYTES = MEGABYTE;
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final TransferConfig transferConfig;
+    private final MeterRegistry meterRegistry;
+    private final Map<TransferDirection, Double> connectionThroughput = new EnumMap<>(TransferDirection.class);
+
+    public TransferPlanner(TransferConfig transferConfig, MeterRegistry meterRegistry) {
+        this.transferConfig = transferConfig;
+        this.meterRegistry = meterRegistry;
+        for (TransferDirection direction : TransferDirection.values()) {
+            connectionThroughput.put(direction, (double) transferConfig.getInitialThroughput().toBytes());
+            Gauge.builder("s3.transfer.connection.throughput", () -> getConnectionThroughput(direction) / (double) MEGABYTE)
+                    .tag("direction", direction.name().toLowerCase())
+                    .baseUnit("MB/s")
+                    .register(meterRegistry);
+        }
+    }
+
+    // Parts are sized so that each request keeps one connection busy for about the target duration at the
+    // throughput measured recently, within the part limits; the size may be an estimate, so the part count
+    // leaves some room for the object to turn out larger
+    public TransferPlan plan(TransferDirection direction, long objectSize) {
+        long size = Math.max(objectSize, 0);
+        long throughput = (long) getConnectionThroughput(direction);
+        long multipartThreshold = transferConfig.getMultipartThreshold().toBytes();
+        long minPartSize = transferConfig.getMinPartSize().toBytes();
+        TransferPlan plan;
+        if (size <= multipartThreshold) {
+            // One request is cheaper than the round trips of a multipart transfer; the part still has to be
+            // large enough to carry on as a regular part should the object outgrow its estimate
+            int partSize = (int) Math.max(size, direction == TransferDirection.UPLOAD ? minPartSize : 1);
+            plan = new TransferPlan(direction, size, false, partSize, 1, 1, throughput);
+        } else {
+            long targetPartSize = (long) (throughput * (transferConfig.getTargetPartDuration().toMillis() / 1000d));
+            long partSize = Math.min(Math.max(targetPartSize, minPartSize), transferConfig.getMaxPartSize().toBytes());
+            long headroom = size + (size >> 4);
+            partSize = Math.max(partSize, (headroom + MAX_PARTS - 1) / MAX_PARTS);
+            partSize = Math.min(roundUp(partSize), Integer.MAX_VALUE - MEGABYTE);
+            int partCount = (int) ((size + partSize - 1) / partSize);
+            // Besides the parts in flight, the writer fills or the reader drains one more buffer of its own
+            long bufferBudget = Math.max(transferConfig.getMaxBufferMemory().toBytes() / partSize - 1, 1);
+            int concurrency = (int) Math.min(Math.min(transferConfig.getMaxConcurrency(), partCount), bufferBudget);
+            plan = new TransferPlan(direction, size, true, (int) partSize, partCount, concurrency, throughput);
+        }
+        log.info("Planned {} of {} bytes: multipart={}, partSize={}, parts={}, concurrency={} at {} MB/s per connection",
+                direction, size, plan.isMultipart(), plan.getPartSize(), plan.getPartCount(), plan.getConcurrency(),
+                String.format("%.1f", throughput / (double) MEGABYTE));
+        return plan;
+    }
+
+    // Feeds the duration of a single request into the throughput estimate of its direction
+    public void recordRequest(TransferDirection direction, long bytes, long elapsedNanos) {
+        if (bytes < MIN_SAMPLE_BYTES || elapsedNanos <= 0) {
+            return;
+        }
+        double sample = bytes * NANOS_PER_SECOND / elapsedNanos;
+        double smoothing = transferConfig.getThroughputSmoothing();
+        synchronized (connectionThroughput) {
+            connectionThroughput.merge(direction, sample, (current, next) -> current + smoothing * (next - current));
+        }
+    }
+
+    public void recordTransfer(String key, TransferPlan plan, long bytes, long elapsedNanos) {
+        double megabytesPerSecond = elapsedNanos > 0 ? bytes * NANOS_PER_SECOND / elapsedNanos / MEGABYTE : 0;
+        String direction = plan.getDirection().name().toLowerCase();
+        DistributionSummary.builder("s3.transfer.throughput").tag("direction", direction).baseUnit("MB/s")
+                .register(meterRegistry).record(megabytesPerSecond);
+        DistributionSummary.builder("s3.transfer.part.size").tag("direction", direction).baseUnit("bytes")
+                .register(meterRegistry).record(plan.getPartSize());
+        DistributionSummary.builder("s3.transfer.concurrency").tag("direction", direction)
+                .register(meterRegistry).record(plan.getConcurrency());
+        log.info("Transferred key={} ({} bytes, {}) in {} ms at {} MB/s with parts of {} bytes, {} in flight",
+                key, bytes, direction, elapsedNanos / 1_000_000, String.format("%.1f", megabytesPerSecond),
+                plan.getPartSize(), plan.getConcurrency());
+    }
+
+    private double getConnectionThroughput(TransferDirection direction) {
+        synchronized (connectionThroughput) {
+            return connectionThroughput.get(direction);
+        }
+    }
+
+    private static long roundUp(long partSize) {
+        return (partSize + MEGABYTE - 1) / MEGABYTE * MEGABYTE;
+    }
+}
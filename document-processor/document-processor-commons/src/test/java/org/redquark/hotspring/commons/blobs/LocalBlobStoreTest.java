@@ -0,0 +1,96 @@
+package org.redquark.hotspring.commons.blobs;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.redquark.hotspring.commons.domains.BlobPage;
+import org.redquark.hotspring.commons.domains.BlobSummary;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalBlobStoreTest {
+
+    @TempDir
+    Path bucketDirectory;
+
+    private LocalBlobStore blobStore;
+
+    @BeforeEach
+    void setUp() {
+        blobStore = new LocalBlobStore(bucketDirectory, "bucket", Runnable::run);
+    }
+
+    @Test
+    void listsKeysInOrderAcrossPages() {
+        List<String> keys = IntStream.range(0, 2 * BlobStore.MAX_KEYS_PER_PAGE + 10)
+                .mapToObj(i -> String.format("docs/%02d/%04d.pdf", i % 30, i))
+                .sorted()
+                .collect(Collectors.toList());
+        // A sibling that sorts before the directory of the same stem, though its name sorts after it
+        keys.add(0, "docs/00-notes.txt");
+        put(keys.toArray(new String[0]));
+
+        List<String> listed = new ArrayList<>();
+        List<BlobPage> pages = listAll("docs/", null);
+
+        pages.forEach(page -> page.getBlobs().stream().map(BlobSummary::getKey).forEach(listed::add));
+        assertThat(pages).hasSize(3);
+        assertThat(pages.get(0).getBlobs()).hasSize(BlobStore.MAX_KEYS_PER_PAGE);
+        assertThat(listed).isEqualTo(keys.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    void rollsDeeperKeysUpIntoCommonPrefixes() {
+        put("a.txt", "dir/one.txt", "dir/sub/two.txt", "dir-b.txt", "other/three.txt");
+
+        BlobPage root = blobStore.list("", "/", null).join();
+        BlobPage dir = blobStore.list("dir/", "/", null).join();
+
+        assertThat(root.getBlobs()).extracting(BlobSummary::getKey).containsExactly("a.txt", "dir-b.txt");
+        assertThat(root.getCommonPrefixes()).containsExactly("dir/", "other/");
+        assertThat(root.getContinuationToken()).isNull();
+        assertThat(dir.getBlobs()).extracting(BlobSummary::getKey).containsExactly("dir/one.txt");
+        assertThat(dir.getCommonPrefixes()).containsExactly("dir/sub/");
+    }
+
+    @Test
+    void resumesAfterAPageThatEndsOnACommonPrefix() {
+        List<String> keys = IntStream.range(0, BlobStore.MAX_KEYS_PER_PAGE + 1)
+                .mapToObj(i -> String.format("p%04d/blob", i))
+                .collect(Collectors.toList());
+        keys.add("p0999/more");
+        put(keys.toArray(new String[0]));
+
+        List<BlobPage> pages = listAll("", "/");
+
+        assertThat(pages).hasSize(2);
+        assertThat(pages.get(0).getContinuationToken()).isEqualTo("p0999/");
+        assertThat(pages.get(1).getCommonPrefixes()).containsExactly("p1000/");
+    }
+
+    private List<BlobPage> listAll(String prefix, String delimiter) {
+        List<BlobPage> pages = new ArrayList<>();
+        String continuationToken = null;
+        do {
+            BlobPage page = blobStore.list(prefix, delimiter, continuationToken).join();
+            pages.add(page);
+            continuationToken = page.getContinuationToken();
+        } while (continuationToken != null);
+        return pages;
+    }
+
+    private void put(String... keys) {
+        CompletableFuture.allOf(List.of(keys).stream()
+                .map(key -> blobStore.put(key, ByteBuffer.wrap(key.getBytes()), Map.of()))
+                .toArray(CompletableFuture[]::new)).join();
+    }
+}
@@ -0,0 +1,92 @@
+package org.redquark.hotspring.commons.transfers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.redquark.hotspring.commons.configs.TransferConfig;
+import org.redquark.hotspring.commons.domains.TransferDirection;
+import org.redquark.hotspring.commons.domains.TransferPlan;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferPlannerTest {
+
+    private static final long MEGABYTE = 1 << 20;
+
+    private final TransferConfig transferConfig = transferConfig();
+    private final TransferPlanner transferPlanner = new TransferPlanner(transferConfig, new SimpleMeterRegistry());
+
+    @Test
+    void growsThePartsToStayWithinThePartLimit() {
+        // At the configured 16 MB per part, 5 TB would take more than 300 000 parts
+        long size = DataSize.ofTerabytes(5).toBytes();
+
+        TransferPlan plan = transferPlanner.plan(TransferDirection.UPLOAD, size);
+
+        assertThat(plan.isMultipart()).isTrue();
+        assertThat(plan.getPartCount()).isLessThanOrEqualTo(TransferPlanner.MAX_PARTS);
+        assertThat((long) plan.getPartSize() * plan.getPartCount()).isGreaterThanOrEqualTo(size);
+        assertThat(plan.getPartSize() % MEGABYTE).isZero();
+    }
+
+    @Test
+    void leavesHeadroomForAnObjectThatOutgrowsItsEstimate() {
+        long size = TransferPlanner.MAX_PARTS * 16 * MEGABYTE;
+
+        TransferPlan plan = transferPlanner.plan(TransferDirection.UPLOAD, size);
+
+        // The estimate may be short by a sixteenth before the upload runs out of parts
+        assertThat((long) plan.getPartSize() * TransferPlanner.MAX_PARTS).isGreaterThanOrEqualTo(size + size / 16);
+        assertThat(plan.getPartCount()).isLessThan(TransferPlanner.MAX_PARTS);
+    }
+
+    @Test
+    void keepsPartsBetweenTheMinAndMaxSize() {
+        TransferPlan slow = transferPlanner.plan(TransferDirection.UPLOAD, DataSize.ofGigabytes(1).toBytes());
+        for (int i = 0; i < 50; i++) {
+            transferPlanner.recordRequest(TransferDirection.DOWNLOAD, 64 * MEGABYTE, Duration.ofMillis(10).toNanos());
+        }
+        TransferPlan fast = transferPlanner.plan(TransferDirection.DOWNLOAD, DataSize.ofGigabytes(1).toBytes());
+
+        assertThat(slow.getPartSize()).isEqualTo(16 * MEGABYTE);
+        assertThat(fast.getPartSize()).isEqualTo(transferConfig.getMaxPartSize().toBytes());
+    }
+
+    @Test
+    void leavesRoomForTheBufferBeingFilledInTheMemoryBudget() {
+        transferConfig.setMaxBufferMemory(DataSize.ofMegabytes(64));
+
+        TransferPlan plan = transferPlanner.plan(TransferDirection.UPLOAD, DataSize.ofGigabytes(10).toBytes());
+
+        long residentBuffers = plan.getConcurrency() + 1L;
+        assertThat(residentBuffers * plan.getPartSize()).isLessThanOrEqualTo(transferConfig.getMaxBufferMemory().toBytes());
+        assertThat(plan.getConcurrency()).isEqualTo(3);
+    }
+
+    @Test
+    void sendsSmallObjectsInOneRequest() {
+        TransferPlan upload = transferPlanner.plan(TransferDirection.UPLOAD, MEGABYTE);
+        TransferPlan download = transferPlanner.plan(TransferDirection.DOWNLOAD, MEGABYTE);
+
+        assertThat(upload.isMultipart()).isFalse();
+        assertThat(upload.getPartCount()).isEqualTo(1);
+        // The single upload part can still carry on as a regular part should the object grow
+        assertThat(upload.getPartSize()).isEqualTo(transferConfig.getMinPartSize().toBytes());
+        assertThat(download.getPartSize()).isEqualTo(MEGABYTE);
+    }
+
+    private static TransferConfig transferConfig() {
+        TransferConfig transferConfig = new TransferConfig();
+        transferConfig.setMultipartThreshold(DataSize.ofMegabytes(16));
+        transferConfig.setMinPartSize(DataSize.ofMegabytes(5));
+        transferConfig.setMaxPartSize(DataSize.ofMegabytes(256));
+        transferConfig.setTargetPartDuration(Duration.ofSeconds(2));
+        transferConfig.setMaxConcurrency(8);
+        transferConfig.setMaxBufferMemory(DataSize.ofMegabytes(256));
+        transferConfig.setInitialThroughput(DataSize.ofMegabytes(8));
+        transferConfig.setThroughputSmoothing(0.2);
+        return transferConfig;
+    }
+}
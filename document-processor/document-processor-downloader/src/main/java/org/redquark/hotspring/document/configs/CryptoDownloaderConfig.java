@@ -12,4 +12,5 @@ public class CryptoDownloaderConfig {
     private Integer keySize;
     private String algorithm;
     private String provider;
+    private String cipherProvider;
 }
@@ -24,4 +24,10 @@ public class DocumentDownloaderConfig {
     public KafkaDownloaderConfig getKafkaDownloaderConfig() {
         return new KafkaDownloaderConfig();
     }
+
+    @Bean
+    @ConfigurationProperties(prefix = "extraction-downloader-config")
+    public ExtractionDownloaderConfig getExtractionDownloaderConfig() {
+        return new ExtractionDownloaderConfig();
+    }
 }
@@ -0,0 +1,12 @@
+package org.redquark.hotspring.document.configs;
+
+import lombok.Data;
+
+@Data
+public class ExtractionDownloaderConfig {
+
+    private Boolean parallel;
+    private String spoolDirectory;
+    private Integer maxEntriesInFlight;
+    private Boolean remoteReads;
+}
@@ -5,7 +5,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
 import org.redquark.hotspring.document.configs.KafkaDownloaderConfig;
 import org.redquark.hotspring.document.deserializers.DocumentDeserializer;
 import org.redquark.hotspring.document.domains.Document;
@@ -14,6 +16,7 @@ import org.redquark.hotspring.document.services.S3StorageService;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
@@ -24,8 +27,13 @@ import java.util.Properties;
 @RequiredArgsConstructor
 public class DocumentKafkaConsumer implements CommandLineRunner {
 
+    private static final String CONSUMER_EXECUTOR = "kafka-consumer";
+
     private final KafkaDownloaderConfig kafkaDownloaderConfig;
     private final S3StorageService s3StorageService;
+    private final ExecutorRegistry executorRegistry;
+    private volatile KafkaConsumer<String, DocumentBatch> kafkaConsumer;
+    private volatile boolean running = true;
 
     public static KafkaConsumer<String, DocumentBatch> getKafkaConsumer() {
         return new KafkaConsumer<>(getKafkaConsumerConfig());
@@ -44,23 +52,41 @@ public class DocumentKafkaConsumer implements CommandLineRunner {
     }
 
     @Override
-    @SuppressWarnings("InfiniteLoopStatement")
     public void run(String... args) {
-        KafkaConsumer<String, DocumentBatch> kafkaConsumer = getKafkaConsumer();
-        kafkaConsumer.subscribe(Collections.singletonList(kafkaDownloaderConfig.getTopic()));
-        while (true) {
-            try {
-                ConsumerRecords<String, DocumentBatch> consumerRecords = kafkaConsumer.poll(Duration.ofSeconds(1));
-                consumerRecords.forEach(consumerRecord -> {
-                    List<Document> documents = consumerRecord.value().getDocuments();
-                    if (!documents.isEmpty()) {
-                        log.info("{} files received in the message", documents.size());
-                        s3StorageService.uploadMultipleFiles(documents);
-                    }
-                });
-            } catch (NullPointerException e) {
-                log.info("Exception occurred while reading file: {}", e.getMessage(), e);
+        // The poll loop gets a registry thread instead of blocking the startup thread forever
+        executorRegistry.get(CONSUMER_EXECUTOR).execute(this::consume);
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        running = false;
+        if (kafkaConsumer != null) {
+            kafkaConsumer.wakeup();
+        }
+    }
+
+    private void consume() {
+        kafkaConsumer = getKafkaConsumer();
+        try {
+            kafkaConsumer.subscribe(Collections.singletonList(kafkaDownloaderConfig.getTopic()));
+            while (running) {
+                try {
+                    ConsumerRecords<String, DocumentBatch> consumerRecords = kafkaConsumer.poll(Duration.ofSeconds(1));
+                    consumerRecords.forEach(consumerRecord -> {
+                        List<Document> documents = consumerRecord.value().getDocuments();
+                        if (!documents.isEmpty()) {
+                            log.info("{} files received in the message", documents.size());
+                            s3StorageService.uploadMultipleFiles(documents);
+                        }
+                    });
+                } catch (NullPointerException e) {
+                    log.info("Exception occurred while reading file: {}", e.getMessage(), e);
+                }
             }
+        } catch (WakeupException e) {
+            log.info("Kafka consumer is stopping");
+        } finally {
+            kafkaConsumer.close();
         }
     }
 }
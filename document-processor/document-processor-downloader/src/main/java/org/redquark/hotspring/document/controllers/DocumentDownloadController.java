@@ -7,6 +7,8 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+import org.redquark.hotspring.document.domains.ArchiveFormat;
 import org.redquark.hotspring.document.domains.S3FileSpecification;
 import org.redquark.hotspring.document.domains.response.DocumentDownloadResponse;
 import org.redquark.hotspring.document.services.DocumentDownloadService;
@@ -19,6 +21,10 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/v1/document")
@@ -62,8 +68,18 @@ public class DocumentDownloadController {
         String key = s3FileSpecification.getKey();
         try {
             log.info("Received request for downloading file={} from the S3 bucket={}", key, bucket);
-            InputStream downloadedStream = documentDownloadService.downloadSingleFile(bucket, key);
-            processDocumentService.processDocument(key, downloadedStream);
+            Set<String> entryNames = s3FileSpecification.getEntries() == null
+                    ? Set.of()
+                    : new HashSet<>(s3FileSpecification.getEntries());
+            Map<String, PayloadChecksum> expectedChecksums = documentDownloadService.downloadEntryChecksums(bucket, key);
+            if (documentDownloadService.isRemotelyReadable(bucket, key)) {
+                // Plain zips are read entry by entry in place, fetching only the entries that are asked for
+                processDocumentService.processRemoteDocument(bucket, key, entryNames, expectedChecksums);
+            } else {
+                Optional<ArchiveFormat> archiveFormat = documentDownloadService.findArchiveFormat(bucket, key);
+                InputStream downloadedStream = documentDownloadService.downloadSingleFile(bucket, key);
+                processDocumentService.processDocument(key, downloadedStream, archiveFormat, entryNames, expectedChecksums);
+            }
             log.info("Downloaded file={} from bucket={} successfully.", key, bucket);
             return ResponseEntity
                     .status(HttpStatus.OK)
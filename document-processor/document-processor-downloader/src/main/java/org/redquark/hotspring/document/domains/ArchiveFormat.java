@@ -0,0 +1,51 @@
+package org.redquark.hotspring.document.domains;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+@Getter
+@RequiredArgsConstructor
+public enum ArchiveFormat {
+
+    ZIP("zip", ".zip", new byte[]{0x50, 0x4B}),
+    ZSTD("tar.zst", ".tar.zst", new byte[]{0x28, (byte) 0xB5, 0x2F, (byte) 0xFD});
+
+    public static final int SIGNATURE_LENGTH = 4;
+
+    private final String metadataValue;
+    private final String extension;
+    private final byte[] signature;
+
+    public static Optional<ArchiveFormat> fromMetadataValue(String metadataValue) {
+        return Arrays.stream(values())
+                .filter(format -> format.metadataValue.equals(metadataValue))
+                .findFirst();
+    }
+
+    public static Optional<ArchiveFormat> fromKey(String key) {
+        return Arrays.stream(values())
+                .filter(format -> key != null && key.endsWith(format.extension))
+                .findFirst();
+    }
+
+    public static Optional<ArchiveFormat> fromSignature(byte[] header, int length) {
+        return Arrays.stream(values())
+                .filter(format -> format.matches(header, length))
+                .findFirst();
+    }
+
+    private boolean matches(byte[] header, int length) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (header[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
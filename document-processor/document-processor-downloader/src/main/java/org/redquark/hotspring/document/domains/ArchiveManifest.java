@@ -0,0 +1,17 @@
+package org.redquark.hotspring.document.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchiveManifest {
+
+    private String name;
+    private String format;
+    private List<ArchiveEntry> entries;
+}
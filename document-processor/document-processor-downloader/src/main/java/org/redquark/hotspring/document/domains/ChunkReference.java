@@ -0,0 +1,14 @@
+package org.redquark.hotspring.document.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkReference {
+
+    private String hash;
+    private int size;
+}
@@ -2,6 +2,7 @@ package org.redquark.hotspring.document.domains;
 
 import lombok.Builder;
 import lombok.Data;
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
 
 import java.io.Serializable;
 
@@ -11,4 +12,8 @@ public class Document implements Serializable {
 
     private String name;
     private byte[] contents;
+    private PayloadChecksum checksum;
+    // Position of the entry in its archive, and the number of entries when the archive lists them up front
+    private Integer entryIndex;
+    private Integer entryCount;
 }
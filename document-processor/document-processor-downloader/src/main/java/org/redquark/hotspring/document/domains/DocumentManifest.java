@@ -0,0 +1,17 @@
+package org.redquark.hotspring.document.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentManifest {
+
+    private String name;
+    private long size;
+    private List<ChunkReference> chunks;
+}
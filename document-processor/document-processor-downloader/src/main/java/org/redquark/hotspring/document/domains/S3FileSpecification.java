@@ -3,10 +3,14 @@ package org.redquark.hotspring.document.domains;
 import lombok.Builder;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 @Builder
 public class S3FileSpecification {
 
     private String bucket;
     private String key;
+    // Only these entries of the archive are processed when given
+    private List<String> entries;
 }
@@ -0,0 +1,8 @@
+package org.redquark.hotspring.document.exceptions;
+
+public class DocumentArchiveException extends RuntimeException {
+
+    public DocumentArchiveException(String message, Exception e) {
+        super(message, e);
+    }
+}
@@ -0,0 +1,18 @@
+package org.redquark.hotspring.document.process;
+
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+import org.redquark.hotspring.document.domains.ArchiveFormat;
+import org.redquark.hotspring.document.domains.Document;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public interface ArchiveDecoder {
+
+    ArchiveFormat getFormat();
+
+    // Entries listed in the expected checksums are verified while they are extracted; every entry is handed
+    // to the sink as soon as it is complete, and the number of entries is returned
+    int extract(InputStream archive, Map<String, PayloadChecksum> expectedChecksums, Consumer<Document> sink);
+}
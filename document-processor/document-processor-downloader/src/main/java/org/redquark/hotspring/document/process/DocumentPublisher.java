@@ -0,0 +1,55 @@
+package org.redquark.hotspring.document.process;
+
+import org.redquark.hotspring.document.domains.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Collects extracted documents into batches and hands each one on as soon as it is full,
+// so no more than one batch of documents is held at a time
+public class DocumentPublisher implements Consumer<Document>, AutoCloseable {
+
+    private final int batchSize;
+    private final Consumer<List<Document>> batchPublisher;
+    private List<Document> batch = new ArrayList<>();
+    private int documents;
+    private int batches;
+
+    public DocumentPublisher(int batchSize, Consumer<List<Document>> batchPublisher) {
+        this.batchSize = Math.max(batchSize, 1);
+        this.batchPublisher = batchPublisher;
+    }
+
+    @Override
+    public void accept(Document document) {
+        batch.add(document);
+        documents++;
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    public int getDocuments() {
+        return documents;
+    }
+
+    public int getBatches() {
+        return batches;
+    }
+
+    // Publishes the last, partly filled batch
+    @Override
+    public void close() {
+        if (!batch.isEmpty()) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        List<Document> full = batch;
+        batch = new ArrayList<>(batchSize);
+        batches++;
+        batchPublisher.accept(full);
+    }
+}
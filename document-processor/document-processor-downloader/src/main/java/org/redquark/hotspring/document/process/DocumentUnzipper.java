@@ -1,6 +1,11 @@
 package org.redquark.hotspring.document.process;
 
 import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
+import org.redquark.hotspring.commons.integrity.PayloadDigest;
+import org.redquark.hotspring.document.configs.ExtractionDownloaderConfig;
+import org.redquark.hotspring.document.domains.ArchiveFormat;
 import org.redquark.hotspring.document.domains.Document;
 import org.redquark.hotspring.document.exceptions.DocumentUnzipException;
 import org.springframework.stereotype.Component;
@@ -8,48 +13,168 @@ import org.springframework.stereotype.Component;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 @Component
 @Slf4j
-public class DocumentUnzipper {
+public class DocumentUnzipper implements ArchiveDecoder {
 
-    private static final int BUFFER_SIZE = 1 << 10;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String INFLATER_EXECUTOR = "entry-inflater";
 
-    public List<Document> unzip(InputStream zippedIs) {
-        List<Document> unzippedFiles = new ArrayList<>();
+    private final ExtractionDownloaderConfig extractionConfig;
+    private final ExecutorService inflaterPool;
+
+    public DocumentUnzipper(ExtractionDownloaderConfig extractionConfig, ExecutorRegistry executorRegistry) {
+        this.extractionConfig = extractionConfig;
+        this.inflaterPool = executorRegistry.get(INFLATER_EXECUTOR);
+    }
+
+    @Override
+    public ArchiveFormat getFormat() {
+        return ArchiveFormat.ZIP;
+    }
+
+    @Override
+    public int extract(InputStream zippedIs, Map<String, PayloadChecksum> expectedChecksums, Consumer<Document> sink) {
+        return Boolean.TRUE.equals(extractionConfig.getParallel())
+                ? extractParallel(zippedIs, expectedChecksums, sink)
+                : extractSequential(zippedIs, expectedChecksums, sink);
+    }
+
+    private int extractSequential(InputStream zippedIs, Map<String, PayloadChecksum> expectedChecksums, Consumer<Document> sink) {
+        int entries = 0;
+        EntryVerifier entryVerifier = new EntryVerifier(expectedChecksums);
         try (ZipInputStream zipInputStream = new ZipInputStream(zippedIs)) {
             ZipEntry zipEntry = zipInputStream.getNextEntry();
             while (zipEntry != null) {
                 byte[] bytes = new byte[0];
+                PayloadChecksum checksum = null;
                 if (!zipEntry.isDirectory()) {
-                    bytes = extractFile(zipInputStream);
+                    PayloadDigest digest = new PayloadDigest();
+                    bytes = extractFile(zipInputStream, zipEntry.getSize(), digest);
+                    checksum = entryVerifier.verify(zipEntry.getName(), digest);
                 }
-                unzippedFiles.add(Document.builder().name(zipEntry.getName()).contents(bytes).build());
+                sink.accept(Document.builder().name(zipEntry.getName()).contents(bytes).checksum(checksum)
+                        .entryIndex(entries).build());
+                entries++;
                 zipInputStream.closeEntry();
                 zipEntry = zipInputStream.getNextEntry();
             }
-            return unzippedFiles;
+            entryVerifier.verifyComplete();
+            return entries;
         } catch (IOException e) {
             log.error("Exception occurred while extracting zip file: {}", e.getMessage(), e);
             throw new DocumentUnzipException("Could not unzip the document", e);
         }
     }
 
-    private byte[] extractFile(ZipInputStream zipInputStream) {
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+    // The archive is spooled to disk so that its central directory can be read and every entry inflated
+    // on its own thread; entries are handed on in the order they complete, tagged with their position
+    private int extractParallel(InputStream zippedIs, Map<String, PayloadChecksum> expectedChecksums, Consumer<Document> sink) {
+        Path spoolFile = null;
+        List<Future<Document>> entryTasks = new ArrayList<>();
+        try {
+            Path spoolDirectory = Files.createDirectories(Path.of(extractionConfig.getSpoolDirectory()));
+            spoolFile = Files.createTempFile(spoolDirectory, "archive-", ".zip");
+            try (zippedIs) {
+                Files.copy(zippedIs, spoolFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (ZipFile zipFile = new ZipFile(spoolFile.toFile())) {
+                List<? extends ZipEntry> zipEntries = Collections.list(zipFile.entries());
+                int entryCount = zipEntries.size();
+                log.info("Inflating {} entries of {} bytes in parallel", entryCount, Files.size(spoolFile));
+                EntryVerifier entryVerifier = new EntryVerifier(expectedChecksums);
+                CompletionService<Document> completionService = new ExecutorCompletionService<>(inflaterPool);
+                // At most this many inflated entries wait in memory for the sink
+                int maxInFlight = Math.max(extractionConfig.getMaxEntriesInFlight(), 1);
+                int submitted = 0;
+                for (int completed = 0; completed < entryCount; completed++) {
+                    while (submitted < entryCount && submitted - completed < maxInFlight) {
+                        ZipEntry zipEntry = zipEntries.get(submitted);
+                        int entryIndex = submitted;
+                        entryTasks.add(completionService.submit(() -> inflate(zipFile, zipEntry, entryIndex, entryCount, entryVerifier)));
+                        submitted++;
+                    }
+                    sink.accept(completionService.take().get());
+                }
+                entryVerifier.verifyComplete();
+                return entryCount;
+            }
+        } catch (IOException e) {
+            log.error("Exception occurred while extracting zip file: {}", e.getMessage(), e);
+            throw new DocumentUnzipException("Could not unzip the document", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DocumentUnzipException("Interrupted while unzipping the document", e);
+        } catch (ExecutionException e) {
+            log.error("Exception occurred while inflating zip entry: {}", e.getCause().getMessage(), e.getCause());
+            if (e.getCause() instanceof RuntimeException && !(e.getCause() instanceof UncheckedIOException)) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new DocumentUnzipException("Could not unzip the document", e);
+        } finally {
+            // The pool is shared, so only the entries of this archive are stopped
+            entryTasks.forEach(task -> task.cancel(true));
+            deleteSpoolFile(spoolFile);
+        }
+    }
+
+    private Document inflate(ZipFile zipFile, ZipEntry zipEntry, int entryIndex, int entryCount, EntryVerifier entryVerifier) {
+        byte[] bytes = new byte[0];
+        PayloadChecksum checksum = null;
+        if (!zipEntry.isDirectory()) {
+            PayloadDigest digest = new PayloadDigest();
+            try (InputStream entryStream = zipFile.getInputStream(zipEntry)) {
+                bytes = extractFile(entryStream, zipEntry.getSize(), digest);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            checksum = entryVerifier.verify(zipEntry.getName(), digest);
+        }
+        return Document.builder().name(zipEntry.getName()).contents(bytes).checksum(checksum)
+                .entryIndex(entryIndex).entryCount(entryCount).build();
+    }
+
+    // The entry is digested as it is copied out, so the check costs no second read of the bytes
+    private byte[] extractFile(InputStream entryStream, long size, PayloadDigest digest) throws IOException {
+        // Entries whose size is known up front are copied without growing the buffer
+        int initialSize = size >= 0 ? (int) Math.min(size, Integer.MAX_VALUE - 8) : BUFFER_SIZE;
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream(initialSize)) {
             byte[] bytes = new byte[BUFFER_SIZE];
             int read;
-            while ((read = zipInputStream.read(bytes)) != -1) {
+            while ((read = entryStream.read(bytes)) != -1) {
+                digest.update(bytes, 0, read);
                 outputStream.write(bytes, 0, read);
             }
             return outputStream.toByteArray();
+        }
+    }
+
+    private static void deleteSpoolFile(Path spoolFile) {
+        if (spoolFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spoolFile);
         } catch (IOException e) {
-            log.error("Exception occurred while extracting zip file: {}", e.getMessage(), e);
+            log.warn("Could not delete spooled archive={}: {}", spoolFile, e.getMessage());
         }
-        return null;
     }
 }
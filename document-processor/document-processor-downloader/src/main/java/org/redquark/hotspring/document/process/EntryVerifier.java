@@ -0,0 +1,39 @@
+package org.redquark.hotspring.document.process;
+
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+import org.redquark.hotspring.commons.exceptions.ChecksumMismatchException;
+import org.redquark.hotspring.commons.integrity.PayloadDigest;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Checks the entries of one archive against its manifest as they are extracted
+public class EntryVerifier {
+
+    private final Map<String, PayloadChecksum> expectedChecksums;
+    // Entries may be verified from several threads when they are inflated in parallel
+    private final Set<String> verifiedEntries = ConcurrentHashMap.newKeySet();
+
+    public EntryVerifier(Map<String, PayloadChecksum> expectedChecksums) {
+        this.expectedChecksums = expectedChecksums;
+    }
+
+    // Archives without a manifest are only checked by their own format, the digest is still handed on to the S3 writes
+    public PayloadChecksum verify(String name, PayloadDigest digest) {
+        PayloadChecksum expected = expectedChecksums.get(name);
+        if (expected != null) {
+            digest.verify(name, expected);
+            verifiedEntries.add(name);
+        }
+        return digest.toChecksum();
+    }
+
+    public void verifyComplete() {
+        for (String name : expectedChecksums.keySet()) {
+            if (!verifiedEntries.contains(name)) {
+                throw new ChecksumMismatchException("Entry=" + name + " of the manifest is missing from the archive", null);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.redquark.hotspring.document.process;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.blobs.BlobStore;
+import org.redquark.hotspring.commons.domains.BlobMetadata;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
+import org.redquark.hotspring.document.exceptions.DecryptionException;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+@Component
+@Slf4j
+public class GcmEnvelopeDecryptor {
+
+    public static final String ENVELOPE = "gcm-parts";
+    public static final String ENCRYPTION_METADATA = "encryption";
+    private static final String ENVELOPE_KEY_METADATA = "envelope-key";
+    private static final String ENVELOPE_FRAME_SIZE_METADATA = "envelope-frame-size";
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String PART_DECRYPTOR_EXECUTOR = "part-decryptor";
+
+    private final PGPDecryptor pgpDecryptor;
+    private final int workers;
+    private final ExecutorService partDecryptorPool;
+
+    public GcmEnvelopeDecryptor(PGPDecryptor pgpDecryptor, ExecutorRegistry executorRegistry) {
+        this.pgpDecryptor = pgpDecryptor;
+        this.workers = executorRegistry.getSize(PART_DECRYPTOR_EXECUTOR);
+        this.partDecryptorPool = executorRegistry.get(PART_DECRYPTOR_EXECUTOR);
+    }
+
+    public boolean isEnveloped(Map<String, String> userMetadata) {
+        return ENVELOPE.equals(userMetadata.get(ENCRYPTION_METADATA));
+    }
+
+    public InputStream open(BlobStore blobStore, BlobMetadata blobMetadata) {
+        Map<String, String> userMetadata = blobMetadata.getUserMetadata();
+        byte[] wrappedKey = Base64.getDecoder().decode(userMetadata.get(ENVELOPE_KEY_METADATA));
+        SecretKey dataKey = new SecretKeySpec(pgpDecryptor.decrypt(new ByteArrayInputStream(wrappedKey)), "AES");
+        long frameSize = Long.parseLong(userMetadata.get(ENVELOPE_FRAME_SIZE_METADATA));
+        long contentLength = blobMetadata.getContentLength();
+        int frames = (int) ((contentLength + frameSize - 1) / frameSize);
+        if (frames == 0) {
+            // Even an empty payload is written as one authenticated last part, so nothing at all means truncation
+            throw new DecryptionException("Enveloped object " + blobMetadata.getKey() + " has no parts", null);
+        }
+        log.info("Decrypting key={} from {} parts on {} threads", blobMetadata.getKey(), frames, workers);
+        return new EnvelopeInputStream(blobStore, blobMetadata.getKey(), dataKey, frameSize, contentLength, frames);
+    }
+
+    private byte[] decryptFrame(SecretKey dataKey, byte[] frame, int partNumber, boolean last) {
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, dataKey, new GCMParameterSpec(TAG_LENGTH * 8, frame, 0, NONCE_LENGTH));
+            cipher.updateAAD(ByteBuffer.allocate(Integer.BYTES + 1).putInt(partNumber).put((byte) (last ? 1 : 0)).array());
+            return cipher.doFinal(frame, NONCE_LENGTH, frame.length - NONCE_LENGTH);
+        } catch (GeneralSecurityException e) {
+            // A tag mismatch means the part was altered, reordered or the object was truncated
+            throw new DecryptionException("Could not authenticate part " + partNumber, e);
+        }
+    }
+
+    // Fetches and decrypts up to twice as many parts as there are workers ahead of the reader, in order
+    private class EnvelopeInputStream extends InputStream {
+
+        private final BlobStore blobStore;
+        private final String key;
+        private final SecretKey dataKey;
+        private final long frameSize;
+        private final long contentLength;
+        private final int frames;
+        private final Deque<CompletableFuture<byte[]>> pendingFrames = new ArrayDeque<>();
+
+        private int nextFrame;
+        private byte[] current = new byte[0];
+        private int position;
+
+        EnvelopeInputStream(BlobStore blobStore, String key, SecretKey dataKey, long frameSize, long contentLength, int frames) {
+            this.blobStore = blobStore;
+            this.key = key;
+            this.dataKey = dataKey;
+            this.frameSize = frameSize;
+            this.contentLength = contentLength;
+            this.frames = frames;
+            prefetch();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (position == current.length) {
+                if (pendingFrames.isEmpty()) {
+                    return -1;
+                }
+                try {
+                    current = pendingFrames.poll().join();
+                } catch (CompletionException e) {
+                    close();
+                    throw new IOException("Could not decrypt " + key, e.getCause());
+                }
+                position = 0;
+                prefetch();
+            }
+            int chunk = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, chunk);
+            position += chunk;
+            return chunk;
+        }
+
+        @Override
+        public void close() {
+            pendingFrames.forEach(frame -> frame.cancel(true));
+            pendingFrames.clear();
+        }
+
+        private void prefetch() {
+            while (nextFrame < frames && pendingFrames.size() < workers * 2) {
+                int frame = nextFrame++;
+                long start = frame * frameSize;
+                int length = (int) (Math.min(contentLength, start + frameSize) - start);
+                // The ranged read waits on the client, only the decryption takes a pool thread
+                pendingFrames.add(blobStore.getRange(key, start, length)
+                        .thenApplyAsync(data -> decryptFrame(dataKey, toBytes(data), frame + 1, frame == frames - 1), partDecryptorPool));
+            }
+        }
+
+        private byte[] toBytes(ByteBuffer data) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            return bytes;
+        }
+    }
+}
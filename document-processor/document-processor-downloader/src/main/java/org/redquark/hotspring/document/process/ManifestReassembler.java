@@ -0,0 +1,85 @@
+package org.redquark.hotspring.document.process;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.blobs.BlobStore;
+import org.redquark.hotspring.commons.domains.BlobMetadata;
+import org.redquark.hotspring.document.domains.ChunkReference;
+import org.redquark.hotspring.document.domains.DocumentManifest;
+import org.redquark.hotspring.document.exceptions.DocumentDownloadException;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ManifestReassembler {
+
+    // Written by the uploader's deduplicator on every manifest, whatever the name of the document
+    private static final String DEDUP_METADATA = "dedup";
+    private static final String DEDUP_METADATA_VALUE = "fastcdc";
+    private static final String CHUNK_PREFIX = "chunks/";
+
+    private final ObjectMapper objectMapper;
+
+    public boolean isManifest(Map<String, String> userMetadata) {
+        return DEDUP_METADATA_VALUE.equals(userMetadata.get(DEDUP_METADATA));
+    }
+
+    public InputStream open(BlobStore blobStore, String folder, BlobMetadata blobMetadata) {
+        DocumentManifest manifest;
+        try {
+            manifest = objectMapper.readValue(toBytes(blobStore.getRange(blobMetadata.getKey(), 0, (int) blobMetadata.getContentLength()).join()), DocumentManifest.class);
+        } catch (IOException | CompletionException e) {
+            log.error("Exception occurred while reading manifest={}: {}", blobMetadata.getKey(), e.getMessage(), e);
+            throw new DocumentDownloadException("Could not read the manifest", e);
+        }
+        log.info("Reassembling {} ({} bytes) from {} chunks", manifest.getName(), manifest.getSize(), manifest.getChunks().size());
+        Iterator<ChunkReference> chunks = manifest.getChunks().iterator();
+        // Chunks are fetched one at a time as the reader reaches them, so at most one chunk is held in memory
+        return new SequenceInputStream(new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return fetchChunk(blobStore, folder, chunks.next());
+            }
+        });
+    }
+
+    private InputStream fetchChunk(BlobStore blobStore, String folder, ChunkReference chunk) {
+        try {
+            byte[] data = toBytes(blobStore.getRange(folder + "/" + CHUNK_PREFIX + chunk.getHash(), 0, chunk.getSize()).join());
+            String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+            if (data.length != chunk.getSize() || !hash.equals(chunk.getHash())) {
+                throw new IOException("Chunk " + chunk.getHash() + " does not match its manifest entry");
+            }
+            return new ByteArrayInputStream(data);
+        } catch (IOException | NoSuchAlgorithmException | CompletionException e) {
+            log.error("Exception occurred while fetching chunk={}: {}", chunk.getHash(), e.getMessage(), e);
+            throw new DocumentDownloadException("Could not fetch chunk", e);
+        }
+    }
+
+    private static byte[] toBytes(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return bytes;
+    }
+}
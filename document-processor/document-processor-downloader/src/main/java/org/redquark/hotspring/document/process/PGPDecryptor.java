@@ -1,6 +1,5 @@
 package org.redquark.hotspring.document.process;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openpgp.PGPCompressedData;
@@ -25,38 +24,59 @@ import org.redquark.hotspring.document.configs.CryptoDownloaderConfig;
 import org.redquark.hotspring.document.exceptions.DecryptionException;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayOutputStream;
+import javax.crypto.Cipher;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.GeneralSecurityException;
 import java.security.Security;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 @Slf4j
-@RequiredArgsConstructor
 public class PGPDecryptor {
 
     private static final String PRIVATE_KEY = "private.asc";
 
     private final CryptoDownloaderConfig cryptoConfig;
+    private final Map<Integer, String> contentProviders = new ConcurrentHashMap<>();
+
+    public PGPDecryptor(CryptoDownloaderConfig cryptoConfig) {
+        this.cryptoConfig = cryptoConfig;
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
 
     public byte[] decrypt(InputStream cipheredStream) {
-        try (InputStream privateKeyStream = new FileInputStream(cryptoConfig.getKeyPath() + "/" + PRIVATE_KEY)) {
-            return decrypt(cipheredStream, privateKeyStream, cryptoConfig.getPassword().toCharArray());
+        try (InputStream clearStream = decryptStream(cipheredStream)) {
+            return clearStream.readAllBytes();
         } catch (IOException e) {
             log.error("Exception while decrypting the file: {}", e.getMessage(), e);
             throw new DecryptionException("Could not decrypt file", e);
         }
     }
 
-    private byte[] decrypt(
+    public InputStream decryptStream(InputStream cipheredStream) {
+        try (InputStream privateKeyStream = new FileInputStream(cryptoConfig.getKeyPath() + "/" + PRIVATE_KEY)) {
+            PGPSecretKeyRingCollection ringCollection = new PGPSecretKeyRingCollection(PGPUtil.getDecoderStream(privateKeyStream), new JcaKeyFingerprintCalculator());
+            return decryptStream(cipheredStream, ringCollection, cryptoConfig.getPassword().toCharArray());
+        } catch (IOException | PGPException e) {
+            log.error("Exception while decrypting the file: {}", e.getMessage(), e);
+            throw new DecryptionException("Could not decrypt file", e);
+        }
+    }
+
+    private InputStream decryptStream(
             InputStream cipheredFileStream,
-            InputStream privateKeyStream,
+            PGPSecretKeyRingCollection ringCollection,
             char[] passphrase
     ) {
-        Security.addProvider(new BouncyCastleProvider());
-        ByteArrayOutputStream decryptedBytes = new ByteArrayOutputStream();
+        // The symmetric and compression algorithms are read from the packets and armoring is detected
+        // by the decoder stream, so the uploader's settings need not be repeated here
         try {
             cipheredFileStream = PGPUtil.getDecoderStream(cipheredFileStream);
             PGPObjectFactory pgpObjectFactory = new PGPObjectFactory(cipheredFileStream, new JcaKeyFingerprintCalculator());
@@ -72,15 +92,18 @@ public class PGPDecryptor {
             PGPPublicKeyEncryptedData pgpPublicKeyEncryptedData = null;
             while (secretKey == null && encryptedDataIterator.hasNext()) {
                 pgpPublicKeyEncryptedData = (PGPPublicKeyEncryptedData) encryptedDataIterator.next();
-                secretKey = findSecretKey(privateKeyStream, pgpPublicKeyEncryptedData.getKeyID(), passphrase);
+                secretKey = findSecretKey(ringCollection, pgpPublicKeyEncryptedData.getKeyID(), passphrase);
             }
             if (secretKey == null) {
                 throw new IllegalArgumentException("Secret key for message not found");
             }
-            PublicKeyDataDecryptorFactory publicKeyDataDecryptorFactory = new JcePublicKeyDataDecryptorFactoryBuilder()
-                    .setProvider(cryptoConfig.getProvider())
-                    .setContentProvider(cryptoConfig.getProvider())
-                    .build(secretKey);
+            PublicKeyDataDecryptorFactory publicKeyDataDecryptorFactory = decryptorFactory(secretKey, cryptoConfig.getCipherProvider());
+            // The configured provider may not implement the cipher the message was written with, e.g. SunJCE has no CAST5
+            String contentProvider = contentProviders.computeIfAbsent(
+                    pgpPublicKeyEncryptedData.getSymmetricAlgorithm(publicKeyDataDecryptorFactory), this::contentProvider);
+            if (!contentProvider.equals(cryptoConfig.getCipherProvider())) {
+                publicKeyDataDecryptorFactory = decryptorFactory(secretKey, contentProvider);
+            }
             InputStream clear = pgpPublicKeyEncryptedData.getDataStream(publicKeyDataDecryptorFactory);
             PGPObjectFactory plainFactory = new PGPObjectFactory(clear, new JcaKeyFingerprintCalculator());
             Object message = plainFactory.nextObject();
@@ -89,39 +112,95 @@ public class PGPDecryptor {
                 message = pgpFactory.nextObject();
             }
             if (message instanceof PGPLiteralData literalData) {
-                InputStream unclear = literalData.getInputStream();
-                unclear.transferTo(decryptedBytes);
+                return new VerifyingInputStream(literalData.getInputStream(), pgpPublicKeyEncryptedData);
             } else if (message instanceof PGPOnePassSignatureList) {
                 throw new PGPException("Encryption message doesn't contain literal data but signed data");
             } else {
                 throw new PGPException("Unknown type of message");
             }
-            if (pgpPublicKeyEncryptedData.isIntegrityProtected() && !pgpPublicKeyEncryptedData.verify()) {
-                throw new PGPException("Integrity check of message is failed");
-            }
-            return decryptedBytes.toByteArray();
         } catch (IOException | PGPException e) {
             log.error("Exception occurred while decrypting file: {}", e.getMessage(), e);
             throw new DecryptionException("Could not decrypt file", e);
         }
     }
 
-    private PGPPrivateKey findSecretKey(InputStream privateKeyStream, long keyID, char[] passphrase) {
+    private PublicKeyDataDecryptorFactory decryptorFactory(PGPPrivateKey secretKey, String contentProvider) {
+        return new JcePublicKeyDataDecryptorFactoryBuilder()
+                .setProvider(cryptoConfig.getProvider())
+                .setContentProvider(contentProvider)
+                .build(secretKey);
+    }
+
+    private String contentProvider(int symmetricAlgorithm) {
+        String cipherName = PGPUtil.getSymmetricCipherName(symmetricAlgorithm);
+        try {
+            Cipher.getInstance(cipherName + "/CFB/NoPadding", cryptoConfig.getCipherProvider());
+            return cryptoConfig.getCipherProvider();
+        } catch (GeneralSecurityException e) {
+            log.warn("{} does not implement {}, decrypting it with {}", cryptoConfig.getCipherProvider(), cipherName,
+                    BouncyCastleProvider.PROVIDER_NAME);
+            return BouncyCastleProvider.PROVIDER_NAME;
+        }
+    }
+
+    private PGPPrivateKey findSecretKey(PGPSecretKeyRingCollection ringCollection, long keyID, char[] passphrase) {
         try {
-            PGPSecretKeyRingCollection ringCollection = new PGPSecretKeyRingCollection(PGPUtil.getDecoderStream(privateKeyStream), new JcaKeyFingerprintCalculator());
             PGPSecretKey pgpSecretKey = ringCollection.getSecretKey(keyID);
             if (pgpSecretKey == null) {
                 return null;
             }
             PBESecretKeyDecryptor decryptor = new JcePBESecretKeyDecryptorBuilder(new JcaPGPDigestCalculatorProviderBuilder()
-                    .setProvider(cryptoConfig.getProvider())
                     .setProvider(cryptoConfig.getProvider())
                     .build())
                     .setProvider(cryptoConfig.getProvider()).build(passphrase);
             return pgpSecretKey.extractPrivateKey(decryptor);
-        } catch (PGPException | IOException e) {
+        } catch (PGPException e) {
             log.error("Exception occurred while finding the secret key: {}", e.getMessage(), e);
             throw new DecryptionException("Could not find private key", e);
         }
     }
+
+    // The modification detection code trails the data, so the message can only be verified once it is fully read
+    private static class VerifyingInputStream extends FilterInputStream {
+
+        private final PGPPublicKeyEncryptedData encryptedData;
+        private boolean verified;
+
+        VerifyingInputStream(InputStream literalStream, PGPPublicKeyEncryptedData encryptedData) {
+            super(literalStream);
+            this.encryptedData = encryptedData;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read == -1) {
+                verify();
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                verify();
+            }
+            return read;
+        }
+
+        private void verify() throws IOException {
+            if (verified) {
+                return;
+            }
+            verified = true;
+            try {
+                if (encryptedData.isIntegrityProtected() && !encryptedData.verify()) {
+                    throw new IOException("Integrity check of message is failed");
+                }
+            } catch (PGPException e) {
+                throw new IOException("Integrity check of message is failed", e);
+            }
+        }
+    }
 }
@@ -0,0 +1,310 @@
+package org.redquark.hotspring.document.process;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.blobs.BlobStore;
+import org.redquark.hotspring.commons.domains.BlobMetadata;
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
+import org.redquark.hotspring.commons.integrity.PayloadDigest;
+import org.redquark.hotspring.document.configs.ExtractionDownloaderConfig;
+import org.redquark.hotspring.document.domains.Document;
+import org.redquark.hotspring.document.exceptions.DocumentUnzipException;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+// Reads entries of a zip object in place: the central directory is fetched from the end of the object
+// with ranged requests, then every selected entry is fetched on its own connection and inflated
+@Component
+@Slf4j
+public class RemoteZipReader {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int END_LENGTH = 22;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int ZIP64_END_LENGTH = 56;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    // The local header repeats the name and may carry other extra fields than the central one,
+    // this much is read past them so that one request covers the entry in all but odd archives
+    private static final int LOCAL_HEADER_SLACK = 1 << 10;
+    private static final String INFLATER_EXECUTOR = "entry-inflater";
+
+    private final ExtractionDownloaderConfig extractionConfig;
+    private final ExecutorService inflaterPool;
+
+    public RemoteZipReader(ExtractionDownloaderConfig extractionConfig, ExecutorRegistry executorRegistry) {
+        this.extractionConfig = extractionConfig;
+        this.inflaterPool = executorRegistry.get(INFLATER_EXECUTOR);
+    }
+
+    // Entries are handed to the sink in archive order; an empty selection reads every entry
+    public int extract(BlobStore blobStore, BlobMetadata blobMetadata, Set<String> entryNames,
+                       Map<String, PayloadChecksum> expectedChecksums, Consumer<Document> sink) {
+        String key = blobMetadata.getKey();
+        long start = System.nanoTime();
+        List<CentralEntry> centralDirectory = readCentralDirectory(blobStore, key, blobMetadata.getContentLength());
+        List<CentralEntry> selected = entryNames.isEmpty()
+                ? centralDirectory
+                : centralDirectory.stream().filter(entry -> entryNames.contains(entry.name)).collect(Collectors.toList());
+        if (!entryNames.isEmpty()) {
+            Set<String> missing = new HashSet<>(entryNames);
+            selected.forEach(entry -> missing.remove(entry.name));
+            if (!missing.isEmpty()) {
+                throw new DocumentUnzipException("Entries " + missing + " are not in the archive " + key, null);
+            }
+        }
+        log.info("Read the central directory of key={} in {} ms, fetching {} of {} entries",
+                key, (System.nanoTime() - start) / 1_000_000, selected.size(), centralDirectory.size());
+        EntryVerifier entryVerifier = new EntryVerifier(entryNames.isEmpty()
+                ? expectedChecksums
+                : expectedChecksums.entrySet().stream()
+                .filter(expected -> entryNames.contains(expected.getKey()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+        int maxInFlight = Math.max(extractionConfig.getMaxEntriesInFlight(), 1);
+        Deque<CompletableFuture<Document>> pendingEntries = new ArrayDeque<>();
+        try {
+            int next = 0;
+            for (int emitted = 0; emitted < selected.size(); emitted++) {
+                while (next < selected.size() && pendingEntries.size() < maxInFlight) {
+                    CentralEntry entry = selected.get(next++);
+                    // The ranged read waits on the client, only the inflation takes a pool thread
+                    pendingEntries.add(blobStore.getRange(key, entry.localHeaderOffset, fetchLength(key, entry, blobMetadata.getContentLength()))
+                            .thenComposeAsync(data -> readEntry(blobStore, key, entry, data), inflaterPool)
+                            .thenApply(bytes -> toDocument(entry, bytes, entryVerifier, centralDirectory.size())));
+                }
+                sink.accept(pendingEntries.poll().join());
+            }
+        } catch (CompletionException e) {
+            log.error("Exception occurred while reading entries of key={}: {}", key, e.getCause().getMessage(), e.getCause());
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new DocumentUnzipException("Could not read the entries of " + key, e);
+        } finally {
+            pendingEntries.forEach(entry -> entry.cancel(true));
+        }
+        entryVerifier.verifyComplete();
+        return selected.size();
+    }
+
+    private List<CentralEntry> readCentralDirectory(BlobStore blobStore, String key, long contentLength) {
+        // The end record sits within the last 64 KB, behind the archive comment
+        int tailLength = (int) Math.min(contentLength, END_LENGTH + MAX_COMMENT_LENGTH + ZIP64_LOCATOR_LENGTH);
+        long tailOffset = contentLength - tailLength;
+        ByteBuffer tail = littleEndian(blobStore.getRange(key, tailOffset, tailLength).join());
+        int end = findEnd(tail);
+        if (end < 0) {
+            throw new DocumentUnzipException("No end of central directory in " + key, null);
+        }
+        long count = Short.toUnsignedInt(tail.getShort(end + 10));
+        long centralDirectorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long centralDirectoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+        if (count == ZIP64_MAGIC_COUNT || centralDirectorySize == ZIP64_MAGIC || centralDirectoryOffset == ZIP64_MAGIC) {
+            int locator = end - ZIP64_LOCATOR_LENGTH;
+            if (locator < 0 || tail.getInt(locator) != ZIP64_LOCATOR_SIGNATURE) {
+                throw new DocumentUnzipException("No zip64 end locator in " + key, null);
+            }
+            long zip64EndOffset = tail.getLong(locator + 8);
+            ByteBuffer zip64End = littleEndian(blobStore.getRange(key, zip64EndOffset, ZIP64_END_LENGTH).join());
+            if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                throw new DocumentUnzipException("No zip64 end of central directory in " + key, null);
+            }
+            count = zip64End.getLong(32);
+            centralDirectorySize = zip64End.getLong(40);
+            centralDirectoryOffset = zip64End.getLong(48);
+        }
+        if (centralDirectorySize > Integer.MAX_VALUE) {
+            throw new DocumentUnzipException("The central directory of " + key + " is too large to fetch", null);
+        }
+        // Small archives have the central directory in the tail already
+        ByteBuffer centralDirectory = centralDirectoryOffset >= tailOffset
+                ? tail.duplicate().position((int) (centralDirectoryOffset - tailOffset)).limit((int) (centralDirectoryOffset - tailOffset + centralDirectorySize)).slice().order(ByteOrder.LITTLE_ENDIAN)
+                : littleEndian(blobStore.getRange(key, centralDirectoryOffset, (int) centralDirectorySize).join());
+        return parseCentralDirectory(key, centralDirectory, count, centralDirectoryOffset);
+    }
+
+    private static int findEnd(ByteBuffer tail) {
+        for (int position = tail.limit() - END_LENGTH; position >= 0; position--) {
+            if (tail.getInt(position) == END_SIGNATURE) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static List<CentralEntry> parseCentralDirectory(String key, ByteBuffer directory, long count, long centralDirectoryOffset) {
+        List<CentralEntry> entries = new ArrayList<>();
+        int position = 0;
+        for (long i = 0; i < count; i++) {
+            if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new DocumentUnzipException("Corrupt central directory in " + key, null);
+            }
+            int method = Short.toUnsignedInt(directory.getShort(position + 10));
+            long crc = Integer.toUnsignedLong(directory.getInt(position + 16));
+            long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+            long size = Integer.toUnsignedLong(directory.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+            byte[] name = new byte[nameLength];
+            directory.get(position + CENTRAL_HEADER_LENGTH, name);
+            // Values that overflow 32 bits are kept in the zip64 extra field, in this order
+            int extra = position + CENTRAL_HEADER_LENGTH + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = Short.toUnsignedInt(directory.getShort(extra));
+                int length = Short.toUnsignedInt(directory.getShort(extra + 2));
+                if (id == ZIP64_EXTRA_ID) {
+                    int field = extra + 4;
+                    if (size == ZIP64_MAGIC) {
+                        size = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGIC) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == ZIP64_MAGIC) {
+                        localHeaderOffset = directory.getLong(field);
+                    }
+                }
+                extra += 4 + length;
+            }
+            entries.add(new CentralEntry(new String(name, StandardCharsets.UTF_8), nameLength, entries.size(), method, crc,
+                    compressedSize, size, localHeaderOffset));
+            position = extraEnd + commentLength;
+        }
+        return entries;
+    }
+
+    private static int fetchLength(String key, CentralEntry entry, long contentLength) {
+        long length = LOCAL_HEADER_LENGTH + entry.nameLength + entry.compressedSize + LOCAL_HEADER_SLACK;
+        length = Math.min(length, contentLength - entry.localHeaderOffset);
+        if (length > Integer.MAX_VALUE) {
+            throw new DocumentUnzipException("Entry=" + entry.name + " of " + key + " is too large to fetch", null);
+        }
+        return (int) length;
+    }
+
+    // Completes with the inflated entry, fetching the rest of it when the local header was longer than expected
+    private CompletableFuture<byte[]> readEntry(BlobStore blobStore, String key, CentralEntry entry, ByteBuffer data) {
+        ByteBuffer header = littleEndian(data);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new DocumentUnzipException("Corrupt local header of entry=" + entry.name + " in " + key, null);
+        }
+        int dataOffset = LOCAL_HEADER_LENGTH + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+        if (header.limit() >= dataOffset + entry.compressedSize) {
+            return CompletableFuture.completedFuture(inflate(key, entry, header.position(dataOffset).limit((int) (dataOffset + entry.compressedSize)).slice()));
+        }
+        return blobStore.getRange(key, entry.localHeaderOffset + dataOffset, (int) entry.compressedSize)
+                .thenApplyAsync(compressed -> inflate(key, entry, compressed), inflaterPool);
+    }
+
+    private static byte[] inflate(String key, CentralEntry entry, ByteBuffer compressed) {
+        if (entry.size > Integer.MAX_VALUE - 8) {
+            throw new DocumentUnzipException("Entry=" + entry.name + " of " + key + " is too large to extract", null);
+        }
+        byte[] bytes = new byte[(int) entry.size];
+        if (entry.method == ZipEntry.STORED) {
+            compressed.get(bytes);
+        } else if (entry.method == ZipEntry.DEFLATED) {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed);
+                int inflated = 0;
+                while (inflated < bytes.length && !inflater.finished()) {
+                    int read = inflater.inflate(bytes, inflated, bytes.length - inflated);
+                    if (read == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    inflated += read;
+                }
+                if (inflated != bytes.length) {
+                    throw new DocumentUnzipException("Entry=" + entry.name + " of " + key + " is truncated", null);
+                }
+            } catch (DataFormatException e) {
+                throw new DocumentUnzipException("Could not inflate entry=" + entry.name + " of " + key, e);
+            } finally {
+                inflater.end();
+            }
+        } else {
+            throw new DocumentUnzipException("Unsupported compression method " + entry.method + " of entry=" + entry.name, null);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if (crc.getValue() != entry.crc) {
+            throw new DocumentUnzipException("CRC mismatch of entry=" + entry.name + " in " + key, null);
+        }
+        return bytes;
+    }
+
+    private static Document toDocument(CentralEntry entry, byte[] bytes, EntryVerifier entryVerifier, int entryCount) {
+        PayloadChecksum checksum = null;
+        if (!entry.isDirectory()) {
+            PayloadDigest digest = new PayloadDigest();
+            digest.update(bytes, 0, bytes.length);
+            checksum = entryVerifier.verify(entry.name, digest);
+        }
+        return Document.builder().name(entry.name).contents(bytes).checksum(checksum)
+                .entryIndex(entry.index).entryCount(entryCount).build();
+    }
+
+    private static ByteBuffer littleEndian(ByteBuffer buffer) {
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static class CentralEntry {
+
+        private final String name;
+        private final int nameLength;
+        private final int index;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private CentralEntry(String name, int nameLength, int index, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.nameLength = nameLength;
+            this.index = index;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        private boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.redquark.hotspring.document.process;
+
+import com.github.luben.zstd.ZstdInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+import org.redquark.hotspring.commons.integrity.PayloadDigest;
+import org.redquark.hotspring.document.domains.ArchiveFormat;
+import org.redquark.hotspring.document.domains.Document;
+import org.redquark.hotspring.document.exceptions.DocumentArchiveException;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.function.Consumer;
+
+@Component
+@Slf4j
+public class ZstdArchiveDecoder implements ArchiveDecoder {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    @Override
+    public ArchiveFormat getFormat() {
+        return ArchiveFormat.ZSTD;
+    }
+
+    @Override
+    public int extract(InputStream archive, Map<String, PayloadChecksum> expectedChecksums, Consumer<Document> sink) {
+        int entries = 0;
+        EntryVerifier entryVerifier = new EntryVerifier(expectedChecksums);
+        try (TarArchiveInputStream tarInputStream = new TarArchiveInputStream(new ZstdInputStream(archive))) {
+            TarArchiveEntry entry = tarInputStream.getNextTarEntry();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (entry != null) {
+                byte[] bytes = new byte[0];
+                PayloadChecksum checksum = null;
+                if (!entry.isDirectory()) {
+                    // Tar carries no checksum of the contents, so the digest is the only check of the entry
+                    PayloadDigest digest = new PayloadDigest();
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) Math.min(entry.getSize(), Integer.MAX_VALUE - 8));
+                    int read;
+                    while ((read = tarInputStream.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                        outputStream.write(buffer, 0, read);
+                    }
+                    bytes = outputStream.toByteArray();
+                    checksum = entryVerifier.verify(entry.getName(), digest);
+                }
+                sink.accept(Document.builder().name(entry.getName()).contents(bytes).checksum(checksum)
+                        .entryIndex(entries).build());
+                entries++;
+                entry = tarInputStream.getNextTarEntry();
+            }
+            entryVerifier.verifyComplete();
+            return entries;
+        } catch (IOException e) {
+            log.error("Exception occurred while extracting tar.zst file: {}", e.getMessage(), e);
+            throw new DocumentArchiveException("Could not extract the document", e);
+        }
+    }
+}
@@ -1,11 +1,29 @@
 package org.redquark.hotspring.document.services;
 
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+import org.redquark.hotspring.document.domains.ArchiveFormat;
+import org.redquark.hotspring.document.domains.Document;
+
 import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface DocumentDownloadService {
 
     InputStream downloadSingleFile(String bucket, String key);
 
     List<InputStream> downloadAllFiles(String bucket, String key);
+
+    Map<String, PayloadChecksum> downloadEntryChecksums(String bucket, String key);
+
+    boolean isRemotelyReadable(String bucket, String key);
+
+    // The format the uploader recorded on the archive, if it recorded one
+    Optional<ArchiveFormat> findArchiveFormat(String bucket, String key);
+
+    int downloadEntries(String bucket, String key, Set<String> entryNames,
+                        Map<String, PayloadChecksum> expectedChecksums, Consumer<Document> sink);
 }
@@ -1,10 +1,13 @@
 package org.redquark.hotspring.document.services;
 
 import org.redquark.hotspring.document.domains.Document;
+import org.redquark.hotspring.document.process.DocumentPublisher;
 
 import java.util.List;
 
 public interface MessagePublishingService {
 
     void publishDocuments(String key, List<Document> documents);
+
+    DocumentPublisher openPublisher(String key);
 }
@@ -1,8 +1,19 @@
 package org.redquark.hotspring.document.services;
 
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+import org.redquark.hotspring.document.domains.ArchiveFormat;
+
 import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 public interface ProcessDocumentService {
 
-    void processDocument(String name, InputStream data);
+    // An empty set of entry names processes every entry of the archive; without a declared format it is
+    // told by the name and then by the leading bytes
+    void processDocument(String name, InputStream data, Optional<ArchiveFormat> declaredFormat, Set<String> entryNames,
+                         Map<String, PayloadChecksum> expectedChecksums);
+
+    void processRemoteDocument(String bucket, String key, Set<String> entryNames, Map<String, PayloadChecksum> expectedChecksums);
 }
@@ -1,51 +1,182 @@
 package org.redquark.hotspring.document.services.impl;
 
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.S3Object;
-import com.amazonaws.services.s3.transfer.MultipleFileDownload;
-import com.amazonaws.services.s3.transfer.TransferManager;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
+import org.redquark.hotspring.commons.blobs.BlobStore;
+import org.redquark.hotspring.commons.blobs.BlobStoreFactory;
+import org.redquark.hotspring.commons.domains.BlobMetadata;
+import org.redquark.hotspring.commons.domains.BlobPage;
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+import org.redquark.hotspring.commons.exceptions.ChecksumMismatchException;
+import org.redquark.hotspring.commons.integrity.VerifyingInputStream;
+import org.redquark.hotspring.document.configs.ExtractionDownloaderConfig;
 import org.redquark.hotspring.document.configs.S3DownloaderConfig;
-import org.redquark.hotspring.document.connections.S3DownloaderConnectionFactory;
-import org.redquark.hotspring.document.connections.TransferManagerDownloaderConnectionFactory;
+import org.redquark.hotspring.document.domains.ArchiveEntry;
+import org.redquark.hotspring.document.domains.ArchiveFormat;
+import org.redquark.hotspring.document.domains.ArchiveManifest;
+import org.redquark.hotspring.document.domains.Document;
 import org.redquark.hotspring.document.exceptions.DocumentDownloadException;
+import org.redquark.hotspring.document.process.GcmEnvelopeDecryptor;
+import org.redquark.hotspring.document.process.ManifestReassembler;
+import org.redquark.hotspring.document.process.RemoteZipReader;
 import org.redquark.hotspring.document.services.DocumentDownloadService;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class DocumentDownloadServiceImpl implements DocumentDownloadService {
 
-    private final S3DownloaderConnectionFactory connectionFactory;
-    private final TransferManagerDownloaderConnectionFactory transferManagerConnectionFactory;
+    private static final String ARCHIVE_MANIFEST_EXTENSION = ".manifest.json";
+    private static final String ARCHIVE_MANIFEST_METADATA = "archive-manifest";
+    private static final String ARCHIVE_FORMAT_METADATA = "archive-format";
+
+    private final BlobStoreFactory blobStoreFactory;
     private final S3DownloaderConfig s3DownloaderConfig;
+    private final GcmEnvelopeDecryptor envelopeDecryptor;
+    private final ManifestReassembler manifestReassembler;
+    private final ObjectMapper objectMapper;
+    private final RemoteZipReader remoteZipReader;
+    private final ExtractionDownloaderConfig extractionConfig;
 
     @Override
     public InputStream downloadSingleFile(String bucket, String key) {
         log.info("Downloading of file={} in bucket={} starts...", key, bucket);
-        AmazonS3 amazonS3 = connectionFactory.getConnection();
-        S3Object s3Object = amazonS3.getObject(bucket, s3DownloaderConfig.getSourceFolder() + "/" + key);
-        return s3Object.getObjectContent();
+        BlobStore blobStore = blobStoreFactory.getBlobStore(bucket);
+        String objectKey = s3DownloaderConfig.getSourceFolder() + "/" + key;
+        BlobMetadata blobMetadata;
+        try {
+            blobMetadata = blobStore.head(objectKey).join()
+                    .orElseThrow(() -> new DocumentDownloadException("No file " + key + " in bucket " + bucket, null));
+        } catch (CompletionException e) {
+            log.error("Could not look up file={} due to: {}", key, e.getCause().getMessage(), e.getCause());
+            throw new DocumentDownloadException("Could not download file", e);
+        }
+        if (manifestReassembler.isManifest(blobMetadata.getUserMetadata())) {
+            return manifestReassembler.open(blobStore, s3DownloaderConfig.getSourceFolder(), blobMetadata);
+        }
+        if (envelopeDecryptor.isEnveloped(blobMetadata.getUserMetadata())) {
+            // Enveloped objects are read part by part with ranged requests
+            return envelopeDecryptor.open(blobStore, blobMetadata);
+        }
+        InputStream objectStream = blobStoreFactory.openStream(blobStore, objectKey, blobMetadata.getContentLength());
+        // Objects written in a single request carry the checksums of their bytes, which are verified as they are read
+        Optional<PayloadChecksum> checksum = PayloadChecksum.fromMetadata(blobMetadata);
+        return checksum.isPresent() ? new VerifyingInputStream(objectStream, key, checksum.get()) : objectStream;
+    }
+
+    @Override
+    public Map<String, PayloadChecksum> downloadEntryChecksums(String bucket, String key) {
+        BlobStore blobStore = blobStoreFactory.getBlobStore(bucket);
+        String manifestKey = s3DownloaderConfig.getSourceFolder() + "/" + key + ARCHIVE_MANIFEST_EXTENSION;
+        try {
+            Optional<BlobMetadata> blobMetadata = blobStore.head(manifestKey).join();
+            if (blobMetadata.isEmpty()) {
+                // Archives that announce a manifest are refused without it rather than read unverified
+                boolean manifestExpected = headObject(bucket, key)
+                        .map(archiveMetadata -> archiveMetadata.getUserMetadata().containsKey(ARCHIVE_MANIFEST_METADATA))
+                        .orElse(false);
+                if (manifestExpected) {
+                    throw new ChecksumMismatchException("The manifest of file=" + key + " is missing, its entries cannot be verified", null);
+                }
+                log.info("No manifest for file={}, its entries are not verified against checksums", key);
+                return Map.of();
+            }
+            ArchiveManifest manifest;
+            try (InputStream manifestStream = blobStoreFactory.openStream(blobStore, manifestKey, blobMetadata.get().getContentLength())) {
+                manifest = objectMapper.readValue(manifestStream, ArchiveManifest.class);
+            }
+            Map<String, PayloadChecksum> checksums = new LinkedHashMap<>();
+            for (ArchiveEntry entry : manifest.getEntries()) {
+                checksums.put(entry.getName(), entry.getChecksum());
+            }
+            return checksums;
+        } catch (IOException | CompletionException e) {
+            log.error("Could not read the manifest of file={} due to: {}", key, e.getMessage(), e);
+            throw new DocumentDownloadException("Could not read the archive manifest", e);
+        }
+    }
+
+    @Override
+    public boolean isRemotelyReadable(String bucket, String key) {
+        if (!Boolean.TRUE.equals(extractionConfig.getRemoteReads()) || ArchiveFormat.fromKey(key).orElse(null) != ArchiveFormat.ZIP) {
+            return false;
+        }
+        // Encrypted objects have to be read from the start, only plain zips can be read entry by entry
+        return headObject(bucket, key)
+                .map(BlobMetadata::getUserMetadata)
+                .map(userMetadata -> !manifestReassembler.isManifest(userMetadata)
+                        && !userMetadata.containsKey(GcmEnvelopeDecryptor.ENCRYPTION_METADATA))
+                .orElse(false);
+    }
+
+    @Override
+    public Optional<ArchiveFormat> findArchiveFormat(String bucket, String key) {
+        return headObject(bucket, key)
+                .map(BlobMetadata::getUserMetadata)
+                .filter(userMetadata -> !manifestReassembler.isManifest(userMetadata))
+                .map(userMetadata -> userMetadata.get(ARCHIVE_FORMAT_METADATA))
+                .flatMap(ArchiveFormat::fromMetadataValue);
+    }
+
+    @Override
+    public int downloadEntries(String bucket, String key, Set<String> entryNames,
+                               Map<String, PayloadChecksum> expectedChecksums, Consumer<Document> sink) {
+        log.info("Downloading {} entries of file={} in bucket={} with ranged reads...",
+                entryNames.isEmpty() ? "all" : entryNames.size(), key, bucket);
+        BlobMetadata blobMetadata = headObject(bucket, key)
+                .orElseThrow(() -> new DocumentDownloadException("No file " + key + " in bucket " + bucket, null));
+        return remoteZipReader.extract(blobStoreFactory.getBlobStore(bucket), blobMetadata, entryNames, expectedChecksums, sink);
+    }
+
+    private Optional<BlobMetadata> headObject(String bucket, String key) {
+        try {
+            return blobStoreFactory.getBlobStore(bucket).head(s3DownloaderConfig.getSourceFolder() + "/" + key).join();
+        } catch (CompletionException e) {
+            log.error("Could not look up file={} due to: {}", key, e.getCause().getMessage(), e.getCause());
+            throw new DocumentDownloadException("Could not download file", e);
+        }
     }
 
     @Override
     public List<InputStream> downloadAllFiles(String bucket, String key) {
         log.info("Request received for downloading all files in the folder={} of bucket={}", key, bucket);
-        File destinationDirectory = new File(s3DownloaderConfig.getDestinationFolder());
+        BlobStore blobStore = blobStoreFactory.getBlobStore(bucket);
+        Path destinationDirectory = Path.of(s3DownloaderConfig.getDestinationFolder());
+        String prefix = s3DownloaderConfig.getSourceFolder() + "/";
         try {
-            TransferManager transferManager = transferManagerConnectionFactory.getTransferManager();
-            MultipleFileDownload multipleFileDownload = transferManager.downloadDirectory(bucket, s3DownloaderConfig.getSourceFolder(), destinationDirectory);
-            multipleFileDownload.waitForCompletion();
+            BlobPage page = blobStore.list(prefix, null, null).join();
+            while (true) {
+                // The next page is listed while the files of the current one are downloaded
+                CompletableFuture<BlobPage> nextPage = page.getContinuationToken() != null
+                        ? blobStore.list(prefix, null, page.getContinuationToken())
+                        : null;
+                CompletableFuture.allOf(page.getBlobs().stream()
+                        .filter(blob -> !blob.getKey().endsWith("/"))
+                        .map(blob -> blobStore.download(blob.getKey(), destinationDirectory.resolve(blob.getKey())))
+                        .toArray(CompletableFuture[]::new)).join();
+                if (nextPage == null) {
+                    break;
+                }
+                page = nextPage.join();
+            }
             log.info("Download of all files in the folder={} is completed.", s3DownloaderConfig.getSourceFolder());
             File downloadDirectory = new File(s3DownloaderConfig.getDestinationFolder() + "/" + key);
             File[] allFiles = downloadDirectory.listFiles();
@@ -55,7 +186,7 @@ public class DocumentDownloadServiceImpl implements DocumentDownloadService {
                 allFilesStream.add(FileUtils.openInputStream(file));
             }
             return allFilesStream;
-        } catch (InterruptedException | IOException e) {
+        } catch (CompletionException | IOException e) {
             log.error("Could not download files due to: {}", e.getMessage(), e);
             throw new DocumentDownloadException("Could not download files", e);
         }
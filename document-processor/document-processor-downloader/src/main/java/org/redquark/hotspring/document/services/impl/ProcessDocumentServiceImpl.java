@@ -1,31 +1,130 @@
 package org.redquark.hotspring.document.services.impl;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.redquark.hotspring.document.domains.Document;
-import org.redquark.hotspring.document.process.DocumentUnzipper;
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+import org.redquark.hotspring.document.domains.ArchiveFormat;
+import org.redquark.hotspring.document.exceptions.DocumentArchiveException;
+import org.redquark.hotspring.document.process.ArchiveDecoder;
+import org.redquark.hotspring.document.process.DocumentPublisher;
+import org.redquark.hotspring.document.process.PGPDecryptor;
+import org.redquark.hotspring.document.services.DocumentDownloadService;
 import org.redquark.hotspring.document.services.MessagePublishingService;
 import org.redquark.hotspring.document.services.ProcessDocumentService;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class ProcessDocumentServiceImpl implements ProcessDocumentService {
 
-    private final DocumentUnzipper unzipper;
+    private static final String ENCRYPTED_EXTENSION = ".pgp";
+
+    private final Map<ArchiveFormat, ArchiveDecoder> decoders = new EnumMap<>(ArchiveFormat.class);
+    private final PGPDecryptor pgpDecryptor;
     private final MessagePublishingService messagePublishingService;
+    private final DocumentDownloadService documentDownloadService;
+
+    public ProcessDocumentServiceImpl(
+            List<ArchiveDecoder> archiveDecoders,
+            PGPDecryptor pgpDecryptor,
+            MessagePublishingService messagePublishingService,
+            DocumentDownloadService documentDownloadService
+    ) {
+        archiveDecoders.forEach(decoder -> decoders.put(decoder.getFormat(), decoder));
+        this.pgpDecryptor = pgpDecryptor;
+        this.messagePublishingService = messagePublishingService;
+        this.documentDownloadService = documentDownloadService;
+    }
 
     @Override
-    public void processDocument(String name, InputStream data) {
+    public void processDocument(String name, InputStream data, Optional<ArchiveFormat> declaredFormat, Set<String> entryNames,
+                                Map<String, PayloadChecksum> expectedChecksums) {
         log.info("Processing of file={} starts...", name);
-        log.info("Unzipping of file={} starts...", name);
-        List<Document> unzippedFiles = unzipper.unzip(data);
-        log.info("Unzipping of file={} ends. Found {} files in the zip", name, unzippedFiles.size());
-        log.info("Publishing of documents starts...");
-        messagePublishingService.publishDocuments(name, unzippedFiles);
+        boolean encrypted = name.endsWith(ENCRYPTED_EXTENSION);
+        String archiveName = encrypted ? name.substring(0, name.length() - ENCRYPTED_EXTENSION.length()) : name;
+        // The source is a resource of its own, so it is closed even when the decrypting stream cannot be opened
+        try (InputStream source = data;
+             BufferedInputStream archive = new BufferedInputStream(encrypted ? decrypt(name, source) : source)) {
+            ArchiveFormat format = detectFormat(archiveName, declaredFormat, archive);
+            log.info("Extracting of {} file={} starts...", format.getMetadataValue(), name);
+            long start = System.nanoTime();
+            // Documents are published batch by batch while the rest of the archive is still being extracted
+            DocumentPublisher publisher = messagePublishingService.openPublisher(name);
+            int entries;
+            if (entryNames.isEmpty()) {
+                entries = decoders.get(format).extract(archive, expectedChecksums, publisher);
+            } else {
+                // A streamed archive has to be read through, only the selected entries are published
+                Set<String> missing = new HashSet<>(entryNames);
+                entries = decoders.get(format).extract(archive, selectChecksums(entryNames, expectedChecksums), document -> {
+                    if (missing.remove(document.getName())) {
+                        publisher.accept(document);
+                    }
+                });
+                if (!missing.isEmpty()) {
+                    throw new DocumentArchiveException("Entries " + missing + " are not in the archive " + name, null);
+                }
+            }
+            // The last batch only goes out once the whole archive has been read and checked
+            publisher.close();
+            log.info("Extracting and publishing of file={} ends in {} ms. Found {} files in the archive, published in {} batches",
+                    name, (System.nanoTime() - start) / 1_000_000, entries, publisher.getBatches());
+        } catch (IOException e) {
+            log.error("Exception occurred while closing file={}: {}", name, e.getMessage(), e);
+            throw new DocumentArchiveException("Could not close the archive " + name, e);
+        }
+    }
+
+    private InputStream decrypt(String name, InputStream data) {
+        log.info("Decrypting file={} on the fly", name);
+        return pgpDecryptor.decryptStream(data);
+    }
+
+    @Override
+    public void processRemoteDocument(String bucket, String key, Set<String> entryNames, Map<String, PayloadChecksum> expectedChecksums) {
+        log.info("Processing of file={} from ranged reads starts...", key);
+        long start = System.nanoTime();
+        DocumentPublisher publisher = messagePublishingService.openPublisher(key);
+        int entries = documentDownloadService.downloadEntries(bucket, key, entryNames, expectedChecksums, publisher);
+        publisher.close();
+        log.info("Extracting and publishing of file={} ends in {} ms. Read {} entries, published in {} batches",
+                key, (System.nanoTime() - start) / 1_000_000, entries, publisher.getBatches());
+    }
+
+    private static Map<String, PayloadChecksum> selectChecksums(Set<String> entryNames, Map<String, PayloadChecksum> expectedChecksums) {
+        Map<String, PayloadChecksum> selected = new HashMap<>();
+        expectedChecksums.forEach((entryName, checksum) -> {
+            if (entryNames.contains(entryName)) {
+                selected.put(entryName, checksum);
+            }
+        });
+        return selected;
+    }
+
+    private ArchiveFormat detectFormat(String name, Optional<ArchiveFormat> declaredFormat, BufferedInputStream archive) {
+        // The format recorded by the uploader comes first, then the key extension; the magic bytes
+        // cover objects stored under other names
+        return declaredFormat.or(() -> ArchiveFormat.fromKey(name)).orElseGet(() -> {
+            try {
+                byte[] header = new byte[ArchiveFormat.SIGNATURE_LENGTH];
+                archive.mark(header.length);
+                int read = archive.readNBytes(header, 0, header.length);
+                archive.reset();
+                return ArchiveFormat.fromSignature(header, read).orElse(ArchiveFormat.ZIP);
+            } catch (IOException e) {
+                log.error("Exception occurred while reading the archive header: {}", e.getMessage(), e);
+                throw new DocumentArchiveException("Could not detect the archive format", e);
+            }
+        });
     }
 }
@@ -1,50 +1,56 @@
 package org.redquark.hotspring.document.services.impl;
 
-import com.amazonaws.services.s3.transfer.MultipleFileUpload;
-import com.amazonaws.services.s3.transfer.TransferManager;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
+import org.redquark.hotspring.commons.blobs.BlobStore;
+import org.redquark.hotspring.commons.blobs.BlobStoreFactory;
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+import org.redquark.hotspring.commons.integrity.PayloadDigest;
 import org.redquark.hotspring.document.configs.S3DownloaderConfig;
-import org.redquark.hotspring.document.connections.TransferManagerDownloaderConnectionFactory;
 import org.redquark.hotspring.document.domains.Document;
 import org.redquark.hotspring.document.exceptions.S3StorageException;
 import org.redquark.hotspring.document.services.S3StorageService;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class S3StorageServiceImpl implements S3StorageService {
 
-    private final TransferManagerDownloaderConnectionFactory transferManagerConnectionFactory;
+    private final BlobStore blobStore;
     private final S3DownloaderConfig s3Config;
 
+    public S3StorageServiceImpl(BlobStoreFactory blobStoreFactory, S3DownloaderConfig s3Config) {
+        this.blobStore = blobStoreFactory.getBlobStore(s3Config.getBucketName());
+        this.s3Config = s3Config;
+    }
+
     @Override
     public void uploadMultipleFiles(List<Document> documents) {
         log.info("Uploading {} files to the S3 bucket", documents.size());
         try {
-            List<File> filesToUpload = new ArrayList<>();
-            for (Document document : documents) {
-                File file = new File(document.getName());
-                FileUtils.writeByteArrayToFile(file, document.getContents());
-                filesToUpload.add(file);
-            }
-            TransferManager transferManager = transferManagerConnectionFactory.getTransferManager();
-            MultipleFileUpload upload = transferManager.uploadFileList(s3Config.getBucketName(), s3Config.getUploadFolder(), new File("."), filesToUpload);
-            upload.waitForCompletion();
-            for (File file : filesToUpload) {
-                Files.delete(file.toPath());
-            }
-        } catch (InterruptedException | IOException e) {
+            // The contents are already in memory, so they are sent as they are without staging them on disk
+            CompletableFuture.allOf(documents.stream()
+                    .map(document -> blobStore.put(s3Config.getUploadFolder() + "/" + document.getName(),
+                            ByteBuffer.wrap(document.getContents()), checksum(document).toMetadata()))
+                    .toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
             log.info("Could not upload {} files to the bucket: {}", documents.size(), s3Config.getBucketName());
             throw new S3StorageException("Could not upload files to the S3 bucket", e);
         }
     }
+
+    // The digest taken at extraction travels with the document, so a payload damaged on the way
+    // through the topic is caught here instead of being stored
+    private static PayloadChecksum checksum(Document document) {
+        PayloadDigest digest = new PayloadDigest();
+        digest.update(document.getContents(), 0, document.getContents().length);
+        if (document.getChecksum() != null) {
+            digest.verify(document.getName(), document.getChecksum());
+        }
+        return digest.toChecksum();
+    }
 }
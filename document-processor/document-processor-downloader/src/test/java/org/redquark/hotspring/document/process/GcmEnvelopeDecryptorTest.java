@@ -0,0 +1,203 @@
+package org.redquark.hotspring.document.process;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.redquark.hotspring.commons.blobs.BlobStore;
+import org.redquark.hotspring.commons.domains.BlobMetadata;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
+import org.redquark.hotspring.document.exceptions.DecryptionException;
+import org.redquark.hotspring.uploader.domains.PGPSymmetricAlgorithm;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GcmEnvelopeDecryptorTest {
+
+    private static final String KEY = "folder/archived.zip";
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final int PART_SIZE = 1000;
+    private static final int FRAME_SIZE = PART_SIZE + NONCE_LENGTH + TAG_LENGTH;
+
+    @TempDir
+    Path keyDirectory;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private SecretKey dataKey;
+    private ExecutorService partDecryptorPool;
+    private ExecutorRegistry executorRegistry;
+    private GcmEnvelopeDecryptor decryptor;
+
+    @BeforeEach
+    void setUp() throws GeneralSecurityException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        dataKey = keyGenerator.generateKey();
+        // The key is stored unwrapped in these objects, the PGP layer is not under test
+        PGPDecryptor pgpDecryptor = mock(PGPDecryptor.class);
+        when(pgpDecryptor.decrypt(any())).thenReturn(dataKey.getEncoded());
+        partDecryptorPool = Executors.newFixedThreadPool(2);
+        executorRegistry = mock(ExecutorRegistry.class);
+        when(executorRegistry.get(anyString())).thenReturn(partDecryptorPool);
+        when(executorRegistry.getSize(anyString())).thenReturn(2);
+        decryptor = new GcmEnvelopeDecryptor(pgpDecryptor, executorRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        partDecryptorPool.shutdownNow();
+    }
+
+    @Test
+    void roundTripsAMultiPartObject() throws IOException {
+        byte[] payload = randomBytes(PART_SIZE * 7 + 123);
+
+        assertThat(read(concat(encrypt(payload)))).isEqualTo(payload);
+    }
+
+    @Test
+    void detectsAFlippedCiphertextByte() {
+        byte[] object = concat(encrypt(randomBytes(PART_SIZE * 3)));
+        object[FRAME_SIZE + NONCE_LENGTH + 5] ^= 1;
+
+        assertThatThrownBy(() -> read(object)).isInstanceOf(IOException.class)
+                .hasCauseInstanceOf(DecryptionException.class);
+    }
+
+    @Test
+    void detectsAFlippedTagByte() {
+        byte[] object = concat(encrypt(randomBytes(PART_SIZE * 3)));
+        object[FRAME_SIZE - 1] ^= 1;
+
+        assertThatThrownBy(() -> read(object)).isInstanceOf(IOException.class)
+                .hasCauseInstanceOf(DecryptionException.class);
+    }
+
+    @Test
+    void detectsSwappedParts() {
+        List<byte[]> frames = encrypt(randomBytes(PART_SIZE * 3));
+        Collections.swap(frames, 0, 1);
+
+        assertThatThrownBy(() -> read(concat(frames))).isInstanceOf(IOException.class)
+                .hasCauseInstanceOf(DecryptionException.class);
+    }
+
+    @Test
+    void detectsADroppedFinalPart() {
+        // The remaining parts are intact, only the last-part flag of the new final part gives the truncation away
+        List<byte[]> frames = encrypt(randomBytes(PART_SIZE * 3));
+        frames.remove(frames.size() - 1);
+
+        assertThatThrownBy(() -> read(concat(frames))).isInstanceOf(IOException.class)
+                .hasCauseInstanceOf(DecryptionException.class);
+    }
+
+    @Test
+    void roundTripsAnEmptyObject() throws IOException {
+        List<byte[]> frames = encrypt(new byte[0]);
+
+        assertThat(frames).hasSize(1);
+        assertThat(read(concat(frames))).isEmpty();
+    }
+
+    @Test
+    void rejectsAnObjectWithoutParts() {
+        assertThatThrownBy(() -> read(new byte[0])).isInstanceOf(DecryptionException.class);
+    }
+
+    @Test
+    void unwrapsADataKeyWrappedWithACipherSunJceLacks() throws IOException, PGPException {
+        PGPTestKeys keys = new PGPTestKeys(keyDirectory);
+        byte[] wrappedKey = keys.encryptor(PGPSymmetricAlgorithm.CAMELLIA_256, "SunJCE").wrapKey(dataKey.getEncoded());
+        decryptor = new GcmEnvelopeDecryptor(keys.decryptor("SunJCE"), executorRegistry);
+        byte[] payload = randomBytes(PART_SIZE * 2 + 7);
+
+        assertThat(read(concat(encrypt(payload)), wrappedKey)).isEqualTo(payload);
+    }
+
+    private byte[] read(byte[] object) throws IOException {
+        return read(object, new byte[]{1});
+    }
+
+    private byte[] read(byte[] object, byte[] wrappedKey) throws IOException {
+        BlobStore blobStore = mock(BlobStore.class);
+        when(blobStore.getRange(anyString(), anyLong(), anyInt())).thenAnswer(invocation -> {
+            int offset = (int) (long) invocation.getArgument(1);
+            int length = invocation.getArgument(2);
+            return CompletableFuture.completedFuture(ByteBuffer.wrap(Arrays.copyOfRange(object, offset, offset + length)));
+        });
+        Map<String, String> userMetadata = Map.of(
+                GcmEnvelopeDecryptor.ENCRYPTION_METADATA, GcmEnvelopeDecryptor.ENVELOPE,
+                "envelope-key", Base64.getEncoder().encodeToString(wrappedKey),
+                "envelope-frame-size", String.valueOf(FRAME_SIZE));
+        try (InputStream decrypted = decryptor.open(blobStore, new BlobMetadata(KEY, object.length, userMetadata))) {
+            return decrypted.readAllBytes();
+        }
+    }
+
+    // Writes the payload the way the uploader does: nonce | ciphertext | tag per part, with the part
+    // number and the last-part flag as associated data
+    private List<byte[]> encrypt(byte[] payload) {
+        List<byte[]> frames = new ArrayList<>();
+        int parts = Math.max((payload.length + PART_SIZE - 1) / PART_SIZE, 1);
+        for (int part = 0; part < parts; part++) {
+            int start = part * PART_SIZE;
+            int end = Math.min(start + PART_SIZE, payload.length);
+            byte[] nonce = new byte[NONCE_LENGTH];
+            secureRandom.nextBytes(nonce);
+            try {
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(Cipher.ENCRYPT_MODE, dataKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+                cipher.updateAAD(ByteBuffer.allocate(Integer.BYTES + 1).putInt(part + 1).put((byte) (part == parts - 1 ? 1 : 0)).array());
+                byte[] ciphertext = cipher.doFinal(payload, start, end - start);
+                frames.add(ByteBuffer.allocate(NONCE_LENGTH + ciphertext.length).put(nonce).put(ciphertext).array());
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return frames;
+    }
+
+    private static byte[] concat(List<byte[]> frames) {
+        ByteArrayOutputStream object = new ByteArrayOutputStream();
+        frames.forEach(object::writeBytes);
+        return object.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
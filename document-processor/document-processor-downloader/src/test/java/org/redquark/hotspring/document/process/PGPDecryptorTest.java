@@ -0,0 +1,56 @@
+package org.redquark.hotspring.document.process;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.redquark.hotspring.uploader.domains.Document;
+import org.redquark.hotspring.uploader.domains.PGPSymmetricAlgorithm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PGPDecryptorTest {
+
+    private static final List<String> CIPHER_PROVIDERS = List.of("BC", "SunJCE");
+
+    @TempDir
+    static Path keyDirectory;
+
+    private static PGPTestKeys keys;
+
+    @BeforeAll
+    static void generateKeys() throws IOException, PGPException {
+        keys = new PGPTestKeys(keyDirectory);
+    }
+
+    // Every cipher the uploader can be configured with, written and read with either provider on either side
+    static Stream<Arguments> algorithmsAndProviders() {
+        return Arrays.stream(PGPSymmetricAlgorithm.values()).flatMap(algorithm -> CIPHER_PROVIDERS.stream()
+                .flatMap(encryptingProvider -> CIPHER_PROVIDERS.stream()
+                        .map(decryptingProvider -> Arguments.of(algorithm, encryptingProvider, decryptingProvider))));
+    }
+
+    @ParameterizedTest
+    @MethodSource("algorithmsAndProviders")
+    void decryptsWhatTheUploaderEncrypted(PGPSymmetricAlgorithm algorithm, String encryptingProvider, String decryptingProvider) {
+        byte[] payload = new byte[200 * 1024 + 17];
+        new Random(algorithm.ordinal()).nextBytes(payload);
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+
+        keys.encryptor(algorithm, encryptingProvider).encrypt(
+                Document.builder().name("report.pdf").contents(payload).size(payload.length).build(), encrypted);
+
+        assertThat(keys.decryptor(decryptingProvider).decrypt(new ByteArrayInputStream(encrypted.toByteArray()))).isEqualTo(payload);
+    }
+}
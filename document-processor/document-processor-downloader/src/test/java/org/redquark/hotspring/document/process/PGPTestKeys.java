@@ -0,0 +1,91 @@
+package org.redquark.hotspring.document.process;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.redquark.hotspring.document.configs.CryptoDownloaderConfig;
+import org.redquark.hotspring.uploader.configs.CryptoConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.domains.PGPCompressionAlgorithm;
+import org.redquark.hotspring.uploader.domains.PGPSymmetricAlgorithm;
+import org.redquark.hotspring.uploader.process.PGPEncryptor;
+import org.redquark.hotspring.uploader.process.PGPKeyService;
+import org.redquark.hotspring.uploader.process.RSAKeyPairGenerator;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// A key pair generated by the uploader, and the uploader's encryptor and the downloader's decryptor around it
+class PGPTestKeys {
+
+    private static final String PASSWORD = "test";
+
+    private final Path keyDirectory;
+    private final PGPPublicKey encryptionKey;
+
+    PGPTestKeys(Path keyDirectory) throws IOException, PGPException {
+        this.keyDirectory = keyDirectory;
+        CryptoConfig cryptoConfig = uploaderCryptoConfig(PGPSymmetricAlgorithm.AES_256, "BC");
+        new RSAKeyPairGenerator(uploaderConfig(cryptoConfig)).generateKeyPair();
+        encryptionKey = readEncryptionKey(keyDirectory.resolve("public.asc"));
+    }
+
+    PGPEncryptor encryptor(PGPSymmetricAlgorithm symmetricAlgorithm, String cipherProvider) {
+        PGPKeyService keyService = mock(PGPKeyService.class);
+        when(keyService.getEncryptionKey()).thenReturn(encryptionKey);
+        return new PGPEncryptor(keyService, uploaderConfig(uploaderCryptoConfig(symmetricAlgorithm, cipherProvider)));
+    }
+
+    PGPDecryptor decryptor(String cipherProvider) {
+        CryptoDownloaderConfig cryptoConfig = new CryptoDownloaderConfig();
+        cryptoConfig.setKeyPath(keyDirectory.toString());
+        cryptoConfig.setPassword(PASSWORD);
+        cryptoConfig.setProvider("BC");
+        cryptoConfig.setCipherProvider(cipherProvider);
+        return new PGPDecryptor(cryptoConfig);
+    }
+
+    private CryptoConfig uploaderCryptoConfig(PGPSymmetricAlgorithm symmetricAlgorithm, String cipherProvider) {
+        CryptoConfig cryptoConfig = new CryptoConfig();
+        cryptoConfig.setKeyPath(keyDirectory.toString());
+        cryptoConfig.setUsername("test");
+        cryptoConfig.setPassword(PASSWORD);
+        cryptoConfig.setIsArmored(true);
+        cryptoConfig.setKeySize(1024);
+        cryptoConfig.setAlgorithm("RSA");
+        cryptoConfig.setProvider("BC");
+        cryptoConfig.setSymmetricAlgorithm(symmetricAlgorithm);
+        cryptoConfig.setCompressionAlgorithm(PGPCompressionAlgorithm.ZIP);
+        cryptoConfig.setCipherProvider(cipherProvider);
+        cryptoConfig.setBufferSize(DataSize.ofKilobytes(64));
+        return cryptoConfig;
+    }
+
+    private static DocumentUploaderConfig uploaderConfig(CryptoConfig cryptoConfig) {
+        DocumentUploaderConfig documentUploaderConfig = mock(DocumentUploaderConfig.class);
+        when(documentUploaderConfig.getCryptoConfig()).thenReturn(cryptoConfig);
+        return documentUploaderConfig;
+    }
+
+    private static PGPPublicKey readEncryptionKey(Path publicKeyPath) throws IOException, PGPException {
+        try (InputStream publicKeyStream = PGPUtil.getDecoderStream(Files.newInputStream(publicKeyPath))) {
+            for (PGPPublicKeyRing keyRing : new PGPPublicKeyRingCollection(publicKeyStream, new JcaKeyFingerprintCalculator())) {
+                for (PGPPublicKey publicKey : keyRing) {
+                    if (publicKey.isEncryptionKey()) {
+                        return publicKey;
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("No encryption key in " + publicKeyPath);
+    }
+}
@@ -0,0 +1,172 @@
+package org.redquark.hotspring.document.process;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redquark.hotspring.commons.blobs.BlobStore;
+import org.redquark.hotspring.commons.domains.BlobMetadata;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
+import org.redquark.hotspring.document.configs.ExtractionDownloaderConfig;
+import org.redquark.hotspring.document.domains.Document;
+import org.redquark.hotspring.document.exceptions.DocumentUnzipException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RemoteZipReaderTest {
+
+    private static final String KEY = "folder/archived.zip";
+
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private ExecutorService inflaterPool;
+    private RemoteZipReader remoteZipReader;
+
+    @BeforeEach
+    void setUp() {
+        inflaterPool = Executors.newFixedThreadPool(2);
+        ExecutorRegistry executorRegistry = mock(ExecutorRegistry.class);
+        when(executorRegistry.get(anyString())).thenReturn(inflaterPool);
+        ExtractionDownloaderConfig extractionConfig = new ExtractionDownloaderConfig();
+        extractionConfig.setMaxEntriesInFlight(3);
+        remoteZipReader = new RemoteZipReader(extractionConfig, executorRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        inflaterPool.shutdownNow();
+    }
+
+    @Test
+    void readsStoredAndDeflatedEntriesInArchiveOrder() throws IOException {
+        byte[] stored = randomBytes(5000);
+        byte[] deflated = "deflated ".repeat(2000).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.setComment("archive comment");
+            zip.putNextEntry(new ZipEntry("dir/"));
+            zip.closeEntry();
+            writeStored(zip, "stored.bin", stored);
+            zip.putNextEntry(new ZipEntry("deflated.txt"));
+            zip.write(deflated);
+            zip.closeEntry();
+        }
+
+        List<Document> documents = extract(archive.toByteArray(), Set.of());
+
+        assertThat(documents).extracting(Document::getName).containsExactly("dir/", "stored.bin", "deflated.txt");
+        assertThat(documents).extracting(Document::getEntryIndex).containsExactly(0, 1, 2);
+        assertThat(documents).extracting(Document::getEntryCount).containsOnly(3);
+        assertThat(documents.get(0).getContents()).isEmpty();
+        assertThat(documents.get(1).getContents()).isEqualTo(stored);
+        assertThat(documents.get(2).getContents()).isEqualTo(deflated);
+        assertThat(documents.get(2).getChecksum().getSize()).isEqualTo(deflated.length);
+    }
+
+    @Test
+    void readsZip64CentralDirectory() throws IOException {
+        // More entries than the end record can count forces the zip64 end record and locator
+        int entries = 0x10000 + 1;
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            for (int i = 0; i < entries; i++) {
+                zip.putNextEntry(new ZipEntry("entry-" + i));
+                zip.write(("contents of " + i).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+
+        List<Document> documents = extract(archive.toByteArray(), Set.of("entry-7", "entry-65536"));
+
+        assertThat(documents).extracting(Document::getName).containsExactly("entry-7", "entry-65536");
+        assertThat(documents).extracting(Document::getEntryIndex).containsExactly(7, 65536);
+        assertThat(documents).extracting(Document::getEntryCount).containsOnly(entries);
+        assertThat(new String(documents.get(1).getContents(), StandardCharsets.UTF_8)).isEqualTo("contents of 65536");
+    }
+
+    @Test
+    void fetchesOnlyTheSelectedEntries() throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            for (int i = 0; i < 10; i++) {
+                zip.putNextEntry(new ZipEntry("entry-" + i));
+                zip.write(randomBytes(1000));
+                zip.closeEntry();
+            }
+        }
+
+        List<Document> documents = extract(archive.toByteArray(), Set.of("entry-3", "entry-8"));
+
+        assertThat(documents).extracting(Document::getName).containsExactly("entry-3", "entry-8");
+        // One request for the tail holding the central directory, one for each selected entry
+        assertThat(rangeRequests.get()).isEqualTo(3);
+    }
+
+    @Test
+    void rejectsEntriesMissingFromTheArchive() throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.putNextEntry(new ZipEntry("present"));
+            zip.write(1);
+            zip.closeEntry();
+        }
+
+        assertThatThrownBy(() -> extract(archive.toByteArray(), Set.of("present", "missing")))
+                .isInstanceOf(DocumentUnzipException.class)
+                .hasMessageContaining("missing");
+    }
+
+    private List<Document> extract(byte[] archive, Set<String> entryNames) {
+        BlobStore blobStore = mock(BlobStore.class);
+        when(blobStore.getRange(anyString(), anyLong(), anyInt())).thenAnswer(invocation -> {
+            rangeRequests.incrementAndGet();
+            int offset = (int) (long) invocation.getArgument(1);
+            int length = invocation.getArgument(2);
+            return CompletableFuture.completedFuture(ByteBuffer.wrap(archive, offset, length).slice().asReadOnlyBuffer());
+        });
+        List<Document> documents = new ArrayList<>();
+        int extracted = remoteZipReader.extract(blobStore, new BlobMetadata(KEY, archive.length, Map.of()), entryNames, Map.of(), documents::add);
+        assertThat(extracted).isEqualTo(documents.size());
+        return documents;
+    }
+
+    private static void writeStored(ZipOutputStream zip, String name, byte[] contents) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(contents.length);
+        entry.setCompressedSize(contents.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(contents);
+        zip.closeEntry();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
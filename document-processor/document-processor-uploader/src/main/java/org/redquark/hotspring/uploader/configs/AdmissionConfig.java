@@ -0,0 +1,15 @@
+package org.redquark.hotspring.uploader.configs;
+
+import lombok.Data;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+public class AdmissionConfig {
+
+    private Boolean enabled;
+    private DataSize budget;
+    private Duration queueTimeout;
+    private Duration retryAfter;
+}
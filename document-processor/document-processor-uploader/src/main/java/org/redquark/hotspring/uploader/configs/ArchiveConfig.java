@@ -0,0 +1,18 @@
+package org.redquark.hotspring.uploader.configs;
+
+import lombok.Data;
+import org.redquark.hotspring.uploader.domains.ArchiveFormat;
+import org.springframework.util.unit.DataSize;
+
+@Data
+public class ArchiveConfig {
+
+    private ArchiveFormat format;
+    private Boolean parallel;
+    private Integer parallelism;
+    private DataSize blockSize;
+    private Integer compressionLevel;
+    private Integer zstdLevel;
+    private DataSize shardMaxSize;
+    private Integer shardMaxEntries;
+}
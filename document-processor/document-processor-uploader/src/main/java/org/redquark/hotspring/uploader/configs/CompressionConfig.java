@@ -0,0 +1,16 @@
+package org.redquark.hotspring.uploader.configs;
+
+import lombok.Data;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+@Data
+public class CompressionConfig {
+
+    private DataSize sampleSize;
+    private List<String> storedExtensions;
+    private Double storedEntropyThreshold;
+    private Double fastEntropyThreshold;
+    private Integer fastLevel;
+}
@@ -1,6 +1,10 @@
 package org.redquark.hotspring.uploader.configs;
 
 import lombok.Data;
+import org.redquark.hotspring.uploader.domains.EncryptionEnvelope;
+import org.redquark.hotspring.uploader.domains.PGPCompressionAlgorithm;
+import org.redquark.hotspring.uploader.domains.PGPSymmetricAlgorithm;
+import org.springframework.util.unit.DataSize;
 
 @Data
 public class CryptoConfig {
@@ -12,4 +16,10 @@ public class CryptoConfig {
     private Integer keySize;
     private String algorithm;
     private String provider;
+    private PGPSymmetricAlgorithm symmetricAlgorithm;
+    private PGPCompressionAlgorithm compressionAlgorithm;
+    private String cipherProvider;
+    private Boolean enabled;
+    private EncryptionEnvelope envelope;
+    private DataSize bufferSize;
 }
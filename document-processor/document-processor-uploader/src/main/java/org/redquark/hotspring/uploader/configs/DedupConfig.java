@@ -0,0 +1,17 @@
+package org.redquark.hotspring.uploader.configs;
+
+import lombok.Data;
+import org.springframework.util.unit.DataSize;
+
+@Data
+public class DedupConfig {
+
+    private Boolean enabled;
+    private String indexDirectory;
+    private DataSize minChunkSize;
+    private DataSize averageChunkSize;
+    private DataSize maxChunkSize;
+    private Long expectedChunks;
+    private Double falsePositiveRate;
+    private Integer maxChunksInFlight;
+}
@@ -1,10 +1,18 @@
 package org.redquark.hotspring.uploader.configs;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.redquark.hotspring.uploader.filters.AdmissionControlFilter;
+import org.redquark.hotspring.uploader.process.ByteBudget;
+import org.redquark.hotspring.uploader.process.ScratchSpace;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.boot.web.servlet.MultipartConfigFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import javax.servlet.MultipartConfigElement;
+
 @Configuration
 public class DocumentUploaderConfig {
 
@@ -19,4 +27,68 @@ public class DocumentUploaderConfig {
     public CryptoConfig getCryptoConfig() {
         return new CryptoConfig();
     }
+
+    @Bean
+    @ConfigurationProperties(prefix = "ingest-uploader-config")
+    public IngestConfig getIngestConfig() {
+        return new IngestConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "archive-uploader-config")
+    public ArchiveConfig getArchiveConfig() {
+        return new ArchiveConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "compression-uploader-config")
+    public CompressionConfig getCompressionConfig() {
+        return new CompressionConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "dedup-uploader-config")
+    public DedupConfig getDedupConfig() {
+        return new DedupConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "job-uploader-config")
+    public JobConfig getJobConfig() {
+        return new JobConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "session-uploader-config")
+    public SessionConfig getSessionConfig() {
+        return new SessionConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "admission-uploader-config")
+    public AdmissionConfig getAdmissionConfig() {
+        return new AdmissionConfig();
+    }
+
+    @Bean
+    public FilterRegistrationBean<AdmissionControlFilter> getAdmissionControlFilter(ByteBudget byteBudget, ObjectMapper objectMapper) {
+        AdmissionConfig admissionConfig = getAdmissionConfig();
+        FilterRegistrationBean<AdmissionControlFilter> registrationBean = new FilterRegistrationBean<>(new AdmissionControlFilter(
+                byteBudget, admissionConfig, getIngestConfig().getMaxRequestSize().toBytes(), objectMapper));
+        registrationBean.addUrlPatterns("/api/v1/document/upload", "/api/v1/document/upload/async", "/api/v1/document/uploads/*");
+        registrationBean.setEnabled(Boolean.TRUE.equals(admissionConfig.getEnabled()));
+        return registrationBean;
+    }
+
+    @Bean
+    public MultipartConfigElement getMultipartConfigElement(ScratchSpace scratchSpace) {
+        // Parts stay on-heap up to the threshold and are spilled into the managed scratch area beyond it
+        IngestConfig ingestConfig = getIngestConfig();
+        MultipartConfigFactory multipartConfigFactory = new MultipartConfigFactory();
+        multipartConfigFactory.setLocation(scratchSpace.getDirectory().toString());
+        multipartConfigFactory.setFileSizeThreshold(ingestConfig.getFileSizeThreshold());
+        multipartConfigFactory.setMaxFileSize(ingestConfig.getMaxFileSize());
+        multipartConfigFactory.setMaxRequestSize(ingestConfig.getMaxRequestSize());
+        return multipartConfigFactory.createMultipartConfig();
+    }
 }
@@ -0,0 +1,13 @@
+package org.redquark.hotspring.uploader.configs;
+
+import lombok.Data;
+import org.springframework.util.unit.DataSize;
+
+@Data
+public class IngestConfig {
+
+    private String scratchDirectory;
+    private DataSize fileSizeThreshold;
+    private DataSize maxFileSize;
+    private DataSize maxRequestSize;
+}
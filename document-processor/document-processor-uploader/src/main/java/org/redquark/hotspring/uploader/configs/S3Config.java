@@ -6,9 +6,7 @@ import lombok.Data;
 public class S3Config {
 
     private String endpointUrl;
-    private String accessKey;
-    private String secretKey;
     private String bucketName;
-    private String region;
     private String uploadFolder;
+    private Integer maxUploadsInFlight;
 }
@@ -0,0 +1,11 @@
+package org.redquark.hotspring.uploader.configs;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+@Data
+public class SessionConfig {
+
+    private Duration expiry;
+}
@@ -7,12 +7,23 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.uploader.domains.DeleteSummary;
+import org.redquark.hotspring.uploader.domains.UploadJob;
+import org.redquark.hotspring.uploader.domains.UploadNamespace;
 import org.redquark.hotspring.uploader.domains.responses.DocumentDeleteResponse;
 import org.redquark.hotspring.uploader.domains.responses.DocumentUploadResponse;
+import org.redquark.hotspring.uploader.domains.responses.UploadJobResponse;
+import org.redquark.hotspring.uploader.exceptions.UploadJobRejectedException;
+import org.redquark.hotspring.uploader.filters.AdmissionControlFilter;
+import org.redquark.hotspring.uploader.process.ByteBudget;
 import org.redquark.hotspring.uploader.services.DocumentService;
+import org.redquark.hotspring.uploader.services.UploadJobService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -26,6 +37,7 @@ import org.springframework.web.multipart.MultipartFile;
 public class DocumentController {
 
     private final DocumentService documentService;
+    private final UploadJobService uploadJobService;
 
     @PostMapping("/upload")
     @Operation(
@@ -42,6 +54,16 @@ public class DocumentController {
                                     )
                             )
                     ),
+                    @ApiResponse(
+                            description = "Too many uploads in flight",
+                            responseCode = "429",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(
+                                            implementation = DocumentUploadResponse.class
+                                    )
+                            )
+                    ),
                     @ApiResponse(
                             description = "Internal server error",
                             responseCode = "500",
@@ -56,23 +78,103 @@ public class DocumentController {
     )
     public ResponseEntity<DocumentUploadResponse> uploadDocuments(@RequestParam("documents") MultipartFile[] documents) {
         String message;
+        UploadNamespace namespace = UploadNamespace.create();
         try {
-            log.info("Uploading {} files in S3", documents.length);
-            documentService.upload(documents);
+            log.info("Uploading {} files in S3 into session={}", documents.length, namespace.getSessionId());
+            documentService.upload(namespace, documents);
             message = "Files uploaded successfully";
             log.info(message);
             return ResponseEntity.
                     status(HttpStatus.OK)
-                    .body(new DocumentUploadResponse(message));
+                    .body(new DocumentUploadResponse(message, namespace.getSessionId()));
         } catch (Exception e) {
             message = "Could not upload files";
             log.error("{} due to exception: {}", message, e.getMessage());
             return ResponseEntity
                     .status(HttpStatus.EXPECTATION_FAILED)
-                    .body(new DocumentUploadResponse(message));
+                    .body(new DocumentUploadResponse(message, namespace.getSessionId()));
         }
     }
 
+    @PostMapping("/upload/async")
+    @Operation(
+            summary = "Upload multiple documents in the background",
+            tags = {"Document Controller"},
+            responses = {
+                    @ApiResponse(
+                            description = "Accepted",
+                            responseCode = "202",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(
+                                            implementation = UploadJobResponse.class
+                                    )
+                            )
+                    ),
+                    @ApiResponse(
+                            description = "Upload queue is full",
+                            responseCode = "503"
+                    ),
+                    @ApiResponse(
+                            description = "Too many uploads in flight",
+                            responseCode = "429"
+                    ),
+                    @ApiResponse(
+                            description = "Internal server error",
+                            responseCode = "500"
+                    )
+            }
+    )
+    public ResponseEntity<UploadJobResponse> uploadDocumentsAsync(
+            @RequestParam("documents") MultipartFile[] documents,
+            @RequestAttribute(name = AdmissionControlFilter.LEASE_ATTRIBUTE, required = false) ByteBudget.Lease lease
+    ) {
+        try {
+            log.info("Accepting {} files for upload in S3", documents.length);
+            UploadJob job = uploadJobService.submit(documents, lease);
+            return ResponseEntity
+                    .status(HttpStatus.ACCEPTED)
+                    .body(job.toResponse());
+        } catch (UploadJobRejectedException e) {
+            log.warn("Rejected upload due to: {}", e.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .build();
+        } catch (Exception e) {
+            log.error("Could not accept files due to exception: {}", e.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .build();
+        }
+    }
+
+    @GetMapping("/upload/jobs/{jobId}")
+    @Operation(
+            summary = "Get the status of a background upload",
+            tags = {"Document Controller"},
+            responses = {
+                    @ApiResponse(
+                            description = "Success",
+                            responseCode = "200",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(
+                                            implementation = UploadJobResponse.class
+                                    )
+                            )
+                    ),
+                    @ApiResponse(
+                            description = "Unknown or expired job",
+                            responseCode = "404"
+                    )
+            }
+    )
+    public ResponseEntity<UploadJobResponse> getUploadJob(@PathVariable("jobId") String jobId) {
+        return uploadJobService.find(jobId)
+                .map(job -> ResponseEntity.ok(job.toResponse()))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+
     @PostMapping("/delete")
     @Operation(
             summary = "Delete document by given key",
@@ -104,18 +206,18 @@ public class DocumentController {
         String message;
         try {
             log.info("Clearing bucket...");
-            documentService.delete();
-            message = "File deleted successfully";
-            log.info(message);
+            DeleteSummary summary = documentService.delete();
+            message = summary.getFailed() == 0 ? "File deleted successfully" : "Some files could not be deleted";
+            log.info("{}: {}", message, summary);
             return ResponseEntity.
                     status(HttpStatus.OK)
-                    .body(new DocumentDeleteResponse(message));
+                    .body(new DocumentDeleteResponse(message, summary));
         } catch (Exception e) {
-            message = "Could not upload files";
+            message = "Could not delete files";
             log.error("{} due to: {}", message, e.getMessage());
             return ResponseEntity
                     .status(HttpStatus.EXPECTATION_FAILED)
-                    .body(new DocumentDeleteResponse(message));
+                    .body(new DocumentDeleteResponse(message, null));
         }
     }
 }
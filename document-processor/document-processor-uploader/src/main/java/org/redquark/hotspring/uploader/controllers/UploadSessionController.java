@@ -0,0 +1,218 @@
+package org.redquark.hotspring.uploader.controllers;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.uploader.domains.UploadSession;
+import org.redquark.hotspring.uploader.domains.responses.UploadSessionResponse;
+import org.redquark.hotspring.uploader.exceptions.InvalidChunkException;
+import org.redquark.hotspring.uploader.exceptions.UploadSessionNotFoundException;
+import org.redquark.hotspring.uploader.services.UploadSessionService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.net.URI;
+
+// Resumable uploads: a session is created with the total length, then every chunk is PUT at its offset,
+// in any order and in parallel. The session tells which offsets are still missing after an interruption.
+@RestController
+@RequestMapping("/api/v1/document/uploads")
+@Slf4j
+@RequiredArgsConstructor
+@Tag(name = "Upload Session Controller", description = "Uploads large documents in resumable chunks")
+public class UploadSessionController {
+
+    private static final String UPLOAD_LENGTH = "Upload-Length";
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+
+    private final UploadSessionService uploadSessionService;
+
+    @PostMapping
+    @Operation(
+            summary = "Create an upload session",
+            tags = {"Upload Session Controller"},
+            responses = {
+                    @ApiResponse(
+                            description = "Created",
+                            responseCode = "201",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(
+                                            implementation = UploadSessionResponse.class
+                                    )
+                            )
+                    ),
+                    @ApiResponse(
+                            description = "Invalid name or length",
+                            responseCode = "400"
+                    ),
+                    @ApiResponse(
+                            description = "Internal server error",
+                            responseCode = "500"
+                    )
+            }
+    )
+    public ResponseEntity<UploadSessionResponse> createSession(
+            @RequestParam("name") String name,
+            @RequestHeader(UPLOAD_LENGTH) long length
+    ) {
+        try {
+            UploadSession session = uploadSessionService.create(name, length);
+            return ResponseEntity
+                    .created(URI.create("/api/v1/document/uploads/" + session.getSessionId()))
+                    .header(UPLOAD_OFFSET, "0")
+                    .body(session.toResponse());
+        } catch (InvalidChunkException e) {
+            log.warn("Rejected upload session due to: {}", e.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .build();
+        } catch (Exception e) {
+            log.error("Could not create upload session due to exception: {}", e.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .build();
+        }
+    }
+
+    @PutMapping("/{sessionId}")
+    @Operation(
+            summary = "Upload one chunk of a session at the given offset",
+            tags = {"Upload Session Controller"},
+            responses = {
+                    @ApiResponse(
+                            description = "Success",
+                            responseCode = "200",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(
+                                            implementation = UploadSessionResponse.class
+                                    )
+                            )
+                    ),
+                    @ApiResponse(
+                            description = "Misaligned offset, wrong length or finished session",
+                            responseCode = "400"
+                    ),
+                    @ApiResponse(
+                            description = "Unknown or expired session",
+                            responseCode = "404"
+                    ),
+                    @ApiResponse(
+                            description = "Too many uploads in flight",
+                            responseCode = "429"
+                    ),
+                    @ApiResponse(
+                            description = "Internal server error",
+                            responseCode = "500"
+                    )
+            }
+    )
+    public ResponseEntity<UploadSessionResponse> uploadChunk(
+            @PathVariable("sessionId") String sessionId,
+            @RequestHeader(UPLOAD_OFFSET) long offset,
+            HttpServletRequest request
+    ) {
+        try {
+            UploadSession session = uploadSessionService.uploadChunk(sessionId, offset, request.getContentLengthLong(), request.getInputStream());
+            return toResponse(session);
+        } catch (UploadSessionNotFoundException e) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .build();
+        } catch (InvalidChunkException e) {
+            log.warn("Rejected chunk of session={} due to: {}", sessionId, e.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .build();
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not store chunk of session={} due to exception: {}", sessionId, e.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .build();
+        }
+    }
+
+    @GetMapping("/{sessionId}")
+    @Operation(
+            summary = "Get the received offsets of a session",
+            tags = {"Upload Session Controller"},
+            responses = {
+                    @ApiResponse(
+                            description = "Success",
+                            responseCode = "200",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(
+                                            implementation = UploadSessionResponse.class
+                                    )
+                            )
+                    ),
+                    @ApiResponse(
+                            description = "Unknown or expired session",
+                            responseCode = "404"
+                    )
+            }
+    )
+    public ResponseEntity<UploadSessionResponse> getSession(@PathVariable("sessionId") String sessionId) {
+        try {
+            return toResponse(uploadSessionService.find(sessionId));
+        } catch (UploadSessionNotFoundException e) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .build();
+        }
+    }
+
+    @DeleteMapping("/{sessionId}")
+    @Operation(
+            summary = "Cancel a session and discard its chunks",
+            tags = {"Upload Session Controller"},
+            responses = {
+                    @ApiResponse(
+                            description = "Cancelled",
+                            responseCode = "204"
+                    ),
+                    @ApiResponse(
+                            description = "Unknown or expired session",
+                            responseCode = "404"
+                    )
+            }
+    )
+    public ResponseEntity<Void> deleteSession(@PathVariable("sessionId") String sessionId) {
+        try {
+            uploadSessionService.abort(sessionId);
+            return ResponseEntity
+                    .noContent()
+                    .build();
+        } catch (UploadSessionNotFoundException e) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .build();
+        }
+    }
+
+    private ResponseEntity<UploadSessionResponse> toResponse(UploadSession session) {
+        UploadSessionResponse response = session.toResponse();
+        return ResponseEntity
+                .ok()
+                .header(UPLOAD_OFFSET, String.valueOf(response.getOffset()))
+                .header(UPLOAD_LENGTH, String.valueOf(response.getLength()))
+                .body(response);
+    }
+}
@@ -0,0 +1,15 @@
+package org.redquark.hotspring.uploader.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.redquark.hotspring.commons.domains.PayloadChecksum;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchiveEntry {
+
+    private String name;
+    private PayloadChecksum checksum;
+}
@@ -0,0 +1,15 @@
+package org.redquark.hotspring.uploader.domains;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum ArchiveFormat {
+
+    ZIP("zip", ".zip"),
+    ZSTD("tar.zst", ".tar.zst");
+
+    private final String metadataValue;
+    private final String extension;
+}
@@ -0,0 +1,19 @@
+package org.redquark.hotspring.uploader.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchiveManifest {
+
+    private String name;
+    private String format;
+    private List<ArchiveEntry> entries;
+}
@@ -0,0 +1,15 @@
+package org.redquark.hotspring.uploader.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchiveShard {
+
+    private String key;
+    private int entries;
+    private long size;
+}
@@ -0,0 +1,13 @@
+package org.redquark.hotspring.uploader.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CompressionDecision {
+
+    private int method;
+    private int level;
+    private String reason;
+}
@@ -0,0 +1,13 @@
+package org.redquark.hotspring.uploader.domains;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class DeleteSummary {
+
+    private long deleted;
+    private long failed;
+    private long elapsedMillis;
+}
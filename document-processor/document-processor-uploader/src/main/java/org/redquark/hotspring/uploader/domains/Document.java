@@ -2,6 +2,11 @@ package org.redquark.hotspring.uploader.domains;
 
 import lombok.Builder;
 import lombok.Data;
+import org.springframework.core.io.InputStreamSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 @Data
 @Builder
@@ -9,4 +14,10 @@ public class Document {
 
     private String name;
     private byte[] contents;
+    private long size;
+    private InputStreamSource source;
+
+    public InputStream openStream() throws IOException {
+        return source != null ? source.getInputStream() : new ByteArrayInputStream(contents);
+    }
 }
@@ -0,0 +1,14 @@
+package org.redquark.hotspring.uploader.domains;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum EncryptionEnvelope {
+
+    PGP("pgp"),
+    GCM_PARTS("gcm-parts");
+
+    private final String metadataValue;
+}
@@ -0,0 +1,17 @@
+package org.redquark.hotspring.uploader.domains;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.bouncycastle.bcpg.CompressionAlgorithmTags;
+
+@Getter
+@RequiredArgsConstructor
+public enum PGPCompressionAlgorithm {
+
+    UNCOMPRESSED(CompressionAlgorithmTags.UNCOMPRESSED),
+    ZIP(CompressionAlgorithmTags.ZIP),
+    ZLIB(CompressionAlgorithmTags.ZLIB),
+    BZIP2(CompressionAlgorithmTags.BZIP2);
+
+    private final int tag;
+}
@@ -0,0 +1,18 @@
+package org.redquark.hotspring.uploader.domains;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+
+@Getter
+@RequiredArgsConstructor
+public enum PGPSymmetricAlgorithm {
+
+    CAST5(SymmetricKeyAlgorithmTags.CAST5),
+    AES_128(SymmetricKeyAlgorithmTags.AES_128),
+    AES_192(SymmetricKeyAlgorithmTags.AES_192),
+    AES_256(SymmetricKeyAlgorithmTags.AES_256),
+    CAMELLIA_256(SymmetricKeyAlgorithmTags.CAMELLIA_256);
+
+    private final int tag;
+}
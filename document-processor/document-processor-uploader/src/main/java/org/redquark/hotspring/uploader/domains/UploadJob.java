@@ -0,0 +1,72 @@
+package org.redquark.hotspring.uploader.domains;
+
+import lombok.Getter;
+import org.redquark.hotspring.uploader.domains.responses.UploadJobResponse;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+@Getter
+public class UploadJob {
+
+    private final String jobId;
+    private final UploadNamespace namespace = UploadNamespace.create();
+    private final Path directory;
+    private final Instant submittedAt = Instant.now();
+    private final AtomicLong bytesTransferred = new AtomicLong();
+    private volatile AtomicLongArray readOffsets = new AtomicLongArray(0);
+    private List<Document> documents;
+    private long totalBytes;
+    private volatile UploadStage stage = UploadStage.ACCEPTED;
+    private volatile String error;
+    private volatile Instant completedAt;
+
+    public UploadJob(String jobId, Path directory) {
+        this.jobId = jobId;
+        this.directory = directory;
+    }
+
+    public void setDocuments(List<Document> documents) {
+        this.documents = documents;
+        this.totalBytes = documents.stream().mapToLong(Document::getSize).sum();
+        this.readOffsets = new AtomicLongArray(documents.size());
+    }
+
+    // Every stage reads all documents, so the byte counter starts over with each of them
+    public void moveTo(UploadStage stage) {
+        readOffsets = new AtomicLongArray(readOffsets.length());
+        bytesTransferred.set(0);
+        this.stage = stage;
+    }
+
+    // A document may be read more than once within a stage, a stored zip entry is checksummed before it
+    // is written, so only reads past the furthest offset reached in the document count as transferred
+    public void recordRead(int document, long offset) {
+        long previous = readOffsets.getAndAccumulate(document, offset, Math::max);
+        if (offset > previous) {
+            bytesTransferred.addAndGet(offset - previous);
+        }
+    }
+
+    public void complete() {
+        completedAt = Instant.now();
+        stage = UploadStage.COMPLETED;
+    }
+
+    public void fail(String error) {
+        this.error = error;
+        completedAt = Instant.now();
+        stage = UploadStage.FAILED;
+    }
+
+    public boolean isFinished() {
+        return completedAt != null;
+    }
+
+    public UploadJobResponse toResponse() {
+        return new UploadJobResponse(jobId, namespace.getSessionId(), stage, totalBytes, bytesTransferred.get(), error, submittedAt, completedAt);
+    }
+}
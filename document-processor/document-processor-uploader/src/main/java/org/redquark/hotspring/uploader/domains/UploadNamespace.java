@@ -0,0 +1,34 @@
+package org.redquark.hotspring.uploader.domains;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Every upload writes below its own session id, so concurrent uploads of equally named files never share a key
+@Getter
+public class UploadNamespace {
+
+    public static final String SESSION_METADATA = "upload-session";
+
+    private final String sessionId;
+
+    public UploadNamespace(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public static UploadNamespace create() {
+        return new UploadNamespace(UUID.randomUUID().toString());
+    }
+
+    public String key(String name) {
+        return sessionId + "/" + name;
+    }
+
+    public Map<String, String> metadata(Map<String, String> metadata) {
+        Map<String, String> sessionMetadata = new HashMap<>(metadata);
+        sessionMetadata.put(SESSION_METADATA, sessionId);
+        return sessionMetadata;
+    }
+}
@@ -0,0 +1,74 @@
+package org.redquark.hotspring.uploader.domains;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.redquark.hotspring.uploader.domains.responses.UploadSessionResponse;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// A resumable upload. Every chunk of the client is one part of the multipart upload, so chunk i
+// starts at offset i * chunkSize and is stored as part i + 1
+@Data
+@NoArgsConstructor
+public class UploadSession {
+
+    private String sessionId;
+    private String name;
+    // Object key below the upload folder
+    private String key;
+    private String uploadId;
+    private long length;
+    private int chunkSize;
+    private UploadSessionState state;
+    private Instant createdAt;
+    private Instant updatedAt;
+    // ETag of every received part by part number
+    private Map<Integer, String> parts = new TreeMap<>();
+
+    public UploadSession(String sessionId, String name, String key, String uploadId, long length, int chunkSize) {
+        this.sessionId = sessionId;
+        this.name = name;
+        this.key = key;
+        this.uploadId = uploadId;
+        this.length = length;
+        this.chunkSize = chunkSize;
+        this.state = UploadSessionState.ACTIVE;
+        this.createdAt = Instant.now();
+        this.updatedAt = createdAt;
+    }
+
+    @JsonIgnore
+    public int getPartCount() {
+        return (int) ((length + chunkSize - 1) / chunkSize);
+    }
+
+    @JsonIgnore
+    public boolean isReceived() {
+        return parts.size() == getPartCount();
+    }
+
+    // Bytes received without a gap from the start, which is where a sequential client resumes
+    @JsonIgnore
+    public long getOffset() {
+        int contiguousParts = 0;
+        while (parts.containsKey(contiguousParts + 1)) {
+            contiguousParts++;
+        }
+        return Math.min(length, (long) contiguousParts * chunkSize);
+    }
+
+    public synchronized UploadSessionResponse toResponse() {
+        List<Long> missingOffsets = new ArrayList<>();
+        for (int partNumber = 1; partNumber <= getPartCount(); partNumber++) {
+            if (!parts.containsKey(partNumber)) {
+                missingOffsets.add((long) (partNumber - 1) * chunkSize);
+            }
+        }
+        return new UploadSessionResponse(sessionId, name, state, length, chunkSize, getOffset(), missingOffsets, createdAt, updatedAt);
+    }
+}
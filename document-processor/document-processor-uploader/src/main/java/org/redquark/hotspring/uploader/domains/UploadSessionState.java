@@ -0,0 +1,7 @@
+package org.redquark.hotspring.uploader.domains;
+
+public enum UploadSessionState {
+    ACTIVE,
+    COMPLETING,
+    COMPLETED
+}
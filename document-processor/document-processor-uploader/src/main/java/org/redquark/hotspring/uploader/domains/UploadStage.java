@@ -0,0 +1,10 @@
+package org.redquark.hotspring.uploader.domains;
+
+public enum UploadStage {
+
+    ACCEPTED,
+    UPLOADING,
+    ARCHIVING,
+    COMPLETED,
+    FAILED
+}
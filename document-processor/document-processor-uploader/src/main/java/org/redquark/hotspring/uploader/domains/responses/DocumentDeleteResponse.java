@@ -2,10 +2,12 @@ package org.redquark.hotspring.uploader.domains.responses;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import org.redquark.hotspring.uploader.domains.DeleteSummary;
 
 @Data
 @AllArgsConstructor
 public class DocumentDeleteResponse {
 
     private String message;
+    private DeleteSummary summary;
 }
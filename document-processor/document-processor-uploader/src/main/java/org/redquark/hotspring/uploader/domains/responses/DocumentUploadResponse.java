@@ -8,4 +8,5 @@ import lombok.Data;
 public class DocumentUploadResponse {
 
     private String message;
+    private String sessionId;
 }
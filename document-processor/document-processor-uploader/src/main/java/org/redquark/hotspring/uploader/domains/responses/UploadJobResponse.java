@@ -0,0 +1,21 @@
+package org.redquark.hotspring.uploader.domains.responses;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.redquark.hotspring.uploader.domains.UploadStage;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+public class UploadJobResponse {
+
+    private String jobId;
+    private String sessionId;
+    private UploadStage stage;
+    private long totalBytes;
+    private long bytesTransferred;
+    private String error;
+    private Instant submittedAt;
+    private Instant completedAt;
+}
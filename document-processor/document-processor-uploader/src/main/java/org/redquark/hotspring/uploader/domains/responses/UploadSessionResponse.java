@@ -0,0 +1,23 @@
+package org.redquark.hotspring.uploader.domains.responses;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.redquark.hotspring.uploader.domains.UploadSessionState;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class UploadSessionResponse {
+
+    private String sessionId;
+    private String name;
+    private UploadSessionState state;
+    private long length;
+    private int chunkSize;
+    private long offset;
+    private List<Long> missingOffsets;
+    private Instant createdAt;
+    private Instant updatedAt;
+}
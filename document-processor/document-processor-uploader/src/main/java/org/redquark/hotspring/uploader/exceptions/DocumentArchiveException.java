@@ -0,0 +1,8 @@
+package org.redquark.hotspring.uploader.exceptions;
+
+public class DocumentArchiveException extends RuntimeException {
+
+    public DocumentArchiveException(String message, Exception e) {
+        super(message, e);
+    }
+}
@@ -0,0 +1,8 @@
+package org.redquark.hotspring.uploader.exceptions;
+
+public class InvalidChunkException extends RuntimeException {
+
+    public InvalidChunkException(String message, Exception e) {
+        super(message, e);
+    }
+}
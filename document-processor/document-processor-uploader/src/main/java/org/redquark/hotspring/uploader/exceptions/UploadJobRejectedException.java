@@ -0,0 +1,8 @@
+package org.redquark.hotspring.uploader.exceptions;
+
+public class UploadJobRejectedException extends RuntimeException {
+
+    public UploadJobRejectedException(String message, Exception e) {
+        super(message, e);
+    }
+}
@@ -0,0 +1,8 @@
+package org.redquark.hotspring.uploader.exceptions;
+
+public class UploadSessionNotFoundException extends RuntimeException {
+
+    public UploadSessionNotFoundException(String message, Exception e) {
+        super(message, e);
+    }
+}
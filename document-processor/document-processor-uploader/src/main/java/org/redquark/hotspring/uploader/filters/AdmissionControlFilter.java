@@ -0,0 +1,73 @@
+package org.redquark.hotspring.uploader.filters;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.uploader.configs.AdmissionConfig;
+import org.redquark.hotspring.uploader.domains.responses.DocumentUploadResponse;
+import org.redquark.hotspring.uploader.process.ByteBudget;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Optional;
+
+@Slf4j
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    public static final String LEASE_ATTRIBUTE = "org.redquark.hotspring.uploader.filters.AdmissionControlFilter.lease";
+
+    private final ByteBudget byteBudget;
+    private final AdmissionConfig admissionConfig;
+    private final long maxRequestSize;
+    private final ObjectMapper objectMapper;
+
+    public AdmissionControlFilter(ByteBudget byteBudget, AdmissionConfig admissionConfig, long maxRequestSize, ObjectMapper objectMapper) {
+        this.byteBudget = byteBudget;
+        this.admissionConfig = admissionConfig;
+        this.maxRequestSize = maxRequestSize;
+        this.objectMapper = objectMapper;
+    }
+
+    // Status queries and cancellations carry no body, so they are never held back
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.POST.matches(request.getMethod()) && !HttpMethod.PUT.matches(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        // Chunked requests carry no length, so they are charged as if they were as large as allowed
+        long contentLength = request.getContentLengthLong();
+        long requestedBytes = contentLength >= 0 ? contentLength : maxRequestSize;
+        Optional<ByteBudget.Lease> lease;
+        try {
+            lease = byteBudget.tryAcquire(requestedBytes, admissionConfig.getQueueTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException("Interrupted while waiting for upload budget", e);
+        }
+        if (lease.isEmpty()) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(admissionConfig.getRetryAfter().toSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), new DocumentUploadResponse("Too many uploads in flight, retry later", null));
+            return;
+        }
+        request.setAttribute(LEASE_ATTRIBUTE, lease.get());
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (!lease.get().isDetached()) {
+                lease.get().close();
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.redquark.hotspring.uploader.process;
+
+import org.redquark.hotspring.uploader.domains.ArchiveEntry;
+import org.redquark.hotspring.uploader.domains.ArchiveFormat;
+import org.redquark.hotspring.uploader.domains.Document;
+
+import java.io.OutputStream;
+import java.util.List;
+
+public interface ArchiveEncoder {
+
+    ArchiveFormat getFormat();
+
+    // Returns the entries in archive order, with the checksums taken while their bytes were written
+    List<ArchiveEntry> archive(List<Document> documents, OutputStream target);
+}
@@ -0,0 +1,82 @@
+package org.redquark.hotspring.uploader.process;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.uploader.configs.AdmissionConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Component
+@Slf4j
+public class ByteBudget {
+
+    // Permits are counted in kilobytes so that budgets beyond 2 GB still fit into a semaphore
+    private static final int PERMIT_SIZE = 1 << 10;
+
+    private final int totalPermits;
+    private final Semaphore permits;
+    private final Counter rejections;
+
+    public ByteBudget(DocumentUploaderConfig documentUploaderConfig, MeterRegistry meterRegistry) {
+        AdmissionConfig admissionConfig = documentUploaderConfig.getAdmissionConfig();
+        this.totalPermits = (int) Math.max(1, admissionConfig.getBudget().toBytes() / PERMIT_SIZE);
+        // Fair, so that a large upload waiting for its share is not starved by a stream of small ones
+        this.permits = new Semaphore(totalPermits, true);
+        Gauge.builder("uploader.admission.budget", () -> (double) totalPermits * PERMIT_SIZE)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("uploader.admission.in.use", () -> (double) (totalPermits - permits.availablePermits()) * PERMIT_SIZE)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("uploader.admission.queue.depth", permits::getQueueLength)
+                .register(meterRegistry);
+        this.rejections = Counter.builder("uploader.admission.rejected").register(meterRegistry);
+    }
+
+    public Optional<Lease> tryAcquire(long bytes, Duration timeout) throws InterruptedException {
+        // A request larger than the whole budget runs alone instead of never being admitted
+        int requested = (int) Math.min(totalPermits, Math.max(1, (bytes + PERMIT_SIZE - 1) / PERMIT_SIZE));
+        if (permits.tryAcquire(requested, timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            return Optional.of(new Lease(requested));
+        }
+        rejections.increment();
+        log.warn("Rejected {} bytes after waiting {} ms, {} requests are queued", bytes, timeout.toMillis(), permits.getQueueLength());
+        return Optional.empty();
+    }
+
+    public class Lease implements AutoCloseable {
+
+        private final int leasedPermits;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean detached;
+
+        private Lease(int leasedPermits) {
+            this.leasedPermits = leasedPermits;
+        }
+
+        // Hands the lease over to work that outlives the request, which then has to release it
+        public Lease detach() {
+            detached = true;
+            return this;
+        }
+
+        public boolean isDetached() {
+            return detached;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                permits.release(leasedPermits);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.redquark.hotspring.uploader.process;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.uploader.configs.DedupConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.exceptions.DocumentException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+@Component
+@Slf4j
+public class ChunkIndex {
+
+    private static final String INDEX_FILE = "chunks.idx";
+
+    private final DedupConfig dedupConfig;
+    private BloomFilter<CharSequence> bloomFilter;
+    private BufferedWriter indexWriter;
+
+    public ChunkIndex(DocumentUploaderConfig documentUploaderConfig) {
+        this.dedupConfig = documentUploaderConfig.getDedupConfig();
+    }
+
+    @PostConstruct
+    protected void init() {
+        if (!Boolean.TRUE.equals(dedupConfig.getEnabled())) {
+            return;
+        }
+        bloomFilter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8),
+                dedupConfig.getExpectedChunks(), dedupConfig.getFalsePositiveRate());
+        Path indexFile = Paths.get(dedupConfig.getIndexDirectory(), INDEX_FILE);
+        try {
+            Files.createDirectories(indexFile.getParent());
+            long indexed = 0;
+            if (Files.exists(indexFile)) {
+                try (BufferedReader indexReader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                    String hash;
+                    while ((hash = indexReader.readLine()) != null) {
+                        bloomFilter.put(hash);
+                        indexed++;
+                    }
+                }
+            }
+            indexWriter = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            log.info("Loaded {} chunk hashes from {}", indexed, indexFile);
+        } catch (IOException e) {
+            log.error("Exception occurred while loading the chunk index: {}", e.getMessage(), e);
+            throw new DocumentException("Could not load the chunk index", e);
+        }
+    }
+
+    @PreDestroy
+    protected void destroy() throws IOException {
+        if (indexWriter != null) {
+            indexWriter.close();
+        }
+    }
+
+    // A negative answer is definite, a positive one still has to be confirmed against the store
+    public boolean mightContain(String hash) {
+        return bloomFilter.mightContain(hash);
+    }
+
+    public synchronized void add(String hash) {
+        if (!bloomFilter.put(hash)) {
+            return;
+        }
+        try {
+            indexWriter.write(hash);
+            indexWriter.newLine();
+            indexWriter.flush();
+        } catch (IOException e) {
+            // The index only saves round trips, a lost entry means the chunk is uploaded once more
+            log.warn("Could not persist chunk hash={}: {}", hash, e.getMessage());
+        }
+    }
+}
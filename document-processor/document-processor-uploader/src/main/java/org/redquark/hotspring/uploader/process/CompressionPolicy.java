@@ -0,0 +1,9 @@
+package org.redquark.hotspring.uploader.process;
+
+import org.redquark.hotspring.uploader.domains.CompressionDecision;
+import org.redquark.hotspring.uploader.domains.Document;
+
+public interface CompressionPolicy {
+
+    CompressionDecision decide(Document document);
+}
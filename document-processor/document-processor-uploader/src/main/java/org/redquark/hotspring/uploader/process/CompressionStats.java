@@ -0,0 +1,42 @@
+package org.redquark.hotspring.uploader.process;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.uploader.domains.CompressionDecision;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Slf4j
+public class CompressionStats {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final Map<String, long[]> totalsByReason = new TreeMap<>();
+
+    public static long currentThreadCpuTime() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+    }
+
+    public void record(String name, CompressionDecision decision, long size, long compressedSize, long cpuNanos) {
+        log.debug("Entry={} method={} level={} reason={} size={} compressedSize={} ratio={} cpu={}µs",
+                name, decision.getMethod(), decision.getLevel(), decision.getReason(),
+                size, compressedSize, ratio(size, compressedSize), cpuNanos / 1_000);
+        long[] totals = totalsByReason.computeIfAbsent(decision.getReason(), reason -> new long[4]);
+        totals[0]++;
+        totals[1] += size;
+        totals[2] += compressedSize;
+        totals[3] += cpuNanos;
+    }
+
+    public void log() {
+        totalsByReason.forEach((reason, totals) -> log.info(
+                "Compression reason={}: entries={} size={} compressedSize={} ratio={} cpu={}ms",
+                reason, totals[0], totals[1], totals[2], ratio(totals[1], totals[2]), totals[3] / 1_000_000));
+    }
+
+    private static String ratio(long size, long compressedSize) {
+        return size == 0 ? "n/a" : String.format("%.3f", (double) compressedSize / size);
+    }
+}
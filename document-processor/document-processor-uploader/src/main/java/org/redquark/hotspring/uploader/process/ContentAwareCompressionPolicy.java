@@ -0,0 +1,118 @@
+package org.redquark.hotspring.uploader.process;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.redquark.hotspring.uploader.configs.ArchiveConfig;
+import org.redquark.hotspring.uploader.configs.CompressionConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.domains.CompressionDecision;
+import org.redquark.hotspring.uploader.domains.Document;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+
+@Component
+@Slf4j
+public class ContentAwareCompressionPolicy implements CompressionPolicy {
+
+    // Signatures of formats that are already compressed: JPEG, PNG, GIF, ZIP, GZIP, BZIP2, XZ, 7z, RAR and Zstandard
+    private static final List<byte[]> COMPRESSED_SIGNATURES = List.of(
+            new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},
+            new byte[]{(byte) 0x89, 'P', 'N', 'G'},
+            new byte[]{'G', 'I', 'F', '8'},
+            new byte[]{'P', 'K', 0x03, 0x04},
+            new byte[]{0x1F, (byte) 0x8B},
+            new byte[]{'B', 'Z', 'h'},
+            new byte[]{(byte) 0xFD, '7', 'z', 'X', 'Z', 0x00},
+            new byte[]{'7', 'z', (byte) 0xBC, (byte) 0xAF, 0x27, 0x1C},
+            new byte[]{'R', 'a', 'r', '!'},
+            new byte[]{0x28, (byte) 0xB5, 0x2F, (byte) 0xFD}
+    );
+
+    private final CompressionConfig compressionConfig;
+    private final ArchiveConfig archiveConfig;
+    private final Set<String> storedExtensions;
+
+    public ContentAwareCompressionPolicy(DocumentUploaderConfig documentUploaderConfig) {
+        this.compressionConfig = documentUploaderConfig.getCompressionConfig();
+        this.archiveConfig = documentUploaderConfig.getArchiveConfig();
+        this.storedExtensions = compressionConfig.getStoredExtensions().stream()
+                .map(extension -> extension.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public CompressionDecision decide(Document document) {
+        String extension = FilenameUtils.getExtension(document.getName()).toLowerCase(Locale.ROOT);
+        if (storedExtensions.contains(extension)) {
+            return stored("extension");
+        }
+        byte[] sample = new byte[(int) compressionConfig.getSampleSize().toBytes()];
+        int length;
+        try (InputStream documentStream = document.openStream()) {
+            length = IOUtils.read(documentStream, sample);
+        } catch (IOException e) {
+            log.error("Exception occurred while sampling document={}: {}", document.getName(), e.getMessage());
+            return new CompressionDecision(ZipEntry.DEFLATED, archiveConfig.getCompressionLevel(), "default");
+        }
+        if (hasCompressedSignature(sample, length)) {
+            return stored("signature");
+        }
+        double entropy = entropy(sample, length);
+        if (entropy >= compressionConfig.getStoredEntropyThreshold()) {
+            return stored("entropy");
+        }
+        if (entropy >= compressionConfig.getFastEntropyThreshold()) {
+            return new CompressionDecision(ZipEntry.DEFLATED, compressionConfig.getFastLevel(), "entropy-fast");
+        }
+        return new CompressionDecision(ZipEntry.DEFLATED, archiveConfig.getCompressionLevel(), "default");
+    }
+
+    private CompressionDecision stored(String reason) {
+        return new CompressionDecision(ZipEntry.STORED, 0, reason);
+    }
+
+    private boolean hasCompressedSignature(byte[] sample, int length) {
+        for (byte[] signature : COMPRESSED_SIGNATURES) {
+            if (length >= signature.length && matches(sample, signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(byte[] sample, byte[] signature) {
+        for (int i = 0; i < signature.length; i++) {
+            if (sample[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Shannon entropy in bits per byte; values close to 8 mean the sample is already compressed or encrypted
+    private double entropy(byte[] sample, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[sample[i] & 0xFF]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double probability = (double) count / length;
+                entropy -= probability * (Math.log(probability) / Math.log(2));
+            }
+        }
+        return entropy;
+    }
+}
@@ -0,0 +1,138 @@
+package org.redquark.hotspring.uploader.process;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.uploader.configs.DedupConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.domains.ChunkReference;
+import org.redquark.hotspring.uploader.domains.Document;
+import org.redquark.hotspring.uploader.domains.DocumentManifest;
+import org.redquark.hotspring.uploader.domains.UploadNamespace;
+import org.redquark.hotspring.uploader.exceptions.DocumentException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+@Component
+@Slf4j
+public class DocumentDeduplicator {
+
+    public static final String CHUNK_PREFIX = "chunks/";
+    public static final String MANIFEST_EXTENSION = ".manifest";
+    private static final String DEDUP_METADATA = "dedup";
+    private static final String DEDUP_METADATA_VALUE = "fastcdc";
+
+    private final DedupConfig dedupConfig;
+    private final ChunkIndex chunkIndex;
+    private final S3Helper s3Helper;
+    private final ObjectMapper objectMapper;
+
+    public DocumentDeduplicator(
+            DocumentUploaderConfig documentUploaderConfig,
+            ChunkIndex chunkIndex,
+            S3Helper s3Helper,
+            ObjectMapper objectMapper
+    ) {
+        this.dedupConfig = documentUploaderConfig.getDedupConfig();
+        this.chunkIndex = chunkIndex;
+        this.s3Helper = s3Helper;
+        this.objectMapper = objectMapper;
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(dedupConfig.getEnabled());
+    }
+
+    // Chunks are addressed by content and shared by all uploads, only the manifests belong to the session
+    public void upload(UploadNamespace namespace, List<Document> documents) {
+        FastCdcChunker chunker = new FastCdcChunker(
+                (int) dedupConfig.getMinChunkSize().toBytes(),
+                (int) dedupConfig.getAverageChunkSize().toBytes(),
+                (int) dedupConfig.getMaxChunkSize().toBytes()
+        );
+        for (Document document : documents) {
+            upload(namespace, document, chunker);
+        }
+    }
+
+    private void upload(UploadNamespace namespace, Document document, FastCdcChunker chunker) {
+        List<ChunkReference> chunks = new ArrayList<>();
+        Set<String> seenChunks = new HashSet<>();
+        Deque<PendingChunk> pendingChunks = new ArrayDeque<>();
+        long[] uploadedBytes = new long[1];
+        try (InputStream documentStream = document.openStream()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            chunker.split(documentStream, (data, offset, length) -> {
+                digest.update(data, offset, length);
+                String hash = HexFormat.of().formatHex(digest.digest());
+                chunks.add(new ChunkReference(hash, length));
+                if (!seenChunks.add(hash) || isStored(hash)) {
+                    return;
+                }
+                byte[] chunk = Arrays.copyOfRange(data, offset, offset + length);
+                pendingChunks.add(new PendingChunk(hash, s3Helper.uploadAsync(CHUNK_PREFIX + hash, chunk)));
+                uploadedBytes[0] += length;
+                if (pendingChunks.size() >= dedupConfig.getMaxChunksInFlight()) {
+                    complete(pendingChunks.poll());
+                }
+            });
+            while (!pendingChunks.isEmpty()) {
+                complete(pendingChunks.poll());
+            }
+            DocumentManifest manifest = DocumentManifest.builder()
+                    .name(document.getName())
+                    .size(chunks.stream().mapToLong(ChunkReference::getSize).sum())
+                    .chunks(chunks)
+                    .build();
+            byte[] manifestBytes = objectMapper.writeValueAsBytes(manifest);
+            s3Helper.upload(namespace.key(document.getName() + MANIFEST_EXTENSION),
+                    namespace.metadata(Map.of(DEDUP_METADATA, DEDUP_METADATA_VALUE)), manifestBytes);
+            log.info("Stored {} as {} chunks, uploaded {} of {} bytes", document.getName(), chunks.size(),
+                    uploadedBytes[0], manifest.getSize());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.error("Exception occurred while deduplicating {}: {}", document.getName(), e.getMessage(), e);
+            throw new DocumentException("Could not upload deduplicated file", e);
+        } finally {
+            pendingChunks.forEach(pendingChunk -> pendingChunk.upload.cancel(true));
+        }
+    }
+
+    // The store stays the source of truth, so chunks removed from the bucket are simply uploaded again
+    private boolean isStored(String hash) {
+        return chunkIndex.mightContain(hash) && s3Helper.exists(CHUNK_PREFIX + hash);
+    }
+
+    private void complete(PendingChunk pendingChunk) throws IOException {
+        try {
+            pendingChunk.upload.join();
+        } catch (CompletionException e) {
+            throw new IOException("Could not upload chunk " + pendingChunk.hash, e.getCause());
+        }
+        chunkIndex.add(pendingChunk.hash);
+    }
+
+    private static class PendingChunk {
+
+        private final String hash;
+        private final CompletableFuture<Void> upload;
+
+        private PendingChunk(String hash, CompletableFuture<Void> upload) {
+            this.hash = hash;
+            this.upload = upload;
+        }
+    }
+}
@@ -1,77 +1,126 @@
 package org.redquark.hotspring.uploader.process;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.redquark.hotspring.commons.integrity.PayloadDigest;
+import org.redquark.hotspring.uploader.configs.ArchiveConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.domains.ArchiveEntry;
+import org.redquark.hotspring.uploader.domains.ArchiveFormat;
+import org.redquark.hotspring.uploader.domains.CompressionDecision;
 import org.redquark.hotspring.uploader.domains.Document;
-import org.redquark.hotspring.uploader.exceptions.DocumentException;
 import org.redquark.hotspring.uploader.exceptions.DocumentZipException;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 @Component
 @Slf4j
-public class DocumentZipper {
+public class DocumentZipper implements ArchiveEncoder {
 
-    private static final String ZIP_FILE_NAME = "archived.zip";
-    private static final int BUFFER_SIZE = 1 << 10;
+    private static final int BUFFER_SIZE = 1 << 16;
 
-    public byte[] zip(List<Document> documents) {
+    private final ArchiveConfig archiveConfig;
+    private final CompressionPolicy compressionPolicy;
+    private ForkJoinPool deflaterPool;
+
+    public DocumentZipper(DocumentUploaderConfig documentUploaderConfig, CompressionPolicy compressionPolicy) {
+        this.archiveConfig = documentUploaderConfig.getArchiveConfig();
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    @PostConstruct
+    protected void init() {
+        if (Boolean.TRUE.equals(archiveConfig.getParallel())) {
+            int parallelism = archiveConfig.getParallelism() > 0
+                    ? archiveConfig.getParallelism()
+                    : Runtime.getRuntime().availableProcessors();
+            deflaterPool = new ForkJoinPool(parallelism, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("archive-deflater-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+            log.info("Archives are deflated in parallel on {} threads", parallelism);
+        }
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        if (deflaterPool != null) {
+            deflaterPool.shutdownNow();
+        }
+    }
+
+    @Override
+    public ArchiveFormat getFormat() {
+        return ArchiveFormat.ZIP;
+    }
+
+    @Override
+    public List<ArchiveEntry> archive(List<Document> documents, OutputStream target) {
         log.info("Zipping {} files", documents.size());
-        final File targetZip = new File(ZIP_FILE_NAME);
-        try (
-                OutputStream outputStream = new FileOutputStream(targetZip);
-                ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)
-        ) {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            for (Document document : documents) {
-                File currentFile = getCurrentFile(document);
-                if (!currentFile.isDirectory()) {
-                    ZipEntry zipEntry = new ZipEntry(currentFile.getName());
-                    InputStream fileInputStream = new FileInputStream(currentFile);
-                    zipOutputStream.putNextEntry(zipEntry);
-                    int read;
-                    while ((read = fileInputStream.read(buffer)) != -1) {
-                        zipOutputStream.write(buffer, 0, read);
-                    }
-                    zipOutputStream.closeEntry();
-                    fileInputStream.close();
-                }
-            }
+        // The target stays open so that the caller decides whether to commit or discard a failed archive.
+        // Both writers switch to Zip64 records on their own once an entry or the archive outgrows 4 GB.
+        try {
+            List<ArchiveEntry> entries = deflaterPool != null
+                    ? new ParallelZipper(deflaterPool, compressionPolicy, (int) archiveConfig.getBlockSize().toBytes()).zip(documents, target)
+                    : zipSequentially(documents, target);
             log.info("Zipping of files is completed");
-            return FileUtils.readFileToByteArray(targetZip);
+            return entries;
         } catch (IOException e) {
             log.error("Exception occurred while zipping files");
             throw new DocumentZipException("Could not zip files", e);
         }
     }
 
-    private File getCurrentFile(Document document) {
-        OutputStream currentFileOS = null;
-        try {
-            File currentFile = new File(document.getName());
-            currentFileOS = new FileOutputStream(currentFile);
-            FileUtils.writeByteArrayToFile(currentFile, document.getContents());
-            return currentFile;
-        } catch (IOException e) {
-            log.error("Exception occurred while reading file: {}", e.getMessage());
-            throw new DocumentException("Could not zip files", e);
-        } finally {
-            try {
-                if (currentFileOS != null) {
-                    currentFileOS.close();
+    private List<ArchiveEntry> zipSequentially(List<Document> documents, OutputStream target) throws IOException {
+        CompressionStats compressionStats = new CompressionStats();
+        List<ArchiveEntry> entries = new ArrayList<>();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(CloseShieldOutputStream.wrap(target))) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (Document document : documents) {
+                CompressionDecision decision = compressionPolicy.decide(document);
+                ZipEntry zipEntry = new ZipEntry(FilenameUtils.getName(document.getName()));
+                long cpuStart = CompressionStats.currentThreadCpuTime();
+                PayloadDigest digest = new PayloadDigest();
+                try (InputStream documentStream = document.openStream()) {
+                    int read = IOUtils.read(documentStream, buffer);
+                    if (decision.getMethod() == ZipEntry.STORED) {
+                        // A stored entry that fits in the buffer is checksummed from it, larger ones are read twice
+                        EntryChecksum checksum = read < buffer.length ? EntryChecksum.of(buffer, read) : EntryChecksum.of(document);
+                        zipEntry.setMethod(ZipEntry.STORED);
+                        zipEntry.setSize(checksum.getSize());
+                        zipEntry.setCompressedSize(checksum.getSize());
+                        zipEntry.setCrc(checksum.getCrc());
+                    } else {
+                        zipOutputStream.setLevel(decision.getLevel());
+                    }
+                    zipOutputStream.putNextEntry(zipEntry);
+                    while (read > 0) {
+                        digest.update(buffer, 0, read);
+                        zipOutputStream.write(buffer, 0, read);
+                        read = documentStream.read(buffer);
+                    }
                 }
-            } catch (IOException e) {
-                log.error("Exception occurred while closing the stream: {}", e.getMessage(), e);
+                zipOutputStream.closeEntry();
+                entries.add(new ArchiveEntry(zipEntry.getName(), digest.toChecksum()));
+                compressionStats.record(zipEntry.getName(), decision, zipEntry.getSize(), zipEntry.getCompressedSize(),
+                        CompressionStats.currentThreadCpuTime() - cpuStart);
             }
         }
+        compressionStats.log();
+        return entries;
     }
 }
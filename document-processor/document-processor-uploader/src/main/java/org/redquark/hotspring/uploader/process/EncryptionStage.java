@@ -0,0 +1,166 @@
+package org.redquark.hotspring.uploader.process;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.redquark.hotspring.commons.domains.TransferPlan;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
+import org.redquark.hotspring.uploader.configs.CryptoConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.domains.Document;
+import org.redquark.hotspring.uploader.domains.EncryptionEnvelope;
+import org.redquark.hotspring.uploader.domains.UploadNamespace;
+import org.redquark.hotspring.uploader.exceptions.DocumentEncryptionException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+@Component
+@Slf4j
+public class EncryptionStage {
+
+    public static final String ENCRYPTED_EXTENSION = ".pgp";
+    public static final String ENCRYPTION_METADATA = "encryption";
+    public static final String ENVELOPE_KEY_METADATA = "envelope-key";
+    public static final String ENVELOPE_FRAME_SIZE_METADATA = "envelope-frame-size";
+    private static final int DATA_KEY_SIZE = 256;
+    private static final String ENCRYPTOR_EXECUTOR = "document-encryptor";
+    private static final String PART_ENCRYPTOR_EXECUTOR = "part-encryptor";
+
+    private final CryptoConfig cryptoConfig;
+    private final PGPEncryptor pgpEncryptor;
+    private final S3Helper s3Helper;
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ExecutorRegistry executorRegistry;
+    private ExecutorService encryptorPool;
+    private ExecutorService partEncryptorPool;
+
+    public EncryptionStage(
+            DocumentUploaderConfig documentUploaderConfig,
+            PGPEncryptor pgpEncryptor,
+            S3Helper s3Helper,
+            ExecutorRegistry executorRegistry
+    ) {
+        this.cryptoConfig = documentUploaderConfig.getCryptoConfig();
+        this.pgpEncryptor = pgpEncryptor;
+        this.s3Helper = s3Helper;
+        this.executorRegistry = executorRegistry;
+    }
+
+    @PostConstruct
+    protected void init() {
+        if (isEnabled()) {
+            // Each worker holds one S3 part and the PGP buffers, so the pool is configured with a bounded queue and
+            // overflowing submissions run on the request thread instead of piling up in memory
+            encryptorPool = executorRegistry.get(ENCRYPTOR_EXECUTOR);
+            if (cryptoConfig.getEnvelope() == EncryptionEnvelope.GCM_PARTS) {
+                // Part tasks get their own threads so that document tasks waiting on their parts never starve them
+                partEncryptorPool = executorRegistry.get(PART_ENCRYPTOR_EXECUTOR);
+            }
+            log.info("Documents are encrypted with the {} envelope on {} threads", cryptoConfig.getEnvelope(),
+                    executorRegistry.getSize(ENCRYPTOR_EXECUTOR));
+        }
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(cryptoConfig.getEnabled());
+    }
+
+    public String objectName(String name) {
+        return cryptoConfig.getEnvelope() == EncryptionEnvelope.PGP ? name + ENCRYPTED_EXTENSION : name;
+    }
+
+    public S3MultipartOutputStream openUpload(String objectName, Map<String, String> optionalMetadata, long sizeHint) {
+        Map<String, String> metadata = new HashMap<>(optionalMetadata);
+        metadata.put(ENCRYPTION_METADATA, cryptoConfig.getEnvelope().getMetadataValue());
+        TransferPlan plan = s3Helper.planUpload(sizeHint);
+        if (cryptoConfig.getEnvelope() == EncryptionEnvelope.PGP) {
+            return s3Helper.openMultipartStream(objectName, metadata, plan);
+        }
+        // One fresh data key per object, stored next to it wrapped with the PGP public key
+        SecretKey dataKey = generateDataKey();
+        metadata.put(ENVELOPE_KEY_METADATA, Base64.getEncoder().encodeToString(pgpEncryptor.wrapKey(dataKey.getEncoded())));
+        // The frame size follows the part size planned for this object, the reader takes it from the metadata
+        metadata.put(ENVELOPE_FRAME_SIZE_METADATA, String.valueOf(plan.getPartSize() + GcmPartEncoder.OVERHEAD));
+        return s3Helper.openMultipartStream(objectName, metadata, plan, new GcmPartEncoder(dataKey, secureRandom),
+                partEncryptorPool);
+    }
+
+    public OutputStream encrypt(String name, S3MultipartOutputStream upload) {
+        if (cryptoConfig.getEnvelope() == EncryptionEnvelope.PGP) {
+            return pgpEncryptor.open(name, upload);
+        }
+        // The parts are sealed by the upload stream itself
+        return CloseShieldOutputStream.wrap(upload);
+    }
+
+    public void encryptAndUpload(UploadNamespace namespace, List<Document> documents) {
+        log.info("Encrypting {} files", documents.size());
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (Document document : documents) {
+                futures.add(encryptorPool.submit(() -> encryptAndUpload(namespace, document)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            log.info("Encryption of files is completed");
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new DocumentEncryptionException("Could not encrypt files", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            log.error("Exception occurred while encrypting files: {}", e.getCause().getMessage(), e.getCause());
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new DocumentEncryptionException("Could not encrypt files", e);
+        }
+    }
+
+    private void encryptAndUpload(UploadNamespace namespace, Document document) {
+        S3MultipartOutputStream upload = openUpload(namespace.key(objectName(document.getName())), namespace.metadata(Map.of()),
+                document.getSize());
+        try {
+            if (cryptoConfig.getEnvelope() == EncryptionEnvelope.PGP) {
+                pgpEncryptor.encrypt(document, upload);
+            } else {
+                try (InputStream documentStream = document.openStream()) {
+                    documentStream.transferTo(upload);
+                }
+            }
+            upload.close();
+        } catch (IOException e) {
+            upload.abort();
+            throw new DocumentEncryptionException("Could not upload encrypted file", e);
+        } catch (RuntimeException e) {
+            upload.abort();
+            throw e;
+        }
+    }
+
+    private SecretKey generateDataKey() {
+        try {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(DATA_KEY_SIZE, secureRandom);
+            return keyGenerator.generateKey();
+        } catch (NoSuchAlgorithmException e) {
+            throw new DocumentEncryptionException("Could not generate data key", e);
+        }
+    }
+}
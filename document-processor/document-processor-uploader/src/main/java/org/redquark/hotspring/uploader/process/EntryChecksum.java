@@ -0,0 +1,40 @@
+package org.redquark.hotspring.uploader.process;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.redquark.hotspring.uploader.domains.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+@Data
+@AllArgsConstructor
+public class EntryChecksum {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private long crc;
+    private long size;
+
+    public static EntryChecksum of(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return new EntryChecksum(crc.getValue(), length);
+    }
+
+    // Stored entries need their CRC in the local header, which costs a read of the document but no deflate
+    public static EntryChecksum of(Document document) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream documentStream = document.openStream()) {
+            int read;
+            while ((read = documentStream.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        return new EntryChecksum(crc.getValue(), size);
+    }
+}
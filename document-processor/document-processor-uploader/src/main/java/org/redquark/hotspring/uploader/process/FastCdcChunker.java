@@ -0,0 +1,97 @@
+package org.redquark.hotspring.uploader.process;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class FastCdcChunker {
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // The gear table must never change between releases, otherwise previously stored chunks stop matching
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < GEAR.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final int minSize;
+    private final int averageSize;
+    private final int maxSize;
+    private final long maskSmall;
+    private final long maskLarge;
+
+    public FastCdcChunker(int minSize, int averageSize, int maxSize) {
+        if (minSize <= 0 || minSize > averageSize || averageSize > maxSize) {
+            throw new IllegalArgumentException("Chunk sizes must satisfy 0 < min <= average <= max");
+        }
+        this.minSize = minSize;
+        this.averageSize = averageSize;
+        this.maxSize = maxSize;
+        int bits = 31 - Integer.numberOfLeadingZeros(averageSize);
+        // Normalized chunking: a stricter mask before the average size and a looser one after it
+        // pull the chunk sizes towards the average. The gear hash shifts left, so the top bits see the most bytes.
+        this.maskSmall = topBits(bits + 1);
+        this.maskLarge = topBits(bits - 1);
+    }
+
+    public void split(InputStream inputStream, ChunkConsumer consumer) throws IOException {
+        byte[] buffer = new byte[maxSize * 2];
+        int length = 0;
+        boolean eof = false;
+        while (true) {
+            while (!eof && length < buffer.length) {
+                int read = inputStream.read(buffer, length, buffer.length - length);
+                if (read == -1) {
+                    eof = true;
+                } else {
+                    length += read;
+                }
+            }
+            if (length == 0) {
+                return;
+            }
+            int cut = eof && length <= minSize ? length : cutPoint(buffer, length);
+            consumer.accept(buffer, 0, cut);
+            System.arraycopy(buffer, cut, buffer, 0, length - cut);
+            length -= cut;
+        }
+    }
+
+    int cutPoint(byte[] data, int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int limit = Math.min(length, maxSize);
+        int normal = Math.min(limit, averageSize);
+        long fingerprint = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[i] & 0xFF];
+            if ((fingerprint & maskSmall) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[i] & 0xFF];
+            if ((fingerprint & maskLarge) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    private static long topBits(int bits) {
+        return bits <= 0 ? 0 : -1L << (Long.SIZE - bits);
+    }
+
+    @FunctionalInterface
+    public interface ChunkConsumer {
+
+        void accept(byte[] data, int offset, int length) throws IOException;
+    }
+}
@@ -0,0 +1,49 @@
+package org.redquark.hotspring.uploader.process;
+
+import org.redquark.hotspring.uploader.exceptions.DocumentEncryptionException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+public class GcmPartEncoder implements PartEncoder {
+
+    public static final int NONCE_LENGTH = 12;
+    public static final int TAG_LENGTH = 16;
+    public static final int OVERHEAD = NONCE_LENGTH + TAG_LENGTH;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private final SecretKey dataKey;
+    private final SecureRandom secureRandom;
+
+    public GcmPartEncoder(SecretKey dataKey, SecureRandom secureRandom) {
+        this.dataKey = dataKey;
+        this.secureRandom = secureRandom;
+    }
+
+    // Each part becomes nonce | ciphertext | tag. The part number and the last-part flag are authenticated
+    // as associated data, so reordered, dropped or truncated parts fail to decrypt.
+    @Override
+    public byte[] encode(int partNumber, byte[] data, int length, boolean last) {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        secureRandom.nextBytes(nonce);
+        byte[] frame = new byte[length + OVERHEAD];
+        System.arraycopy(nonce, 0, frame, 0, NONCE_LENGTH);
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, dataKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(associatedData(partNumber, last));
+            cipher.doFinal(data, 0, length, frame, NONCE_LENGTH);
+            return frame;
+        } catch (GeneralSecurityException e) {
+            throw new DocumentEncryptionException("Could not encrypt part " + partNumber, e);
+        }
+    }
+
+    private static byte[] associatedData(int partNumber, boolean last) {
+        return ByteBuffer.allocate(Integer.BYTES + 1).putInt(partNumber).put((byte) (last ? 1 : 0)).array();
+    }
+}
@@ -1,140 +1,175 @@
 package org.redquark.hotspring.uploader.process;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.bouncycastle.bcpg.ArmoredOutputStream;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.openpgp.PGPCompressedData;
 import org.bouncycastle.openpgp.PGPCompressedDataGenerator;
-import org.bouncycastle.openpgp.PGPEncryptedData;
 import org.bouncycastle.openpgp.PGPEncryptedDataGenerator;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPLiteralData;
+import org.bouncycastle.openpgp.PGPLiteralDataGenerator;
 import org.bouncycastle.openpgp.PGPPublicKey;
-import org.bouncycastle.openpgp.PGPPublicKeyRing;
-import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
 import org.bouncycastle.openpgp.PGPUtil;
-import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
 import org.bouncycastle.openpgp.operator.jcajce.JcePGPDataEncryptorBuilder;
 import org.bouncycastle.openpgp.operator.jcajce.JcePublicKeyKeyEncryptionMethodGenerator;
 import org.redquark.hotspring.uploader.configs.CryptoConfig;
 import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
 import org.redquark.hotspring.uploader.domains.Document;
+import org.redquark.hotspring.uploader.domains.PGPCompressionAlgorithm;
+import org.redquark.hotspring.uploader.domains.PGPSymmetricAlgorithm;
 import org.redquark.hotspring.uploader.exceptions.DocumentEncryptionException;
 import org.springframework.stereotype.Component;
 
+import javax.crypto.Cipher;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
-import java.security.Security;
-import java.util.Iterator;
+import java.util.Date;
 import java.util.Objects;
 
 @Component
 @Slf4j
 public class PGPEncryptor {
 
-    private static final String PUBLIC_KEY = "public.asc";
-
-    private final RSAKeyPairGenerator keyPairGenerator;
+    private final PGPKeyService keyService;
     private final CryptoConfig cryptoConfig;
+    private final int bufferSize;
+    private final String cipherProvider;
+    private final SecureRandom secureRandom = new SecureRandom();
 
-    public PGPEncryptor(RSAKeyPairGenerator keyPairGenerator, DocumentUploaderConfig documentUploaderConfig) {
-        this.keyPairGenerator = keyPairGenerator;
+    public PGPEncryptor(PGPKeyService keyService, DocumentUploaderConfig documentUploaderConfig) {
+        this.keyService = keyService;
         cryptoConfig = documentUploaderConfig.getCryptoConfig();
+        bufferSize = (int) cryptoConfig.getBufferSize().toBytes();
+        cipherProvider = cipherProvider(cryptoConfig.getCipherProvider(), cryptoConfig.getSymmetricAlgorithm());
     }
 
-    public byte[] encrypt(Document document) {
-        String publicKeyPath = cryptoConfig.getKeyPath() + File.separator + PUBLIC_KEY;
-        if (Files.notExists(Paths.get(publicKeyPath))) {
-            try {
-                Files.createDirectories(Paths.get(cryptoConfig.getKeyPath()));
-            } catch (IOException e) {
-                log.error("Exception occurred while creating directory: {}", e.getMessage());
-                throw new DocumentEncryptionException("Could not generate key pair", e);
+    public void encrypt(Document document, OutputStream target) {
+        long start = System.nanoTime();
+        try (InputStream documentStream = document.openStream();
+             OutputStream encryptedStream = open(document.getName(), target)) {
+            long bytes = IOUtils.copyLarge(documentStream, encryptedStream, new byte[bufferSize]);
+            if (log.isDebugEnabled()) {
+                double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+                log.debug("Encrypted {} ({} bytes) with {}/{} at {} MB/s", document.getName(), bytes,
+                        cryptoConfig.getSymmetricAlgorithm(), cipherProvider,
+                        String.format("%.1f", bytes / seconds / (1 << 20)));
             }
-        }
-        if (Files.notExists(Paths.get(publicKeyPath))) {
-            keyPairGenerator.generateKeyPair();
-        }
-        try (InputStream publicKeyStream = new FileInputStream(Paths.get(publicKeyPath).toFile());
-             OutputStream cipheredFileStream = new FileOutputStream(document.getName() + ".pgp")) {
-            File inputFile = new File(document.getName());
-            FileUtils.writeByteArrayToFile(inputFile, document.getContents());
-            return encrypt(inputFile, publicKeyStream, cipheredFileStream, cryptoConfig.getIsArmored());
         } catch (IOException e) {
-            log.error("Exception occurred while encrypting the zip: {}", e.getMessage(), e);
+            log.error("Exception occurred while encrypting the file: {}", e.getMessage(), e);
             throw new DocumentEncryptionException("Could not encrypt file", e);
         }
     }
 
-    private byte[] encrypt(
-            File inputFile,
-            InputStream publicKeyStream,
-            OutputStream cipheredFileStream,
-            boolean isArmored
-    ) {
-        byte[] bytes = new byte[0];
+    public byte[] wrapKey(byte[] dataKey) {
+        ByteArrayOutputStream wrappedKey = new ByteArrayOutputStream();
+        try (OutputStream encryptedStream = open("", keyService.getEncryptionKey(), wrappedKey, false)) {
+            encryptedStream.write(dataKey);
+        } catch (IOException e) {
+            log.error("Exception occurred while wrapping the data key: {}", e.getMessage(), e);
+            throw new DocumentEncryptionException("Could not wrap data key", e);
+        }
+        return wrappedKey.toByteArray();
+    }
+
+    public OutputStream open(String name, OutputStream target) {
+        return open(name, keyService.getEncryptionKey(), target, cryptoConfig.getIsArmored());
+    }
+
+    private OutputStream open(String name, PGPPublicKey pgpPublicKey, OutputStream target, boolean isArmored) {
+        // Every layer is opened with a buffer instead of a length, so the packets are written as
+        // partial-length chunks and nothing has to be staged to learn the final size up front
+        OutputStream cipheredStream = CloseShieldOutputStream.wrap(target);
+        if (isArmored) {
+            cipheredStream = new ArmoredOutputStream(cipheredStream);
+        }
         try {
-            PGPPublicKey pgpPublicKey = readPublicKey(publicKeyStream);
-            Security.addProvider(new BouncyCastleProvider());
-            if (isArmored) {
-                cipheredFileStream = new ArmoredOutputStream(cipheredFileStream);
-                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                PGPCompressedDataGenerator compressor = new PGPCompressedDataGenerator(PGPCompressedData.ZIP);
-                PGPUtil.writeFileToLiteralData(compressor.open(byteArrayOutputStream), PGPLiteralData.BINARY, inputFile);
-                compressor.close();
-                JcePGPDataEncryptorBuilder encryptorBuilder = new JcePGPDataEncryptorBuilder(PGPEncryptedData.CAST5)
-                        .setWithIntegrityPacket(true)
-                        .setSecureRandom(new SecureRandom())
-                        .setProvider(cryptoConfig.getProvider());
-                PGPEncryptedDataGenerator generator = new PGPEncryptedDataGenerator(encryptorBuilder);
-                JcePublicKeyKeyEncryptionMethodGenerator encryptionMethodGenerator = new JcePublicKeyKeyEncryptionMethodGenerator(Objects.requireNonNull(pgpPublicKey))
-                        .setProvider(new BouncyCastleProvider())
-                        .setSecureRandom(new SecureRandom());
-                generator.addMethod(encryptionMethodGenerator);
-                bytes = byteArrayOutputStream.toByteArray();
-                OutputStream outputStream = generator.open(cipheredFileStream, bytes.length);
-                outputStream.write(bytes);
-                outputStream.close();
-                cipheredFileStream.close();
+            // SunJCE runs AES on the hardware intrinsics, the BouncyCastle ciphers are pure Java
+            JcePGPDataEncryptorBuilder encryptorBuilder = new JcePGPDataEncryptorBuilder(cryptoConfig.getSymmetricAlgorithm().getTag())
+                    .setWithIntegrityPacket(true)
+                    .setSecureRandom(secureRandom)
+                    .setProvider(cipherProvider);
+            PGPEncryptedDataGenerator generator = new PGPEncryptedDataGenerator(encryptorBuilder);
+            JcePublicKeyKeyEncryptionMethodGenerator encryptionMethodGenerator = new JcePublicKeyKeyEncryptionMethodGenerator(Objects.requireNonNull(pgpPublicKey))
+                    .setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                    .setSecureRandom(secureRandom);
+            generator.addMethod(encryptionMethodGenerator);
+            OutputStream encryptedStream = generator.open(cipheredStream, new byte[bufferSize]);
+            PGPCompressedDataGenerator compressor = null;
+            OutputStream compressedStream = encryptedStream;
+            if (cryptoConfig.getCompressionAlgorithm() != PGPCompressionAlgorithm.UNCOMPRESSED) {
+                compressor = new PGPCompressedDataGenerator(cryptoConfig.getCompressionAlgorithm().getTag());
+                compressedStream = compressor.open(encryptedStream, new byte[bufferSize]);
             }
-            return bytes;
+            PGPLiteralDataGenerator literalDataGenerator = new PGPLiteralDataGenerator();
+            OutputStream literalStream = literalDataGenerator.open(compressedStream, PGPLiteralData.BINARY,
+                    FilenameUtils.getName(name), new Date(), new byte[bufferSize]);
+            return new PGPOutputStream(literalStream, literalDataGenerator, compressor, generator, cipheredStream);
         } catch (IOException | PGPException e) {
             log.error("Exception occurred while encrypting the file: {}", e.getMessage(), e);
             throw new DocumentEncryptionException("Could not encrypt file", e);
         }
     }
 
-    private PGPPublicKey readPublicKey(InputStream publicKeyStream) {
-        PGPPublicKey pgpPublicKey = null;
+    // SunJCE only has AES among the OpenPGP ciphers, the others are left to BouncyCastle
+    private static String cipherProvider(String provider, PGPSymmetricAlgorithm symmetricAlgorithm) {
+        String cipherName = PGPUtil.getSymmetricCipherName(symmetricAlgorithm.getTag());
         try {
-            publicKeyStream = PGPUtil.getDecoderStream(publicKeyStream);
-            PGPPublicKeyRingCollection keyRingCollection = new PGPPublicKeyRingCollection(publicKeyStream, new JcaKeyFingerprintCalculator());
-            Iterator<PGPPublicKeyRing> ringIterator = keyRingCollection.getKeyRings();
-            while (Objects.nonNull(ringIterator) && ringIterator.hasNext()) {
-                PGPPublicKeyRing keyRing = ringIterator.next();
-                Iterator<PGPPublicKey> publicKeys = keyRing.getPublicKeys();
-                while (publicKeys != null && publicKeys.hasNext()) {
-                    PGPPublicKey publicKey = publicKeys.next();
-                    if (publicKey.isEncryptionKey()) {
-                        pgpPublicKey = publicKey;
-                    }
-                }
+            Cipher.getInstance(cipherName + "/CFB/NoPadding", provider);
+            return provider;
+        } catch (GeneralSecurityException e) {
+            log.warn("{} does not implement {}, encrypting with {}", provider, cipherName, BouncyCastleProvider.PROVIDER_NAME);
+            return BouncyCastleProvider.PROVIDER_NAME;
+        }
+    }
+
+    private static class PGPOutputStream extends FilterOutputStream {
+
+        private final PGPLiteralDataGenerator literalDataGenerator;
+        private final PGPCompressedDataGenerator compressor;
+        private final PGPEncryptedDataGenerator generator;
+        private final OutputStream cipheredStream;
+        private boolean closed;
+
+        PGPOutputStream(
+                OutputStream literalStream,
+                PGPLiteralDataGenerator literalDataGenerator,
+                PGPCompressedDataGenerator compressor,
+                PGPEncryptedDataGenerator generator,
+                OutputStream cipheredStream
+        ) {
+            super(literalStream);
+            this.literalDataGenerator = literalDataGenerator;
+            this.compressor = compressor;
+            this.generator = generator;
+            this.cipheredStream = cipheredStream;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
             }
-            if (Objects.isNull(pgpPublicKey)) {
-                throw new IllegalArgumentException("No encryption key found");
+            closed = true;
+            // Each generator writes its last partial chunk and trailer, innermost first
+            literalDataGenerator.close();
+            if (compressor != null) {
+                compressor.close();
             }
-        } catch (IOException | PGPException e) {
-            log.error("Exception occurred while reading public key: {}", e.getMessage(), e);
+            generator.close();
+            cipheredStream.close();
         }
-        return pgpPublicKey;
     }
-}
\ No newline at end of file
+}
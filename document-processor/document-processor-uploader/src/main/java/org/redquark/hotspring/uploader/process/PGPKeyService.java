@@ -0,0 +1,189 @@
+package org.redquark.hotspring.uploader.process;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.redquark.hotspring.uploader.configs.CryptoConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.exceptions.DocumentEncryptionException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.Security;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Component
+@Slf4j
+public class PGPKeyService {
+
+    private static final String PUBLIC_KEY = "public.asc";
+
+    private final RSAKeyPairGenerator keyPairGenerator;
+    private final CryptoConfig cryptoConfig;
+    private final AtomicReference<PGPPublicKey> encryptionKey = new AtomicReference<>();
+    private CompletableFuture<PGPPublicKey> provisioning;
+    private WatchService watchService;
+    private Thread watcher;
+
+    public PGPKeyService(RSAKeyPairGenerator keyPairGenerator, DocumentUploaderConfig documentUploaderConfig) {
+        this.keyPairGenerator = keyPairGenerator;
+        this.cryptoConfig = documentUploaderConfig.getCryptoConfig();
+    }
+
+    @PostConstruct
+    protected void init() {
+        // Provider registration is a synchronized global operation, so it is done once per JVM
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        if (!Boolean.TRUE.equals(cryptoConfig.getEnabled())) {
+            log.info("Encryption is disabled, no key pair is provisioned");
+            return;
+        }
+        try {
+            Path keyDirectory = Paths.get(cryptoConfig.getKeyPath());
+            Files.createDirectories(keyDirectory);
+            watchService = FileSystems.getDefault().newWatchService();
+            keyDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.error("Exception occurred while watching the key directory: {}", e.getMessage(), e);
+            throw new DocumentEncryptionException("Could not watch the key directory", e);
+        }
+        watcher = new Thread(this::watch, "pgp-key-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        provisioning = startProvisioning();
+    }
+
+    @PreDestroy
+    protected void destroy() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    public PGPPublicKey getEncryptionKey() {
+        PGPPublicKey publicKey = encryptionKey.get();
+        if (publicKey != null) {
+            return publicKey;
+        }
+        // Requests that arrive before the key is ready all wait on the same provisioning run
+        try {
+            return currentProvisioning().join();
+        } catch (CompletionException e) {
+            log.error("Exception occurred while provisioning the key pair: {}", e.getCause().getMessage(), e.getCause());
+            throw new DocumentEncryptionException("Could not provision the key pair", e);
+        }
+    }
+
+    private synchronized CompletableFuture<PGPPublicKey> currentProvisioning() {
+        if (provisioning == null) {
+            throw new DocumentEncryptionException("Encryption is disabled, no key pair is provisioned", null);
+        }
+        if (provisioning.isCompletedExceptionally()) {
+            provisioning = startProvisioning();
+        }
+        return provisioning;
+    }
+
+    // Key generation takes seconds for RSA, so it runs off the request path as soon as the service starts
+    private CompletableFuture<PGPPublicKey> startProvisioning() {
+        return CompletableFuture.supplyAsync(this::provisionKey, runnable -> {
+            Thread provisioner = new Thread(runnable, "pgp-key-provisioner");
+            provisioner.setDaemon(true);
+            provisioner.start();
+        });
+    }
+
+    private PGPPublicKey provisionKey() {
+        Path publicKeyPath = publicKeyPath();
+        if (Files.notExists(publicKeyPath)) {
+            log.info("No public key found, generating a {} key pair", cryptoConfig.getAlgorithm());
+            keyPairGenerator.generateKeyPair();
+        }
+        PGPPublicKey publicKey = readPublicKey(publicKeyPath);
+        encryptionKey.compareAndSet(null, publicKey);
+        return encryptionKey.get();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey watchKey = watchService.take();
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (PUBLIC_KEY.equals(String.valueOf(event.context()))) {
+                        reload();
+                    }
+                }
+                watchKey.reset();
+            }
+        } catch (ClosedWatchServiceException e) {
+            log.info("Stopped watching the key directory");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reload() {
+        try {
+            PGPPublicKey publicKey = readPublicKey(publicKeyPath());
+            PGPPublicKey previousKey = encryptionKey.getAndSet(publicKey);
+            if (previousKey == null || previousKey.getKeyID() != publicKey.getKeyID()) {
+                log.info("Encryption key is rotated to keyId={}", Long.toHexString(publicKey.getKeyID()));
+            }
+        } catch (RuntimeException e) {
+            // A key file copied in from outside may still be half-written; the next modify event picks it up
+            log.warn("Could not reload the public key, keeping the current one: {}", e.getMessage());
+        }
+    }
+
+    private Path publicKeyPath() {
+        return Paths.get(cryptoConfig.getKeyPath(), PUBLIC_KEY);
+    }
+
+    private PGPPublicKey readPublicKey(Path publicKeyPath) {
+        PGPPublicKey pgpPublicKey = null;
+        try (InputStream publicKeyStream = PGPUtil.getDecoderStream(Files.newInputStream(publicKeyPath))) {
+            PGPPublicKeyRingCollection keyRingCollection = new PGPPublicKeyRingCollection(publicKeyStream, new JcaKeyFingerprintCalculator());
+            Iterator<PGPPublicKeyRing> ringIterator = keyRingCollection.getKeyRings();
+            while (Objects.nonNull(ringIterator) && ringIterator.hasNext()) {
+                PGPPublicKeyRing keyRing = ringIterator.next();
+                Iterator<PGPPublicKey> publicKeys = keyRing.getPublicKeys();
+                while (publicKeys != null && publicKeys.hasNext()) {
+                    PGPPublicKey publicKey = publicKeys.next();
+                    if (publicKey.isEncryptionKey()) {
+                        pgpPublicKey = publicKey;
+                    }
+                }
+            }
+        } catch (IOException | PGPException e) {
+            log.error("Exception occurred while reading public key: {}", e.getMessage(), e);
+            throw new DocumentEncryptionException("Could not read the public key", e);
+        }
+        if (Objects.isNull(pgpPublicKey)) {
+            throw new DocumentEncryptionException("No encryption key found in " + publicKeyPath, null);
+        }
+        return pgpPublicKey;
+    }
+}
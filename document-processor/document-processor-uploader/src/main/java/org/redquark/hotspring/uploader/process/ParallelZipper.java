@@ -0,0 +1,232 @@
+package org.redquark.hotspring.uploader.process;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.redquark.hotspring.commons.integrity.PayloadDigest;
+import org.redquark.hotspring.uploader.domains.ArchiveEntry;
+import org.redquark.hotspring.uploader.domains.CompressionDecision;
+import org.redquark.hotspring.uploader.domains.Document;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+@Slf4j
+public class ParallelZipper {
+
+    // An empty final deflate block, used to terminate entries whose size is an exact multiple of the block size
+    private static final byte[] FINAL_BLOCK = {0x03, 0x00};
+    private static final byte[] EMPTY_BLOCK = new byte[0];
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Deflate refers back at most 32 KiB
+    private static final int WINDOW_SIZE = 1 << 15;
+
+    private final ForkJoinPool pool;
+    private final CompressionPolicy compressionPolicy;
+    private final int blockSize;
+    private final int maxBlocksInFlight;
+    private final CompressionStats compressionStats = new CompressionStats();
+
+    public ParallelZipper(ForkJoinPool pool, CompressionPolicy compressionPolicy, int blockSize) {
+        this.pool = pool;
+        this.compressionPolicy = compressionPolicy;
+        this.blockSize = blockSize;
+        this.maxBlocksInFlight = pool.getParallelism() * 2;
+    }
+
+    public List<ArchiveEntry> zip(List<Document> documents, OutputStream target) throws IOException {
+        ZipArchiveWriter writer = new ZipArchiveWriter(target);
+        Deque<Segment> pending = new ArrayDeque<>();
+        List<PendingEntry> entries = new ArrayList<>();
+        try {
+            for (Document document : documents) {
+                CompressionDecision decision = compressionPolicy.decide(document);
+                PendingEntry entry = new PendingEntry(FilenameUtils.getName(document.getName()), decision);
+                entries.add(entry);
+                boolean stored = decision.getMethod() == ZipEntry.STORED;
+                try (InputStream documentStream = document.openStream()) {
+                    byte[] readAhead = new byte[blockSize];
+                    int readAheadLength = IOUtils.read(documentStream, readAhead);
+                    if (stored) {
+                        long cpuStart = CompressionStats.currentThreadCpuTime();
+                        // Only a stored entry larger than a block is read twice: the downloader streams archives
+                        // through ZipInputStream, which refuses a data descriptor on a stored entry
+                        EntryChecksum checksum = readAheadLength < blockSize
+                                ? EntryChecksum.of(readAhead, readAheadLength)
+                                : EntryChecksum.of(document);
+                        entry.crc = checksum.getCrc();
+                        entry.size = checksum.getSize();
+                        entry.cpuNanos += CompressionStats.currentThreadCpuTime() - cpuStart;
+                    }
+                    boolean first = true;
+                    boolean last = false;
+                    byte[] window = EMPTY_BLOCK;
+                    while (!last) {
+                        byte[] block = first ? readAhead : new byte[blockSize];
+                        int length = first ? readAheadLength : IOUtils.read(documentStream, block);
+                        boolean lastBlock = length < blockSize;
+                        // The block is digested on the reading thread, before it is handed to a deflater
+                        entry.digest.update(block, 0, length);
+                        while (pending.size() >= maxBlocksInFlight) {
+                            write(writer, pending.poll());
+                        }
+                        if (stored) {
+                            pending.add(new Segment(entry, null, block, length, first, lastBlock));
+                        } else {
+                            entry.checksum.update(block, 0, length);
+                            entry.size += length;
+                            // Like pigz, each block is primed with the data before it, so matches still reach across blocks
+                            byte[] dictionary = window;
+                            window = slide(window, block, length);
+                            pending.add(length == 0
+                                    ? new Segment(entry, null, FINAL_BLOCK, FINAL_BLOCK.length, first, true)
+                                    : new Segment(entry, pool.submit(() -> deflate(block, length, dictionary, decision.getLevel(), lastBlock)), EMPTY_BLOCK, 0, first, lastBlock));
+                        }
+                        first = false;
+                        last = lastBlock;
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(writer, pending.poll());
+            }
+            writer.finish();
+            compressionStats.log();
+            List<ArchiveEntry> archiveEntries = new ArrayList<>(entries.size());
+            entries.forEach(entry -> archiveEntries.add(new ArchiveEntry(entry.name, entry.digest.toChecksum())));
+            return archiveEntries;
+        } catch (IOException | RuntimeException e) {
+            pending.forEach(segment -> {
+                if (segment.task != null) {
+                    segment.task.cancel(true);
+                }
+            });
+            throw e;
+        }
+    }
+
+    private void write(ZipArchiveWriter writer, Segment segment) throws IOException {
+        PendingEntry entry = segment.entry;
+        boolean stored = entry.decision.getMethod() == ZipEntry.STORED;
+        if (segment.first) {
+            if (stored) {
+                writer.putStoredEntry(entry.name, entry.crc, entry.size);
+            } else {
+                writer.putNextEntry(entry.name, ZipEntry.DEFLATED);
+            }
+        }
+        if (segment.task != null) {
+            CompressedBlock compressed = segment.task.join();
+            writer.write(compressed.data, 0, compressed.data.length);
+            entry.compressedSize += compressed.data.length;
+            entry.cpuNanos += compressed.cpuNanos;
+        } else {
+            writer.write(segment.data, 0, segment.length);
+            entry.compressedSize += segment.length;
+        }
+        if (segment.last) {
+            long crc = stored ? entry.crc : entry.checksum.getValue();
+            writer.closeEntry(crc, entry.size);
+            compressionStats.record(entry.name, entry.decision, entry.size, entry.compressedSize, entry.cpuNanos);
+        }
+    }
+
+    private CompressedBlock deflate(byte[] block, int length, byte[] dictionary, int level, boolean last) {
+        long cpuStart = CompressionStats.currentThreadCpuTime();
+        // Every block gets its own deflater; a sync flush ends non-final blocks on a byte boundary
+        // so that the raw deflate streams of consecutive blocks can simply be concatenated
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary.length > 0) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(block, 0, length);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(length >> 1, 64));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int written = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, written);
+                }
+            } else {
+                int written;
+                do {
+                    written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, written);
+                } while (written == buffer.length);
+            }
+            return new CompressedBlock(compressed.toByteArray(), CompressionStats.currentThreadCpuTime() - cpuStart);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // The last WINDOW_SIZE bytes of the entry up to and including the block
+    private static byte[] slide(byte[] window, byte[] block, int length) {
+        int fromBlock = Math.min(length, WINDOW_SIZE);
+        int fromWindow = Math.min(window.length, WINDOW_SIZE - fromBlock);
+        byte[] next = new byte[fromWindow + fromBlock];
+        System.arraycopy(window, window.length - fromWindow, next, 0, fromWindow);
+        System.arraycopy(block, length - fromBlock, next, fromWindow, fromBlock);
+        return next;
+    }
+
+    private static class PendingEntry {
+
+        private final String name;
+        private final CompressionDecision decision;
+        private final CRC32 checksum = new CRC32();
+        private final PayloadDigest digest = new PayloadDigest();
+        private long crc;
+        private long size;
+        private long compressedSize;
+        private long cpuNanos;
+
+        private PendingEntry(String name, CompressionDecision decision) {
+            this.name = name;
+            this.decision = decision;
+        }
+    }
+
+    private static class CompressedBlock {
+
+        private final byte[] data;
+        private final long cpuNanos;
+
+        private CompressedBlock(byte[] data, long cpuNanos) {
+            this.data = data;
+            this.cpuNanos = cpuNanos;
+        }
+    }
+
+    private static class Segment {
+
+        private final PendingEntry entry;
+        private final ForkJoinTask<CompressedBlock> task;
+        private final byte[] data;
+        private final int length;
+        private final boolean first;
+        private final boolean last;
+
+        private Segment(PendingEntry entry, ForkJoinTask<CompressedBlock> task, byte[] data, int length, boolean first, boolean last) {
+            this.entry = entry;
+            this.task = task;
+            this.data = data;
+            this.length = length;
+            this.first = first;
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package org.redquark.hotspring.uploader.process;
+
+public interface PartEncoder {
+
+    byte[] encode(int partNumber, byte[] data, int length, boolean last);
+}
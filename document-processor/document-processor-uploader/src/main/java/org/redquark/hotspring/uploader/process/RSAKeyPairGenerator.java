@@ -2,31 +2,39 @@ package org.redquark.hotspring.uploader.process;
 
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.bcpg.ArmoredOutputStream;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
 import org.bouncycastle.bcpg.RSASecretBCPGKey;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPKeyRingGenerator;
 import org.bouncycastle.openpgp.PGPPrivateKey;
 import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSignature;
 import org.bouncycastle.openpgp.operator.PGPDigestCalculator;
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPDigestCalculatorProviderBuilder;
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyConverter;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyPair;
 import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyEncryptorBuilder;
 import org.redquark.hotspring.uploader.configs.CryptoConfig;
 import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.exceptions.DocumentEncryptionException;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Security;
@@ -40,6 +48,7 @@ public class RSAKeyPairGenerator {
 
     private static final String PRIVATE_KEY = "private.asc";
     private static final String PUBLIC_KEY = "public.asc";
+    private static final String CURVE_25519 = "X25519";
     private final CryptoConfig cryptoConfig;
 
     public RSAKeyPairGenerator(DocumentUploaderConfig documentUploaderConfig) {
@@ -47,20 +56,45 @@ public class RSAKeyPairGenerator {
     }
 
     public void generateKeyPair() {
-        try (OutputStream privateKeyStream = new FileOutputStream(cryptoConfig.getKeyPath() + File.separator + PRIVATE_KEY);
-             OutputStream publicKeyStream = new FileOutputStream(cryptoConfig.getKeyPath() + File.separator + PUBLIC_KEY)) {
-            generateKeyPair(
-                    privateKeyStream,
-                    publicKeyStream,
-                    cryptoConfig.getIsArmored(),
-                    cryptoConfig.getUsername(),
-                    cryptoConfig.getPassword(),
-                    cryptoConfig.getKeySize(),
-                    cryptoConfig.getAlgorithm(),
-                    cryptoConfig.getProvider()
-            );
+        Path keyDirectory = Paths.get(cryptoConfig.getKeyPath());
+        Path privateKeyTemp = null;
+        Path publicKeyTemp = null;
+        try {
+            // The key watcher reloads public.asc on every event, so both files are written aside and moved in whole
+            privateKeyTemp = Files.createTempFile(keyDirectory, PRIVATE_KEY, ".tmp");
+            publicKeyTemp = Files.createTempFile(keyDirectory, PUBLIC_KEY, ".tmp");
+            try (OutputStream privateKeyStream = Files.newOutputStream(privateKeyTemp);
+                 OutputStream publicKeyStream = Files.newOutputStream(publicKeyTemp)) {
+                generateKeyPair(
+                        privateKeyStream,
+                        publicKeyStream,
+                        cryptoConfig.getIsArmored(),
+                        cryptoConfig.getUsername(),
+                        cryptoConfig.getPassword(),
+                        cryptoConfig.getKeySize(),
+                        cryptoConfig.getAlgorithm(),
+                        cryptoConfig.getProvider()
+                );
+            }
+            // The private key goes first, so a public key that shows up always has its private key next to it
+            Files.move(privateKeyTemp, keyDirectory.resolve(PRIVATE_KEY), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(publicKeyTemp, keyDirectory.resolve(PUBLIC_KEY), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | GeneralSecurityException | PGPException e) {
+            log.error("Exception occurred while generating the key pair: {}", e.getMessage(), e);
+            deleteQuietly(privateKeyTemp);
+            deleteQuietly(publicKeyTemp);
+            throw new DocumentEncryptionException("Could not generate the key pair", e);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
         } catch (IOException e) {
-            log.info("Exception occurred while generating the key pair");
+            log.warn("Could not delete {}: {}", path, e.getMessage());
         }
     }
 
@@ -73,28 +107,72 @@ public class RSAKeyPairGenerator {
             int keySize,
             String algorithm,
             String provider
-    ) {
-        Security.addProvider(new BouncyCastleProvider());
-        try {
-            // Get the instance of KeyPairGenerator with RSA algorithm and Bouncy Castle provider
-            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(algorithm, provider);
-            // Set the size of the key
-            keyPairGenerator.initialize(keySize);
-            // Generate key pair
-            KeyPair keyPair = keyPairGenerator.generateKeyPair();
-            // Export the key pair
-            export(
-                    keyPair.getPrivate(),
-                    keyPair.getPublic(),
-                    privateKeyStream,
-                    publicKeyStream,
-                    username,
-                    password.toCharArray(),
-                    isArmored
-            );
-        } catch (NoSuchAlgorithmException | NoSuchProviderException e) {
-            log.error("Exception occurred while generating key pair: {}", e.getMessage(), e);
+    ) throws IOException, GeneralSecurityException, PGPException {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        if (CURVE_25519.equalsIgnoreCase(algorithm)) {
+            generateCurve25519KeyRing(privateKeyStream, publicKeyStream, isArmored, username, password.toCharArray(), provider);
+            return;
         }
+        // Get the instance of KeyPairGenerator with RSA algorithm and Bouncy Castle provider
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(algorithm, provider);
+        // Set the size of the key
+        keyPairGenerator.initialize(keySize);
+        // Generate key pair
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        // Export the key pair
+        export(
+                keyPair.getPrivate(),
+                keyPair.getPublic(),
+                privateKeyStream,
+                publicKeyStream,
+                username,
+                password.toCharArray(),
+                isArmored
+        );
+    }
+
+    private void generateCurve25519KeyRing(
+            OutputStream privateKeyStream,
+            OutputStream publicKeyStream,
+            boolean isArmored,
+            String username,
+            char[] passphrase,
+            String provider
+    ) throws IOException, GeneralSecurityException, PGPException {
+        // X25519 can only agree on keys, so the ring gets an Ed25519 primary key to certify the ECDH subkey
+        Date creationTime = new Date();
+        PGPKeyPair signingKeyPair = new JcaPGPKeyPair(
+                PublicKeyAlgorithmTags.EDDSA,
+                KeyPairGenerator.getInstance("Ed25519", provider).generateKeyPair(),
+                creationTime
+        );
+        PGPKeyPair encryptionKeyPair = new JcaPGPKeyPair(
+                PublicKeyAlgorithmTags.ECDH,
+                KeyPairGenerator.getInstance(CURVE_25519, provider).generateKeyPair(),
+                creationTime
+        );
+        PGPDigestCalculator sha1Calculator = (new JcaPGPDigestCalculatorProviderBuilder()).build().get(HashAlgorithmTags.SHA1);
+        PGPKeyRingGenerator keyRingGenerator = new PGPKeyRingGenerator(
+                PGPSignature.POSITIVE_CERTIFICATION,
+                signingKeyPair,
+                username,
+                sha1Calculator,
+                null,
+                null,
+                new JcaPGPContentSignerBuilder(signingKeyPair.getPublicKey().getAlgorithm(), HashAlgorithmTags.SHA256).setProvider(provider),
+                (new JcePBESecretKeyEncryptorBuilder(SymmetricKeyAlgorithmTags.AES_256, sha1Calculator)).setProvider(provider).build(passphrase)
+        );
+        keyRingGenerator.addSubKey(encryptionKeyPair);
+        if (isArmored) {
+            privateKeyStream = new ArmoredOutputStream(privateKeyStream);
+            publicKeyStream = new ArmoredOutputStream(publicKeyStream);
+        }
+        keyRingGenerator.generateSecretKeyRing().encode(privateKeyStream);
+        privateKeyStream.close();
+        keyRingGenerator.generatePublicKeyRing().encode(publicKeyStream);
+        publicKeyStream.close();
     }
 
     private void export(
@@ -105,45 +183,41 @@ public class RSAKeyPairGenerator {
             String username,
             char[] passphrase,
             boolean isArmored
-    ) {
+    ) throws IOException, PGPException {
         if (isArmored) {
             privateKeyStream = new ArmoredOutputStream(privateKeyStream);
         }
-        try {
-            PGPPublicKey pgpPublicKey = (new JcaPGPKeyConverter()).getPGPPublicKey(1, publicKey, new Date());
-            RSAPrivateCrtKey rsaPrivateCrtKey = (RSAPrivateCrtKey) privateKey;
-            RSASecretBCPGKey rsaSecretBCPGKey = new RSASecretBCPGKey(
-                    rsaPrivateCrtKey.getPrivateExponent(),
-                    rsaPrivateCrtKey.getPrimeP(),
-                    rsaPrivateCrtKey.getPrimeQ()
-            );
-            PGPPrivateKey pgpPrivateKey = new PGPPrivateKey(
-                    pgpPublicKey.getKeyID(),
-                    pgpPublicKey.getPublicKeyPacket(),
-                    rsaSecretBCPGKey
-            );
-            PGPDigestCalculator sha1Calculator = (new JcaPGPDigestCalculatorProviderBuilder()).build().get(2);
-            PGPKeyPair pgpKeyPair = new PGPKeyPair(pgpPublicKey, pgpPrivateKey);
-            PGPSecretKey pgpSecretKey = new PGPSecretKey(
-                    16,
-                    pgpKeyPair,
-                    username,
-                    sha1Calculator,
-                    null,
-                    null,
-                    new JcaPGPContentSignerBuilder(pgpKeyPair.getPublicKey().getAlgorithm(), 2),
-                    (new JcePBESecretKeyEncryptorBuilder(3, sha1Calculator)).setProvider("BC").build(passphrase)
-            );
-            pgpSecretKey.encode(privateKeyStream);
-            privateKeyStream.close();
-            if (isArmored) {
-                publicKeyStream = new ArmoredOutputStream(publicKeyStream);
-            }
-            PGPPublicKey key = pgpSecretKey.getPublicKey();
-            key.encode(publicKeyStream);
-            publicKeyStream.close();
-        } catch (PGPException | IOException e) {
-            log.error("Exception occurred while exporting key pair: {}", e.getMessage(), e);
+        PGPPublicKey pgpPublicKey = (new JcaPGPKeyConverter()).getPGPPublicKey(1, publicKey, new Date());
+        RSAPrivateCrtKey rsaPrivateCrtKey = (RSAPrivateCrtKey) privateKey;
+        RSASecretBCPGKey rsaSecretBCPGKey = new RSASecretBCPGKey(
+                rsaPrivateCrtKey.getPrivateExponent(),
+                rsaPrivateCrtKey.getPrimeP(),
+                rsaPrivateCrtKey.getPrimeQ()
+        );
+        PGPPrivateKey pgpPrivateKey = new PGPPrivateKey(
+                pgpPublicKey.getKeyID(),
+                pgpPublicKey.getPublicKeyPacket(),
+                rsaSecretBCPGKey
+        );
+        PGPDigestCalculator sha1Calculator = (new JcaPGPDigestCalculatorProviderBuilder()).build().get(2);
+        PGPKeyPair pgpKeyPair = new PGPKeyPair(pgpPublicKey, pgpPrivateKey);
+        PGPSecretKey pgpSecretKey = new PGPSecretKey(
+                16,
+                pgpKeyPair,
+                username,
+                sha1Calculator,
+                null,
+                null,
+                new JcaPGPContentSignerBuilder(pgpKeyPair.getPublicKey().getAlgorithm(), 2),
+                (new JcePBESecretKeyEncryptorBuilder(3, sha1Calculator)).setProvider("BC").build(passphrase)
+        );
+        pgpSecretKey.encode(privateKeyStream);
+        privateKeyStream.close();
+        if (isArmored) {
+            publicKeyStream = new ArmoredOutputStream(publicKeyStream);
         }
+        PGPPublicKey key = pgpSecretKey.getPublicKey();
+        key.encode(publicKeyStream);
+        publicKeyStream.close();
     }
 }
\ No newline at end of file
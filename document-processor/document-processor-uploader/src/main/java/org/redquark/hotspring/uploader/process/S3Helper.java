@@ -1,94 +1,295 @@
 package org.redquark.hotspring.uploader.process;
 
-import com.amazonaws.AmazonServiceException;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.PutObjectResult;
-import com.amazonaws.services.s3.model.S3ObjectSummary;
-import com.amazonaws.services.s3.transfer.MultipleFileUpload;
-import com.amazonaws.services.s3.transfer.TransferManager;
 import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.blobs.BlobStore;
+import org.redquark.hotspring.commons.blobs.BlobStoreFactory;
+import org.redquark.hotspring.commons.domains.BlobPage;
+import org.redquark.hotspring.commons.domains.BlobPart;
+import org.redquark.hotspring.commons.domains.BlobSummary;
+import org.redquark.hotspring.commons.domains.BlobUpload;
+import org.redquark.hotspring.commons.domains.TransferDirection;
+import org.redquark.hotspring.commons.domains.TransferPlan;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
+import org.redquark.hotspring.commons.integrity.PayloadDigest;
+import org.redquark.hotspring.commons.transfers.TransferPlanner;
 import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
-import org.redquark.hotspring.uploader.connections.S3ConnectionFactory;
-import org.redquark.hotspring.uploader.connections.TransferManagerConnectionFactory;
+import org.redquark.hotspring.uploader.domains.DeleteSummary;
+import org.redquark.hotspring.uploader.domains.Document;
+import org.redquark.hotspring.uploader.domains.UploadNamespace;
 import org.redquark.hotspring.uploader.exceptions.DocumentException;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class S3Helper {
 
-    private final AmazonS3 amazonS3;
-    private final TransferManager transferManager;
+    private static final String DELETE_EXECUTOR = "s3-deleter";
+
+    private final BlobStore blobStore;
 
     private final String bucketName;
     private final String folderName;
+    private final int maxUploadsInFlight;
+    private final ExecutorRegistry executorRegistry;
+    private final TransferPlanner transferPlanner;
 
     public S3Helper(
             DocumentUploaderConfig documentUploaderConfig,
-            S3ConnectionFactory s3ConnectionFactory,
-            TransferManagerConnectionFactory transferManagerConnectionFactory
+            BlobStoreFactory blobStoreFactory,
+            ExecutorRegistry executorRegistry,
+            TransferPlanner transferPlanner
     ) {
-        this.amazonS3 = s3ConnectionFactory.getConnection();
-        this.transferManager = transferManagerConnectionFactory.getTransferManager();
         this.bucketName = documentUploaderConfig.getS3Config().getBucketName();
         this.folderName = documentUploaderConfig.getS3Config().getUploadFolder();
+        this.maxUploadsInFlight = documentUploaderConfig.getS3Config().getMaxUploadsInFlight();
+        this.blobStore = blobStoreFactory.getBlobStore(bucketName);
+        this.executorRegistry = executorRegistry;
+        this.transferPlanner = transferPlanner;
     }
 
-    public void upload(
-            String key,
-            Map<String, String> optionalMetadata,
-            InputStream fileInputStream
-    ) {
-        ObjectMetadata objectMetadata = new ObjectMetadata();
-        if (optionalMetadata != null && !optionalMetadata.isEmpty()) {
-            optionalMetadata.forEach(objectMetadata::addUserMetadata);
+    public CompletableFuture<String> createMultipartUpload(String key, Map<String, String> optionalMetadata) {
+        return blobStore.createMultipartUpload(folderName + "/" + key, metadata(optionalMetadata));
+    }
+
+    public CompletableFuture<String> uploadPart(String key, String uploadId, int partNumber, ByteBuffer data) {
+        return blobStore.uploadPart(folderName + "/" + key, uploadId, partNumber, data);
+    }
+
+    public CompletableFuture<Void> completeMultipartUpload(String key, String uploadId, List<BlobPart> parts) {
+        return blobStore.completeMultipartUpload(folderName + "/" + key, uploadId, parts);
+    }
+
+    public CompletableFuture<Void> abortMultipartUpload(String key, String uploadId) {
+        return blobStore.abortMultipartUpload(folderName + "/" + key, uploadId);
+    }
+
+    // Aborts the multipart uploads in the folder that were started before the given instant, except the retained ones
+    public int abortStaleUploads(Instant staleBefore, Set<String> retainedUploadIds) {
+        try {
+            List<BlobUpload> staleUploads = blobStore.listMultipartUploads(folderName + "/").join().stream()
+                    .filter(upload -> upload.getInitiated().isBefore(staleBefore))
+                    .filter(upload -> !retainedUploadIds.contains(upload.getUploadId()))
+                    .collect(Collectors.toList());
+            CompletableFuture.allOf(staleUploads.stream()
+                    .map(upload -> blobStore.abortMultipartUpload(upload.getKey(), upload.getUploadId()))
+                    .toArray(CompletableFuture[]::new)).join();
+            return staleUploads.size();
+        } catch (CompletionException e) {
+            log.error("Unable to abort stale multipart uploads, reason: {}", e.getCause().getMessage());
+            return 0;
         }
+    }
+
+    public void upload(String key, Map<String, String> optionalMetadata, byte[] data) {
         try {
             log.info("Storing {} in bucket={}", key, bucketName);
-            PutObjectResult result = amazonS3.putObject(bucketName, folderName + "/" + key, fileInputStream, objectMetadata);
-            log.info("Object is stored with versionId={}", result.getMetadata().getVersionId());
-        } catch (AmazonServiceException e) {
-            log.error("Exception occurred while store the file in the S3 bucket: {}", e.getMessage(), e);
+            blobStore.put(folderName + "/" + key, ByteBuffer.wrap(data), metadata(optionalMetadata)).join();
+        } catch (CompletionException e) {
+            log.error("Exception occurred while store the file in the S3 bucket: {}", e.getCause().getMessage(), e.getCause());
             throw new DocumentException("Could not upload file to S3", e);
         }
     }
 
-    public void uploadMultipleFiles(List<File> documentsToUpload) {
-        MultipleFileUpload multipleFileUpload = transferManager.uploadFileList(bucketName, folderName, new File("."), documentsToUpload);
+    public boolean exists(String key) {
         try {
-            multipleFileUpload.waitForCompletion();
-        } catch (InterruptedException e) {
-            log.error("Exception occurred while uploading multiple files: {}", e.getMessage());
+            return blobStore.head(folderName + "/" + key).join().isPresent();
+        } catch (CompletionException e) {
+            throw new DocumentException("Could not look up " + key + " in S3", e);
+        }
+    }
+
+    public CompletableFuture<Void> uploadAsync(String key, byte[] data) {
+        return uploadAsync(key, Map.of(), data);
+    }
+
+    public CompletableFuture<Void> uploadAsync(String key, Map<String, String> optionalMetadata, byte[] data) {
+        return blobStore.put(folderName + "/" + key, ByteBuffer.wrap(data), metadata(optionalMetadata));
+    }
+
+    // The size may be an estimate when the object is produced on the fly
+    public TransferPlan planUpload(long size) {
+        return transferPlanner.plan(TransferDirection.UPLOAD, size);
+    }
+
+    public S3MultipartOutputStream openMultipartStream(String key, Map<String, String> optionalMetadata, TransferPlan plan) {
+        log.info("Streaming {} into bucket={} in parts of {} bytes", key, bucketName, plan.getPartSize());
+        return new S3MultipartOutputStream(blobStore, folderName + "/" + key, metadata(optionalMetadata), plan, transferPlanner);
+    }
+
+    public S3MultipartOutputStream openMultipartStream(
+            String key,
+            Map<String, String> optionalMetadata,
+            TransferPlan plan,
+            PartEncoder partEncoder,
+            Executor partExecutor
+    ) {
+        log.info("Streaming {} into bucket={} in encoded parts of {} bytes", key, bucketName, plan.getPartSize());
+        return new S3MultipartOutputStream(blobStore, folderName + "/" + key, metadata(optionalMetadata), plan, transferPlanner,
+                partEncoder, partExecutor);
+    }
+
+    public void uploadMultipleDocuments(UploadNamespace namespace, List<Document> documentsToUpload) {
+        Deque<CompletableFuture<Void>> pendingUploads = new ArrayDeque<>();
+        try {
+            for (Document document : documentsToUpload) {
+                TransferPlan plan = planUpload(document.getSize());
+                if (plan.isMultipart()) {
+                    // Large documents are streamed in parts, which are themselves sent in the background
+                    try (InputStream documentStream = document.openStream()) {
+                        S3MultipartOutputStream upload = openMultipartStream(namespace.key(document.getName()),
+                                namespace.metadata(Map.of()), plan);
+                        try {
+                            documentStream.transferTo(upload);
+                        } catch (IOException | RuntimeException e) {
+                            upload.abort();
+                            throw e;
+                        }
+                        upload.close();
+                    }
+                    continue;
+                }
+                byte[] data;
+                try (InputStream documentStream = document.openStream()) {
+                    data = documentStream.readAllBytes();
+                }
+                // Small documents go out as single requests, a bounded number of them at a time
+                while (pendingUploads.size() >= maxUploadsInFlight) {
+                    pendingUploads.poll().join();
+                }
+                pendingUploads.add(uploadAsync(namespace.key(document.getName()),
+                        namespace.metadata(PayloadDigest.of(data, 0, data.length).toMetadata()), data));
+            }
+            while (!pendingUploads.isEmpty()) {
+                pendingUploads.poll().join();
+            }
+        } catch (IOException e) {
+            log.error("Exception occurred while reading documents to upload: {}", e.getMessage());
             throw new DocumentException("Could not upload multiple files", e);
+        } catch (CompletionException e) {
+            log.error("Exception occurred while uploading multiple files: {}", e.getCause().getMessage());
+            throw new DocumentException("Could not upload multiple files", e);
+        } finally {
+            pendingUploads.forEach(upload -> upload.cancel(true));
         }
     }
 
-    public void delete() {
-        if (amazonS3.doesBucketExistV2(bucketName)) {
-            ListObjectsRequest listObjectsRequest = new ListObjectsRequest()
-                    .withBucketName(bucketName)
-                    .withPrefix(folderName);
-            ObjectListing objectListing = amazonS3.listObjects(listObjectsRequest);
-            log.info("Found {} objects to delete in the bucket={}", objectListing.getObjectSummaries().size(), bucketName);
+    public DeleteSummary delete() {
+        long start = System.nanoTime();
+        AtomicLong deleted = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        ExecutorService deletePool = executorRegistry.get(DELETE_EXECUTOR);
+        int deleteConcurrency = executorRegistry.getSize(DELETE_EXECUTOR);
+        List<Future<?>> prefixTasks = new ArrayList<>();
+        Deque<CompletableFuture<Void>> batchTasks = new ArrayDeque<>();
+        try {
+            // The first level below the folder is listed with a delimiter, every sub-prefix is then
+            // cleared independently so that several listings and batch deletes run side by side
+            String rootPrefix = folderName + "/";
+            BlobPage rootPage = blobStore.list(rootPrefix, "/", null).join();
             while (true) {
-                for (S3ObjectSummary objectSummary : objectListing.getObjectSummaries()) {
-                    log.info("Deleting {} from bucket={}", objectSummary.getKey(), bucketName);
-                    amazonS3.deleteObject(bucketName, objectSummary.getKey());
+                for (String prefix : rootPage.getCommonPrefixes()) {
+                    prefixTasks.add(deletePool.submit(() -> deletePrefix(prefix, deleted, failed)));
                 }
-                if (objectListing.isTruncated()) {
-                    objectListing = amazonS3.listNextBatchOfObjects(objectListing);
-                } else {
+                // Pages directly below the folder are deleted in the background while the next one is listed
+                if (!rootPage.getBlobs().isEmpty()) {
+                    while (batchTasks.size() >= deleteConcurrency) {
+                        batchTasks.poll().join();
+                    }
+                    batchTasks.add(deleteBatch(rootPage.getBlobs(), deleted, failed));
+                }
+                if (rootPage.getContinuationToken() == null) {
                     break;
                 }
+                rootPage = blobStore.list(rootPrefix, "/", rootPage.getContinuationToken()).join();
+            }
+            for (CompletableFuture<Void> batchTask : batchTasks) {
+                batchTask.join();
+            }
+            for (Future<?> prefixTask : prefixTasks) {
+                prefixTask.get();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DocumentException("Interrupted while clearing the bucket", e);
+        } catch (ExecutionException | CompletionException e) {
+            log.error("Exception occurred while clearing the bucket: {}", e.getCause().getMessage(), e.getCause());
+            throw new DocumentException("Could not clear the bucket", e);
+        } finally {
+            // The pool is shared, so only the tasks of this call are stopped
+            prefixTasks.forEach(task -> task.cancel(true));
+            batchTasks.forEach(task -> task.cancel(true));
+        }
+        DeleteSummary summary = new DeleteSummary(deleted.get(), failed.get(), (System.nanoTime() - start) / 1_000_000);
+        log.info("Deleted {} objects from bucket={}, {} failed, in {} ms", summary.getDeleted(), bucketName,
+                summary.getFailed(), summary.getElapsedMillis());
+        return summary;
+    }
+
+    // Returns the keys that could not be deleted
+    public List<String> delete(List<String> keys) {
+        List<String> objectKeys = keys.stream().map(key -> folderName + "/" + key).collect(Collectors.toList());
+        try {
+            return blobStore.delete(objectKeys).join().stream()
+                    .map(objectKey -> objectKey.substring(folderName.length() + 1))
+                    .collect(Collectors.toList());
+        } catch (CompletionException e) {
+            log.error("Exception occurred while deleting {} from bucket={}: {}", keys, bucketName, e.getCause().getMessage(), e.getCause());
+            throw new DocumentException("Could not delete " + keys + " from S3", e);
+        }
+    }
+
+    private void deletePrefix(String prefix, AtomicLong deleted, AtomicLong failed) {
+        BlobPage page = blobStore.list(prefix, null, null).join();
+        while (true) {
+            // The next page is fetched while the current one is being deleted; listings continue after
+            // the last returned key, so deleting the listed keys does not shift the following pages
+            CompletableFuture<BlobPage> nextPage = page.getContinuationToken() != null
+                    ? blobStore.list(prefix, null, page.getContinuationToken())
+                    : null;
+            deleteBatch(page.getBlobs(), deleted, failed).join();
+            if (nextPage == null) {
+                break;
+            }
+            page = nextPage.join();
         }
     }
+
+    private CompletableFuture<Void> deleteBatch(List<BlobSummary> blobs, AtomicLong deleted, AtomicLong failed) {
+        // A listing page never holds more keys than a single delete request accepts
+        List<String> keys = blobs.stream().map(BlobSummary::getKey).collect(Collectors.toList());
+        return blobStore.delete(keys).handle((failedKeys, e) -> {
+            if (e != null) {
+                failed.addAndGet(keys.size());
+                log.error("Exception occurred while deleting {} objects from bucket={}: {}", keys.size(), bucketName, e.getMessage(), e);
+                return null;
+            }
+            deleted.addAndGet(keys.size() - failedKeys.size());
+            failed.addAndGet(failedKeys.size());
+            log.debug("Deleted a batch of {} objects from bucket={}", keys.size(), bucketName);
+            return null;
+        });
+    }
+
+    private static Map<String, String> metadata(Map<String, String> optionalMetadata) {
+        return optionalMetadata != null ? optionalMetadata : Map.of();
+    }
 }
@@ -0,0 +1,235 @@
+package org.redquark.hotspring.uploader.process;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.commons.blobs.BlobStore;
+import org.redquark.hotspring.commons.domains.BlobPart;
+import org.redquark.hotspring.commons.domains.TransferDirection;
+import org.redquark.hotspring.commons.domains.TransferPlan;
+import org.redquark.hotspring.commons.integrity.PayloadDigest;
+import org.redquark.hotspring.commons.transfers.TransferPlanner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+@Slf4j
+public class S3MultipartOutputStream extends OutputStream {
+
+    private final BlobStore blobStore;
+    private final String key;
+    private final Map<String, String> metadata;
+    private final TransferPlan plan;
+    private final TransferPlanner transferPlanner;
+    private final int partSize;
+    private final long start = System.nanoTime();
+    private final PartEncoder partEncoder;
+    private final Executor partExecutor;
+    private final Semaphore partsInFlight;
+    private final List<BlobPart> parts = new ArrayList<>();
+    private final List<CompletableFuture<BlobPart>> pendingParts = new ArrayList<>();
+
+    private byte[] buffer;
+    private int position;
+    private int partCount;
+    private long bytesWritten;
+    private String uploadId;
+    private boolean closed;
+    private volatile Throwable partFailure;
+
+    public S3MultipartOutputStream(
+            BlobStore blobStore,
+            String key,
+            Map<String, String> metadata,
+            TransferPlan plan,
+            TransferPlanner transferPlanner
+    ) {
+        this(blobStore, key, metadata, plan, transferPlanner, null, null);
+    }
+
+    public S3MultipartOutputStream(
+            BlobStore blobStore,
+            String key,
+            Map<String, String> metadata,
+            TransferPlan plan,
+            TransferPlanner transferPlanner,
+            PartEncoder partEncoder,
+            Executor partExecutor
+    ) {
+        this.blobStore = blobStore;
+        this.key = key;
+        this.metadata = metadata;
+        this.plan = plan;
+        this.transferPlanner = transferPlanner;
+        this.partSize = plan.getPartSize();
+        this.partEncoder = partEncoder;
+        this.partExecutor = partExecutor;
+        this.partsInFlight = new Semaphore(plan.getConcurrency());
+        this.buffer = new byte[partSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (position == buffer.length) {
+            uploadPart(false);
+        }
+        buffer[position++] = (byte) b;
+        bytesWritten++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            // A full buffer is only sent once more data arrives, so the part written on close is known to be the last one
+            if (position == buffer.length) {
+                uploadPart(false);
+            }
+            int chunk = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, chunk);
+            position += chunk;
+            bytesWritten += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (uploadId == null) {
+                // Everything fit into a single part, so skip the multipart round trips altogether
+                ByteBuffer data = encode(1, buffer, position, true);
+                int length = data.remaining();
+                // The bytes are known before the request goes out, so the object carries the checksums of what
+                // is stored; a multipart upload fixes its metadata when it is created and cannot carry them
+                Map<String, String> checksummedMetadata = new HashMap<>(metadata);
+                checksummedMetadata.putAll(PayloadDigest.of(data).toMetadata());
+                long requestStart = System.nanoTime();
+                blobStore.put(key, data, checksummedMetadata).join();
+                transferPlanner.recordRequest(TransferDirection.UPLOAD, length, System.nanoTime() - requestStart);
+                transferPlanner.recordTransfer(key, plan, bytesWritten, System.nanoTime() - start);
+                log.info("Stored {} bytes in key={} with a single request", length, key);
+                return;
+            }
+            if (position > 0) {
+                uploadPart(true);
+            }
+            awaitPendingParts();
+            parts.sort(Comparator.comparingInt(BlobPart::getPartNumber));
+            blobStore.completeMultipartUpload(key, uploadId, parts).join();
+            transferPlanner.recordTransfer(key, plan, bytesWritten, System.nanoTime() - start);
+            log.info("Completed multipart upload of key={} in {} parts", key, parts.size());
+        } catch (CompletionException e) {
+            abort();
+            throw new IOException("Could not complete upload of " + key, e.getCause());
+        }
+    }
+
+    public void abort() {
+        closed = true;
+        pendingParts.forEach(part -> part.cancel(true));
+        if (uploadId == null) {
+            return;
+        }
+        try {
+            log.info("Aborting multipart upload of key={}", key);
+            blobStore.abortMultipartUpload(key, uploadId).join();
+        } catch (CompletionException e) {
+            log.error("Exception occurred while aborting multipart upload of key={}: {}", key, e.getCause().getMessage(), e.getCause());
+        } finally {
+            uploadId = null;
+        }
+    }
+
+    private void uploadPart(boolean last) throws IOException {
+        try {
+            if (uploadId == null) {
+                uploadId = blobStore.createMultipartUpload(key, metadata).join();
+                log.info("Initiated multipart upload of key={} with uploadId={}", key, uploadId);
+            }
+            int partNumber = ++partCount;
+            if (partNumber > TransferPlanner.MAX_PARTS) {
+                throw new IOException("Upload of " + key + " exceeds " + TransferPlanner.MAX_PARTS + " parts of " + buffer.length + " bytes");
+            }
+            // The permit bounds the parts on the wire; the writer keeps filling one more buffer meanwhile,
+            // which the planner leaves room for when it derives the concurrency from the buffer memory
+            partsInFlight.acquire();
+            if (partFailure != null) {
+                partsInFlight.release();
+                throw new IOException("Could not upload part of " + key, partFailure);
+            }
+            byte[] data = buffer;
+            int length = position;
+            String currentUploadId = uploadId;
+            // Only encoding needs a thread, a plain part goes straight to the non-blocking client
+            CompletableFuture<ByteBuffer> encodedPart = partEncoder == null
+                    ? CompletableFuture.completedFuture(ByteBuffer.wrap(data, 0, length))
+                    : CompletableFuture.supplyAsync(() -> encode(partNumber, data, length, last), partExecutor);
+            CompletableFuture<BlobPart> pendingPart = encodedPart
+                    .thenCompose(body -> {
+                        int bodyLength = body.remaining();
+                        long requestStart = System.nanoTime();
+                        return blobStore.uploadPart(key, currentUploadId, partNumber, body).thenApply(eTag -> {
+                            transferPlanner.recordRequest(TransferDirection.UPLOAD, bodyLength, System.nanoTime() - requestStart);
+                            return eTag;
+                        });
+                    })
+                    .thenApply(eTag -> {
+                        log.debug("Uploaded part={} of key={}", partNumber, key);
+                        return new BlobPart(partNumber, eTag);
+                    })
+                    .whenComplete((part, e) -> {
+                        if (e != null) {
+                            partFailure = e;
+                        }
+                        partsInFlight.release();
+                    });
+            pendingParts.add(pendingPart);
+            buffer = new byte[partSize];
+            position = 0;
+        } catch (IOException e) {
+            abort();
+            throw e;
+        } catch (InterruptedException e) {
+            abort();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading part of " + key, e);
+        } catch (CompletionException e) {
+            abort();
+            throw new IOException("Could not upload part of " + key, e.getCause());
+        }
+    }
+
+    private ByteBuffer encode(int partNumber, byte[] data, int length, boolean last) {
+        return partEncoder == null
+                ? ByteBuffer.wrap(data, 0, length)
+                : ByteBuffer.wrap(partEncoder.encode(partNumber, data, length, last));
+    }
+
+    private void awaitPendingParts() {
+        for (CompletableFuture<BlobPart> pendingPart : pendingParts) {
+            parts.add(pendingPart.join());
+        }
+        pendingParts.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream for " + key + " is already closed");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.redquark.hotspring.uploader.process;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.configs.IngestConfig;
+import org.redquark.hotspring.uploader.exceptions.DocumentException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Component
+@Slf4j
+public class ScratchSpace {
+
+    private static final String MULTIPART_PREFIX = "upload_";
+    private static final String JOB_PREFIX = "job_";
+    private static final String SESSION_DIRECTORY = "sessions";
+
+    private final IngestConfig ingestConfig;
+    private Path directory;
+    private Path sessionDirectory;
+
+    public ScratchSpace(DocumentUploaderConfig documentUploaderConfig) {
+        this.ingestConfig = documentUploaderConfig.getIngestConfig();
+    }
+
+    @PostConstruct
+    protected void init() {
+        directory = Paths.get(ingestConfig.getScratchDirectory()).toAbsolutePath();
+        try {
+            Files.createDirectories(directory);
+            // Upload sessions are resumed after a restart, so their directory is left alone
+            sessionDirectory = Files.createDirectories(directory.resolve(SESSION_DIRECTORY));
+            // Spilled multipart parts never outlive a request, so anything left behind is from a crashed run
+            try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, MULTIPART_PREFIX + "*")) {
+                for (Path leftover : leftovers) {
+                    log.info("Deleting stale scratch file={}", leftover);
+                    Files.deleteIfExists(leftover);
+                }
+            }
+            try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, JOB_PREFIX + "*")) {
+                for (Path leftover : leftovers) {
+                    log.info("Deleting stale job directory={}", leftover);
+                    FileUtils.deleteDirectory(leftover.toFile());
+                }
+            }
+        } catch (IOException e) {
+            log.error("Exception occurred while preparing scratch directory: {}", e.getMessage(), e);
+            throw new DocumentException("Could not prepare scratch directory", e);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Path getSessionDirectory() {
+        return sessionDirectory;
+    }
+
+    public Path createJobDirectory(String jobId) {
+        try {
+            return Files.createDirectory(directory.resolve(JOB_PREFIX + jobId));
+        } catch (IOException e) {
+            log.error("Exception occurred while creating job directory: {}", e.getMessage(), e);
+            throw new DocumentException("Could not create job directory", e);
+        }
+    }
+
+    public void deleteJobDirectory(Path jobDirectory) {
+        try {
+            FileUtils.deleteDirectory(jobDirectory.toFile());
+        } catch (IOException e) {
+            log.error("Exception occurred while deleting job directory={}: {}", jobDirectory, e.getMessage(), e);
+        }
+    }
+}
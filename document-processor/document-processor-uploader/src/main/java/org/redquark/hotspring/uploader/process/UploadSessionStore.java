@@ -0,0 +1,74 @@
+package org.redquark.hotspring.uploader.process;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redquark.hotspring.uploader.domains.UploadSession;
+import org.redquark.hotspring.uploader.exceptions.DocumentException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps every upload session as a JSON file in the scratch area, so sessions survive a restart
+@Component
+@Slf4j
+public class UploadSessionStore {
+
+    private static final String SESSION_EXTENSION = ".json";
+
+    private final ScratchSpace scratchSpace;
+    private final ObjectMapper objectMapper;
+
+    public UploadSessionStore(ScratchSpace scratchSpace, ObjectMapper objectMapper) {
+        this.scratchSpace = scratchSpace;
+        this.objectMapper = objectMapper;
+    }
+
+    public List<UploadSession> loadAll() {
+        List<UploadSession> sessions = new ArrayList<>();
+        try (DirectoryStream<Path> sessionFiles = Files.newDirectoryStream(scratchSpace.getSessionDirectory(), "*" + SESSION_EXTENSION)) {
+            for (Path sessionFile : sessionFiles) {
+                try {
+                    sessions.add(objectMapper.readValue(sessionFile.toFile(), UploadSession.class));
+                } catch (IOException e) {
+                    log.error("Skipping unreadable session file={}: {}", sessionFile, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.error("Exception occurred while loading upload sessions: {}", e.getMessage(), e);
+            throw new DocumentException("Could not load upload sessions", e);
+        }
+        return sessions;
+    }
+
+    // Callers hold the lock of the session, so its state does not change while it is written
+    public void save(UploadSession session) {
+        Path sessionFile = sessionFile(session.getSessionId());
+        try {
+            // Written next to the target and renamed, a crash leaves either the old or the new state
+            Path stagedFile = Files.createTempFile(scratchSpace.getSessionDirectory(), session.getSessionId(), null);
+            objectMapper.writeValue(stagedFile.toFile(), session);
+            Files.move(stagedFile, sessionFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Exception occurred while saving session={}: {}", session.getSessionId(), e.getMessage(), e);
+            throw new DocumentException("Could not save upload session", e);
+        }
+    }
+
+    public void delete(String sessionId) {
+        try {
+            Files.deleteIfExists(sessionFile(sessionId));
+        } catch (IOException e) {
+            log.error("Exception occurred while deleting session={}: {}", sessionId, e.getMessage(), e);
+        }
+    }
+
+    private Path sessionFile(String sessionId) {
+        return scratchSpace.getSessionDirectory().resolve(sessionId + SESSION_EXTENSION);
+    }
+}
@@ -0,0 +1,236 @@
+package org.redquark.hotspring.uploader.process;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+public class ZipArchiveWriter {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private final OutputStream target;
+    private final List<Entry> entries = new ArrayList<>();
+    private final int dosTime;
+    private final int dosDate;
+
+    private long offset;
+    private Entry current;
+
+    public ZipArchiveWriter(OutputStream target) {
+        this.target = target;
+        LocalDateTime now = LocalDateTime.now();
+        this.dosTime = (now.getSecond() >> 1) | (now.getMinute() << 5) | (now.getHour() << 11);
+        this.dosDate = now.getDayOfMonth() | (now.getMonthValue() << 5) | ((now.getYear() - 1980) << 9);
+    }
+
+    public void putNextEntry(String name, int method) throws IOException {
+        if (current != null) {
+            throw new IOException("Entry " + new String(current.name, StandardCharsets.UTF_8) + " is still open");
+        }
+        current = new Entry(name.getBytes(StandardCharsets.UTF_8), method, FLAG_DATA_DESCRIPTOR | FLAG_UTF8, offset);
+        // Sizes and CRC are unknown until the last compressed block is written, so they follow in a data descriptor
+        ByteBuffer header = ByteBuffer.allocate(30 + current.name.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort((short) VERSION_DEFAULT)
+                .putShort((short) current.flags)
+                .putShort((short) method)
+                .putShort((short) dosTime)
+                .putShort((short) dosDate)
+                .putInt(0)
+                .putInt(0)
+                .putInt(0)
+                .putShort((short) current.name.length)
+                .putShort((short) 0)
+                .put(current.name);
+        write(header);
+    }
+
+    public void putStoredEntry(String name, long crc, long size) throws IOException {
+        if (current != null) {
+            throw new IOException("Entry " + new String(current.name, StandardCharsets.UTF_8) + " is still open");
+        }
+        current = new Entry(name.getBytes(StandardCharsets.UTF_8), ZipEntry.STORED, FLAG_UTF8, offset);
+        current.crc = crc;
+        current.size = size;
+        // ZipInputStream rejects data descriptors on stored entries, so CRC and sizes go into the local header
+        boolean zip64 = size >= ZIP64_MAGIC;
+        int extraLength = zip64 ? 20 : 0;
+        ByteBuffer header = ByteBuffer.allocate(30 + current.name.length + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT))
+                .putShort((short) current.flags)
+                .putShort((short) ZipEntry.STORED)
+                .putShort((short) dosTime)
+                .putShort((short) dosDate)
+                .putInt((int) crc)
+                .putInt((int) (zip64 ? ZIP64_MAGIC : size))
+                .putInt((int) (zip64 ? ZIP64_MAGIC : size))
+                .putShort((short) current.name.length)
+                .putShort((short) extraLength)
+                .put(current.name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_ID).putShort((short) 16).putLong(size).putLong(size);
+        }
+        write(header);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (current == null) {
+            throw new IOException("No entry is open");
+        }
+        target.write(b, off, len);
+        offset += len;
+        current.compressedSize += len;
+    }
+
+    public void closeEntry(long crc, long size) throws IOException {
+        if (current == null) {
+            throw new IOException("No entry is open");
+        }
+        if ((current.flags & FLAG_DATA_DESCRIPTOR) == 0) {
+            if (current.crc != crc || current.size != size || current.compressedSize != size) {
+                throw new IOException("Stored entry " + new String(current.name, StandardCharsets.UTF_8) + " changed while it was written");
+            }
+            entries.add(current);
+            current = null;
+            return;
+        }
+        current.crc = crc;
+        current.size = size;
+        boolean zip64 = current.compressedSize >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+        ByteBuffer descriptor = ByteBuffer.allocate(zip64 ? 24 : 16).order(ByteOrder.LITTLE_ENDIAN);
+        descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE).putInt((int) crc);
+        if (zip64) {
+            descriptor.putLong(current.compressedSize).putLong(size);
+        } else {
+            descriptor.putInt((int) current.compressedSize).putInt((int) size);
+        }
+        write(descriptor);
+        entries.add(current);
+        current = null;
+    }
+
+    public void finish() throws IOException {
+        if (current != null) {
+            throw new IOException("Entry " + new String(current.name, StandardCharsets.UTF_8) + " is still open");
+        }
+        long centralDirectoryOffset = offset;
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long centralDirectorySize = offset - centralDirectoryOffset;
+        int count = entries.size();
+        if (count >= ZIP64_MAGIC_COUNT || centralDirectoryOffset >= ZIP64_MAGIC || centralDirectorySize >= ZIP64_MAGIC) {
+            long zip64EndOffset = offset;
+            ByteBuffer zip64End = ByteBuffer.allocate(56 + 20).order(ByteOrder.LITTLE_ENDIAN);
+            zip64End.putInt(ZIP64_END_SIGNATURE)
+                    .putLong(44)
+                    .putShort((short) VERSION_ZIP64)
+                    .putShort((short) VERSION_ZIP64)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(count)
+                    .putLong(count)
+                    .putLong(centralDirectorySize)
+                    .putLong(centralDirectoryOffset);
+            zip64End.putInt(ZIP64_LOCATOR_SIGNATURE)
+                    .putInt(0)
+                    .putLong(zip64EndOffset)
+                    .putInt(1);
+            write(zip64End);
+        }
+        ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(END_SIGNATURE)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) Math.min(count, ZIP64_MAGIC_COUNT))
+                .putShort((short) Math.min(count, ZIP64_MAGIC_COUNT))
+                .putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC))
+                .putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC))
+                .putShort((short) 0);
+        write(end);
+        target.flush();
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        boolean zip64Size = entry.size >= ZIP64_MAGIC;
+        boolean zip64CompressedSize = entry.compressedSize >= ZIP64_MAGIC;
+        boolean zip64Offset = entry.offset >= ZIP64_MAGIC;
+        int zip64Fields = (zip64Size ? 1 : 0) + (zip64CompressedSize ? 1 : 0) + (zip64Offset ? 1 : 0);
+        int extraLength = zip64Fields > 0 ? 4 + 8 * zip64Fields : 0;
+        int version = zip64Fields > 0 ? VERSION_ZIP64 : VERSION_DEFAULT;
+        ByteBuffer header = ByteBuffer.allocate(46 + entry.name.length + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(CENTRAL_HEADER_SIGNATURE)
+                .putShort((short) version)
+                .putShort((short) version)
+                .putShort((short) entry.flags)
+                .putShort((short) entry.method)
+                .putShort((short) dosTime)
+                .putShort((short) dosDate)
+                .putInt((int) entry.crc)
+                .putInt((int) (zip64CompressedSize ? ZIP64_MAGIC : entry.compressedSize))
+                .putInt((int) (zip64Size ? ZIP64_MAGIC : entry.size))
+                .putShort((short) entry.name.length)
+                .putShort((short) extraLength)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putInt(0)
+                .putInt((int) (zip64Offset ? ZIP64_MAGIC : entry.offset))
+                .put(entry.name);
+        if (zip64Fields > 0) {
+            header.putShort((short) ZIP64_EXTRA_ID).putShort((short) (extraLength - 4));
+            if (zip64Size) {
+                header.putLong(entry.size);
+            }
+            if (zip64CompressedSize) {
+                header.putLong(entry.compressedSize);
+            }
+            if (zip64Offset) {
+                header.putLong(entry.offset);
+            }
+        }
+        write(header);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        target.write(buffer.array(), 0, buffer.position());
+        offset += buffer.position();
+    }
+
+    private static class Entry {
+
+        private final byte[] name;
+        private final int method;
+        private final int flags;
+        private final long offset;
+        private long compressedSize;
+        private long size;
+        private long crc;
+
+        private Entry(byte[] name, int method, int flags, long offset) {
+            this.name = name;
+            this.method = method;
+            this.flags = flags;
+            this.offset = offset;
+        }
+    }
+}
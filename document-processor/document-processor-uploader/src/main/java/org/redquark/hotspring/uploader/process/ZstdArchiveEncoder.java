@@ -0,0 +1,77 @@
+package org.redquark.hotspring.uploader.process;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.redquark.hotspring.commons.integrity.PayloadDigest;
+import org.redquark.hotspring.uploader.configs.ArchiveConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.domains.ArchiveEntry;
+import org.redquark.hotspring.uploader.domains.ArchiveFormat;
+import org.redquark.hotspring.uploader.domains.Document;
+import org.redquark.hotspring.uploader.exceptions.DocumentArchiveException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@Slf4j
+public class ZstdArchiveEncoder implements ArchiveEncoder {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ArchiveConfig archiveConfig;
+
+    public ZstdArchiveEncoder(DocumentUploaderConfig documentUploaderConfig) {
+        this.archiveConfig = documentUploaderConfig.getArchiveConfig();
+    }
+
+    @Override
+    public ArchiveFormat getFormat() {
+        return ArchiveFormat.ZSTD;
+    }
+
+    @Override
+    public List<ArchiveEntry> archive(List<Document> documents, OutputStream target) {
+        log.info("Archiving {} files with zstd level={}", documents.size(), archiveConfig.getZstdLevel());
+        try (ZstdOutputStream zstdOutputStream = new ZstdOutputStream(CloseShieldOutputStream.wrap(target), archiveConfig.getZstdLevel());
+             TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(zstdOutputStream)) {
+            // zstd compresses the tar stream on its own worker threads, so there is no separate parallel mode
+            zstdOutputStream.setWorkers(archiveConfig.getParallelism() > 0
+                    ? archiveConfig.getParallelism()
+                    : Runtime.getRuntime().availableProcessors());
+            tarOutputStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tarOutputStream.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            List<ArchiveEntry> entries = new ArrayList<>();
+            for (Document document : documents) {
+                TarArchiveEntry tarEntry = new TarArchiveEntry(FilenameUtils.getName(document.getName()));
+                tarEntry.setSize(document.getSize());
+                tarOutputStream.putArchiveEntry(tarEntry);
+                PayloadDigest digest = new PayloadDigest();
+                try (InputStream documentStream = document.openStream()) {
+                    int read;
+                    while ((read = documentStream.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                        tarOutputStream.write(buffer, 0, read);
+                    }
+                }
+                tarOutputStream.closeArchiveEntry();
+                entries.add(new ArchiveEntry(tarEntry.getName(), digest.toChecksum()));
+            }
+            tarOutputStream.finish();
+            log.info("Archiving of files is completed");
+            return entries;
+        } catch (IOException e) {
+            log.error("Exception occurred while archiving files: {}", e.getMessage());
+            throw new DocumentArchiveException("Could not archive files", e);
+        }
+    }
+}
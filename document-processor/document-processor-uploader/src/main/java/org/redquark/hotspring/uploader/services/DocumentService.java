@@ -1,10 +1,19 @@
 package org.redquark.hotspring.uploader.services;
 
+import org.redquark.hotspring.uploader.domains.DeleteSummary;
+import org.redquark.hotspring.uploader.domains.Document;
+import org.redquark.hotspring.uploader.domains.UploadNamespace;
+import org.redquark.hotspring.uploader.domains.UploadStage;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
+import java.util.function.Consumer;
+
 public interface DocumentService {
 
-    void upload(MultipartFile[] documents);
+    void upload(UploadNamespace namespace, MultipartFile[] documents);
+
+    void upload(UploadNamespace namespace, List<Document> documents, Consumer<UploadStage> stageListener);
 
-    void delete();
+    DeleteSummary delete();
 }
@@ -0,0 +1,14 @@
+package org.redquark.hotspring.uploader.services;
+
+import org.redquark.hotspring.uploader.domains.UploadJob;
+import org.redquark.hotspring.uploader.process.ByteBudget;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Optional;
+
+public interface UploadJobService {
+
+    UploadJob submit(MultipartFile[] documents, ByteBudget.Lease lease);
+
+    Optional<UploadJob> find(String jobId);
+}
@@ -0,0 +1,16 @@
+package org.redquark.hotspring.uploader.services;
+
+import org.redquark.hotspring.uploader.domains.UploadSession;
+
+import java.io.InputStream;
+
+public interface UploadSessionService {
+
+    UploadSession create(String name, long length);
+
+    UploadSession find(String sessionId);
+
+    UploadSession uploadChunk(String sessionId, long offset, long contentLength, InputStream chunk);
+
+    void abort(String sessionId);
+}
@@ -1,61 +1,295 @@
 package org.redquark.hotspring.uploader.services.impl;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
+import org.redquark.hotspring.uploader.configs.ArchiveConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.domains.ArchiveEntry;
+import org.redquark.hotspring.uploader.domains.ArchiveManifest;
+import org.redquark.hotspring.uploader.domains.ArchiveShard;
+import org.redquark.hotspring.uploader.domains.DeleteSummary;
 import org.redquark.hotspring.uploader.domains.Document;
+import org.redquark.hotspring.uploader.domains.ShardManifest;
+import org.redquark.hotspring.uploader.domains.UploadNamespace;
+import org.redquark.hotspring.uploader.domains.UploadStage;
 import org.redquark.hotspring.uploader.exceptions.DocumentException;
-import org.redquark.hotspring.uploader.process.DocumentZipper;
+import org.redquark.hotspring.uploader.process.ArchiveEncoder;
+import org.redquark.hotspring.uploader.process.DocumentDeduplicator;
+import org.redquark.hotspring.uploader.process.EncryptionStage;
 import org.redquark.hotspring.uploader.process.S3Helper;
+import org.redquark.hotspring.uploader.process.S3MultipartOutputStream;
 import org.redquark.hotspring.uploader.services.DocumentService;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class DocumentServiceImpl implements DocumentService {
 
-    private static final String ZIP_FILE_NAME = "archived.zip";
-    private final DocumentZipper zipper;
+    private static final String ARCHIVE_NAME = "archived";
+    private static final String ARCHIVE_FORMAT_METADATA = "archive-format";
+    private static final String ARCHIVE_MANIFEST_EXTENSION = ".manifest.json";
+    private static final String ARCHIVE_MANIFEST_METADATA = "archive-manifest";
+    private static final String ARCHIVE_SHARD_METADATA = "archive-shard";
+    private static final String SHARD_MANIFEST_EXTENSION = ".shards.json";
+    private static final String SHARD_EXECUTOR = "archive-shard";
+    private final ArchiveConfig archiveConfig;
+    private final ArchiveEncoder archiveEncoder;
+    private final EncryptionStage encryptionStage;
+    private final DocumentDeduplicator documentDeduplicator;
     private final S3Helper s3Helper;
+    private final ObjectMapper objectMapper;
+    private final ExecutorRegistry executorRegistry;
+
+    public DocumentServiceImpl(
+            DocumentUploaderConfig documentUploaderConfig,
+            List<ArchiveEncoder> archiveEncoders,
+            EncryptionStage encryptionStage,
+            DocumentDeduplicator documentDeduplicator,
+            S3Helper s3Helper,
+            ObjectMapper objectMapper,
+            ExecutorRegistry executorRegistry
+    ) {
+        this.archiveConfig = documentUploaderConfig.getArchiveConfig();
+        this.archiveEncoder = archiveEncoders.stream()
+                .filter(encoder -> encoder.getFormat() == documentUploaderConfig.getArchiveConfig().getFormat())
+                .findFirst()
+                .orElseThrow(() -> new DocumentException("No archive encoder for format " + documentUploaderConfig.getArchiveConfig().getFormat(), null));
+        this.encryptionStage = encryptionStage;
+        this.documentDeduplicator = documentDeduplicator;
+        this.s3Helper = s3Helper;
+        this.objectMapper = objectMapper;
+        this.executorRegistry = executorRegistry;
+    }
 
     @Override
-    public void upload(MultipartFile[] documents) {
+    public void upload(UploadNamespace namespace, MultipartFile[] documents) {
         List<Document> documentList = new ArrayList<>();
-        List<File> documentsToUpload = new ArrayList<>();
+        for (MultipartFile document : documents) {
+            documentList.add(Document.builder()
+                    .name(FilenameUtils.getName(Objects.requireNonNull(document.getOriginalFilename())))
+                    .size(document.getSize())
+                    .source(document)
+                    .build());
+        }
+        upload(namespace, documentList, stage -> {
+        });
+    }
+
+    @Override
+    public void upload(UploadNamespace namespace, List<Document> documentList, Consumer<UploadStage> stageListener) {
+        stageListener.accept(UploadStage.UPLOADING);
+        if (encryptionStage.isEnabled()) {
+            encryptionStage.encryptAndUpload(namespace, documentList);
+        } else if (documentDeduplicator.isEnabled()) {
+            documentDeduplicator.upload(namespace, documentList);
+        } else {
+            s3Helper.uploadMultipleDocuments(namespace, documentList);
+        }
+        List<List<Document>> shards = shard(documentList);
+        stageListener.accept(UploadStage.ARCHIVING);
+        if (shards.size() == 1) {
+            archive(namespace, ARCHIVE_NAME, Map.of(), documentList);
+            return;
+        }
+        log.info("Archiving of {} files into {} shards starts...", documentList.size(), shards.size());
+        long start = System.nanoTime();
+        ExecutorService shardPool = executorRegistry.get(SHARD_EXECUTOR);
+        List<Future<String>> shardTasks = new ArrayList<>();
+        List<ArchiveShard> archiveShards = new ArrayList<>();
+        CompletedShards completedShards = new CompletedShards();
+        boolean uploaded = false;
+        try {
+            for (int i = 0; i < shards.size(); i++) {
+                List<Document> shard = shards.get(i);
+                String shardName = String.format("%s-%04d", ARCHIVE_NAME, i + 1);
+                Map<String, String> shardMetadata = Map.of(ARCHIVE_SHARD_METADATA, (i + 1) + "/" + shards.size());
+                shardTasks.add(shardPool.submit(() -> completedShards.add(archive(namespace, shardName, shardMetadata, shard))));
+            }
+            for (int i = 0; i < shards.size(); i++) {
+                List<Document> shard = shards.get(i);
+                archiveShards.add(new ArchiveShard(shardTasks.get(i).get(), shard.size(), documentBytes(shard)));
+            }
+            log.info("Archiving of {} shards is completed in {} ms.", shards.size(), (System.nanoTime() - start) / 1_000_000);
+            uploadShardManifest(namespace, archiveShards);
+            uploaded = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DocumentException("Interrupted while archiving the shards", e);
+        } catch (ExecutionException e) {
+            log.error("Exception occurred while archiving the shards: {}", e.getCause().getMessage(), e.getCause());
+            if (e.getCause() instanceof DocumentException) {
+                throw (DocumentException) e.getCause();
+            }
+            throw new DocumentException("Could not upload archived shards", e);
+        } finally {
+            // The pool is shared, so only the shards of this upload are stopped; each one aborts its own upload
+            shardTasks.forEach(task -> task.cancel(true));
+            if (!uploaded) {
+                completedShards.discard();
+            }
+        }
+    }
+
+    // Documents are packed in their order into shards that stay within the byte and entry budget;
+    // a document larger than the byte budget makes a shard of its own
+    private List<List<Document>> shard(List<Document> documentList) {
+        long maxBytes = archiveConfig.getShardMaxSize().toBytes();
+        int maxEntries = archiveConfig.getShardMaxEntries();
+        List<List<Document>> shards = new ArrayList<>();
+        List<Document> current = new ArrayList<>();
+        long currentBytes = 0;
+        for (Document document : documentList) {
+            if (!current.isEmpty() && (current.size() >= maxEntries || currentBytes + document.getSize() > maxBytes)) {
+                shards.add(current);
+                current = new ArrayList<>();
+                currentBytes = 0;
+            }
+            current.add(document);
+            currentBytes += document.getSize();
+        }
+        shards.add(current);
+        return shards;
+    }
+
+    private String archive(UploadNamespace namespace, String name, Map<String, String> shardMetadata, List<Document> documentList) {
+        String archiveName = name + archiveEncoder.getFormat().getExtension();
+        Map<String, String> metadata = new HashMap<>(shardMetadata);
+        metadata.put(ARCHIVE_FORMAT_METADATA, archiveEncoder.getFormat().getMetadataValue());
+        if (encryptionStage.isEnabled()) {
+            archiveName = encryptionStage.objectName(archiveName);
+        }
+        archiveName = namespace.key(archiveName);
+        // Encrypted archives get no manifest: the envelope already authenticates every byte, and
+        // the digests of the plain entries would otherwise sit next to the ciphertext in the clear
+        boolean withManifest = !encryptionStage.isEnabled();
+        if (withManifest) {
+            // Tells the downloader that an archive without its manifest must not pass unverified
+            metadata.put(ARCHIVE_MANIFEST_METADATA, FilenameUtils.getName(archiveName + ARCHIVE_MANIFEST_EXTENSION));
+        }
+        metadata = namespace.metadata(metadata);
+        log.info("Archiving of {} files into {} starts...", documentList.size(), archiveName);
+        long start = System.nanoTime();
+        // The archive is planned for the size of its documents, which compression only makes smaller
+        long sizeHint = documentBytes(documentList);
+        S3MultipartOutputStream archiveStream = encryptionStage.isEnabled()
+                ? encryptionStage.openUpload(archiveName, metadata, sizeHint)
+                : s3Helper.openMultipartStream(archiveName, metadata, s3Helper.planUpload(sizeHint));
         try {
-            for (MultipartFile document : documents) {
-                File currentFile = new File(Objects.requireNonNull(document.getOriginalFilename()));
-                FileUtils.writeByteArrayToFile(currentFile, document.getBytes());
-                documentList.add(Document.builder().name(document.getOriginalFilename()).contents(document.getBytes()).build());
-                documentsToUpload.add(currentFile);
-            }
-            s3Helper.uploadMultipleFiles(documentsToUpload);
-            log.info("Zipping of {} files starts...", documentList.size());
-            byte[] zippedBytes = zipper.zip(documentList);
-            log.info("Zipping of files is completed.");
-            Document zippedDocument = Document.builder().name(ZIP_FILE_NAME).contents(zippedBytes).build();
-            s3Helper.upload(ZIP_FILE_NAME, new HashMap<>(), new ByteArrayInputStream(zippedDocument.getContents()));
-            for (File document : documentsToUpload) {
-                Files.delete(document.toPath());
+            List<ArchiveEntry> entries;
+            if (encryptionStage.isEnabled()) {
+                // The archive is encrypted on the fly between the encoder and the S3 parts
+                try (OutputStream encryptedStream = encryptionStage.encrypt(archiveName, archiveStream)) {
+                    entries = archiveEncoder.archive(documentList, encryptedStream);
+                }
+            } else {
+                entries = archiveEncoder.archive(documentList, archiveStream);
+            }
+            // The manifest is stored before the archive is completed, so it exists by the time the archive shows up
+            if (withManifest) {
+                uploadManifest(namespace, archiveName, entries);
             }
+            archiveStream.close();
+            log.info("Archiving of {} is completed in {} ms.", archiveName, (System.nanoTime() - start) / 1_000_000);
         } catch (IOException e) {
-            throw new DocumentException("Could not extract contents of file", e);
+            archiveStream.abort();
+            throw new DocumentException("Could not upload archived file", e);
+        } catch (RuntimeException e) {
+            archiveStream.abort();
+            throw e;
+        }
+        return archiveName;
+    }
+
+    private void deleteShard(String archiveName) {
+        try {
+            List<String> failedKeys = s3Helper.delete(List.of(archiveName, archiveName + ARCHIVE_MANIFEST_EXTENSION));
+            if (!failedKeys.isEmpty()) {
+                log.warn("Could not delete {} of a failed upload", failedKeys);
+            }
+        } catch (DocumentException e) {
+            log.warn("Could not delete the shard {} of a failed upload: {}", archiveName, e.getMessage());
+        }
+    }
+
+    // Without the shard manifest the shards of a failed upload would pass for complete archives, so they
+    // are deleted; a shard that completes after the upload has failed deletes itself
+    private final class CompletedShards {
+
+        private final List<String> archiveNames = new ArrayList<>();
+        private boolean discarded;
+
+        private String add(String archiveName) {
+            synchronized (this) {
+                if (!discarded) {
+                    archiveNames.add(archiveName);
+                    return archiveName;
+                }
+            }
+            deleteShard(archiveName);
+            return archiveName;
+        }
+
+        private void discard() {
+            List<String> shardsToDelete;
+            synchronized (this) {
+                discarded = true;
+                shardsToDelete = new ArrayList<>(archiveNames);
+                archiveNames.clear();
+            }
+            shardsToDelete.forEach(DocumentServiceImpl.this::deleteShard);
+        }
+    }
+
+    private static long documentBytes(List<Document> documentList) {
+        return documentList.stream().mapToLong(Document::getSize).sum();
+    }
+
+    private void uploadManifest(UploadNamespace namespace, String archiveName, List<ArchiveEntry> entries) {
+        ArchiveManifest manifest = ArchiveManifest.builder()
+                .name(archiveName)
+                .format(archiveEncoder.getFormat().getMetadataValue())
+                .entries(entries)
+                .build();
+        try {
+            s3Helper.upload(archiveName + ARCHIVE_MANIFEST_EXTENSION, namespace.metadata(Map.of()), objectMapper.writeValueAsBytes(manifest));
+        } catch (JsonProcessingException e) {
+            throw new DocumentException("Could not write the manifest of " + archiveName, e);
+        }
+    }
+
+    // Lists the shards of an upload so that consumers can tell when all of them have arrived
+    private void uploadShardManifest(UploadNamespace namespace, List<ArchiveShard> shards) {
+        ShardManifest manifest = ShardManifest.builder()
+                .sessionId(namespace.getSessionId())
+                .format(archiveEncoder.getFormat().getMetadataValue())
+                .shards(shards)
+                .build();
+        String manifestName = namespace.key(ARCHIVE_NAME + SHARD_MANIFEST_EXTENSION);
+        try {
+            s3Helper.upload(manifestName, namespace.metadata(Map.of()), objectMapper.writeValueAsBytes(manifest));
+        } catch (JsonProcessingException e) {
+            throw new DocumentException("Could not write the shard manifest " + manifestName, e);
         }
     }
 
     @Override
-    public void delete() {
-        s3Helper.delete();
+    public DeleteSummary delete() {
+        return s3Helper.delete();
     }
 }
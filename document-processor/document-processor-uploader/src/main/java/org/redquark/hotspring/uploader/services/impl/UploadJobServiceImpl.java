@@ -0,0 +1,146 @@
+package org.redquark.hotspring.uploader.services.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.configs.JobConfig;
+import org.redquark.hotspring.uploader.domains.Document;
+import org.redquark.hotspring.uploader.domains.UploadJob;
+import org.redquark.hotspring.uploader.exceptions.DocumentException;
+import org.redquark.hotspring.uploader.exceptions.UploadJobRejectedException;
+import org.redquark.hotspring.uploader.process.ByteBudget;
+import org.redquark.hotspring.uploader.process.ScratchSpace;
+import org.redquark.hotspring.uploader.services.DocumentService;
+import org.redquark.hotspring.uploader.services.UploadJobService;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+@Service
+@Slf4j
+public class UploadJobServiceImpl implements UploadJobService {
+
+    private static final String JOB_EXECUTOR = "upload-job";
+
+    private final DocumentService documentService;
+    private final ScratchSpace scratchSpace;
+    private final JobConfig jobConfig;
+    private final Map<String, UploadJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService jobPool;
+
+    public UploadJobServiceImpl(
+            DocumentService documentService,
+            ScratchSpace scratchSpace,
+            DocumentUploaderConfig documentUploaderConfig,
+            ExecutorRegistry executorRegistry
+    ) {
+        this.documentService = documentService;
+        this.scratchSpace = scratchSpace;
+        this.jobConfig = documentUploaderConfig.getJobConfig();
+        // Configured with a bounded queue and the abort policy: jobs beyond the queue are rejected
+        // rather than queued without limit, the client is told to retry
+        this.jobPool = executorRegistry.get(JOB_EXECUTOR);
+    }
+
+    @Override
+    public UploadJob submit(MultipartFile[] documents, ByteBudget.Lease lease) {
+        purgeExpiredJobs();
+        String jobId = UUID.randomUUID().toString();
+        UploadJob job = new UploadJob(jobId, scratchSpace.createJobDirectory(jobId));
+        try {
+            job.setDocuments(stage(documents, job));
+            jobs.put(jobId, job);
+            // The staged files stay on disk until the job ends, so their share of the budget goes with it
+            ByteBudget.Lease jobLease = lease != null ? lease.detach() : null;
+            jobPool.execute(() -> run(job, jobLease));
+            log.info("Accepted upload job={} with {} files into session={}", jobId, documents.length,
+                    job.getNamespace().getSessionId());
+            return job;
+        } catch (IOException e) {
+            scratchSpace.deleteJobDirectory(job.getDirectory());
+            log.error("Exception occurred while staging files for job={}: {}", jobId, e.getMessage(), e);
+            throw new DocumentException("Could not stage files", e);
+        } catch (RejectedExecutionException e) {
+            if (lease != null) {
+                lease.close();
+            }
+            jobs.remove(jobId);
+            scratchSpace.deleteJobDirectory(job.getDirectory());
+            throw new UploadJobRejectedException("Upload queue is full", e);
+        }
+    }
+
+    @Override
+    public Optional<UploadJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    // Multipart parts are deleted with the request, so the job takes them over. Parts that were spilled to
+    // disk are renamed into the job directory, which keeps the request thread busy for milliseconds only.
+    private List<Document> stage(MultipartFile[] documents, UploadJob job) throws IOException {
+        List<Document> documentList = new ArrayList<>();
+        for (MultipartFile document : documents) {
+            String name = FilenameUtils.getName(Objects.requireNonNull(document.getOriginalFilename()));
+            int index = documentList.size();
+            Path stagedFile = job.getDirectory().resolve(index + "_" + name);
+            document.transferTo(stagedFile.toFile());
+            documentList.add(Document.builder()
+                    .name(name)
+                    .size(document.getSize())
+                    .source(() -> countingStream(Files.newInputStream(stagedFile), job, index))
+                    .build());
+        }
+        return documentList;
+    }
+
+    private void run(UploadJob job, ByteBudget.Lease lease) {
+        try {
+            documentService.upload(job.getNamespace(), job.getDocuments(), job::moveTo);
+            job.complete();
+            log.info("Upload job={} is completed", job.getJobId());
+        } catch (Exception e) {
+            log.error("Upload job={} failed due to: {}", job.getJobId(), e.getMessage(), e);
+            job.fail(e.getMessage());
+        } finally {
+            scratchSpace.deleteJobDirectory(job.getDirectory());
+            if (lease != null) {
+                lease.close();
+            }
+        }
+    }
+
+    private void purgeExpiredJobs() {
+        Instant expiry = Instant.now().minus(jobConfig.getRetention());
+        jobs.values().removeIf(job -> job.isFinished() && job.getCompletedAt().isBefore(expiry));
+    }
+
+    private static InputStream countingStream(InputStream inputStream, UploadJob job, int document) {
+        return new ProxyInputStream(inputStream) {
+            private long offset;
+
+            @Override
+            protected void afterRead(int n) {
+                if (n > 0) {
+                    offset += n;
+                    job.recordRead(document, offset);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,221 @@
+package org.redquark.hotspring.uploader.services.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.redquark.hotspring.commons.domains.BlobPart;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.configs.SessionConfig;
+import org.redquark.hotspring.uploader.domains.UploadNamespace;
+import org.redquark.hotspring.uploader.domains.UploadSession;
+import org.redquark.hotspring.uploader.domains.UploadSessionState;
+import org.redquark.hotspring.uploader.exceptions.DocumentException;
+import org.redquark.hotspring.uploader.exceptions.InvalidChunkException;
+import org.redquark.hotspring.uploader.exceptions.UploadSessionNotFoundException;
+import org.redquark.hotspring.uploader.process.S3Helper;
+import org.redquark.hotspring.uploader.process.UploadSessionStore;
+import org.redquark.hotspring.uploader.services.UploadSessionService;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class UploadSessionServiceImpl implements UploadSessionService {
+
+    private static final int MAX_PARTS = 10_000;
+
+    private final S3Helper s3Helper;
+    private final UploadSessionStore uploadSessionStore;
+    private final SessionConfig sessionConfig;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public UploadSessionServiceImpl(S3Helper s3Helper, UploadSessionStore uploadSessionStore, DocumentUploaderConfig documentUploaderConfig) {
+        this.s3Helper = s3Helper;
+        this.uploadSessionStore = uploadSessionStore;
+        this.sessionConfig = documentUploaderConfig.getSessionConfig();
+    }
+
+    @PostConstruct
+    protected void init() {
+        for (UploadSession session : uploadSessionStore.loadAll()) {
+            // A completion cut short by the restart is retried when the client resends a chunk
+            if (session.getState() == UploadSessionState.COMPLETING) {
+                session.setState(UploadSessionState.ACTIVE);
+            }
+            // Sessions created before keys were namespaced upload straight below the folder
+            if (session.getKey() == null) {
+                session.setKey(session.getName());
+            }
+            sessions.put(session.getSessionId(), session);
+        }
+        purgeExpiredSessions();
+        // Multipart uploads that no live session can resume are left over from crashed runs. Younger
+        // ones are kept, they may still belong to an archive being written by another instance
+        Set<String> liveUploadIds = sessions.values().stream().map(UploadSession::getUploadId).collect(Collectors.toSet());
+        int aborted = s3Helper.abortStaleUploads(Instant.now().minus(sessionConfig.getExpiry()), liveUploadIds);
+        log.info("Resumed {} upload sessions, aborted {} orphaned multipart uploads", sessions.size(), aborted);
+    }
+
+    @Override
+    public UploadSession create(String name, long length) {
+        purgeExpiredSessions();
+        String fileName = FilenameUtils.getName(name);
+        if (fileName == null || fileName.isBlank()) {
+            throw new InvalidChunkException("A file name is required", null);
+        }
+        if (length <= 0) {
+            throw new InvalidChunkException("Length must be at least 1 byte", null);
+        }
+        // Every chunk becomes one part, so the chunks are as large as the parts planned for the whole file
+        int chunkSize = s3Helper.planUpload(length).getPartSize();
+        if (length > (long) chunkSize * MAX_PARTS) {
+            throw new InvalidChunkException("Length must be at most " + (long) chunkSize * MAX_PARTS + " bytes", null);
+        }
+        UploadNamespace namespace = UploadNamespace.create();
+        String key = namespace.key(fileName);
+        String uploadId;
+        try {
+            uploadId = s3Helper.createMultipartUpload(key, namespace.metadata(Map.of())).join();
+        } catch (CompletionException e) {
+            log.error("Exception occurred while starting upload of {}: {}", fileName, e.getCause().getMessage(), e.getCause());
+            throw new DocumentException("Could not start upload session", e);
+        }
+        UploadSession session = new UploadSession(namespace.getSessionId(), fileName, key, uploadId, length, chunkSize);
+        uploadSessionStore.save(session);
+        sessions.put(session.getSessionId(), session);
+        log.info("Created upload session={} for {} ({} bytes in {} chunks)", session.getSessionId(), fileName, length, session.getPartCount());
+        return session;
+    }
+
+    @Override
+    public UploadSession find(String sessionId) {
+        UploadSession session = sessions.get(sessionId);
+        if (session == null) {
+            throw new UploadSessionNotFoundException("Unknown or expired session " + sessionId, null);
+        }
+        return session;
+    }
+
+    @Override
+    public UploadSession uploadChunk(String sessionId, long offset, long contentLength, InputStream chunk) {
+        UploadSession session = find(sessionId);
+        if (session.getState() != UploadSessionState.ACTIVE) {
+            throw new InvalidChunkException("Session " + sessionId + " is " + session.getState(), null);
+        }
+        if (offset < 0 || offset >= session.getLength() || offset % session.getChunkSize() != 0) {
+            throw new InvalidChunkException("Offset " + offset + " is not the start of a chunk of " + session.getChunkSize() + " bytes", null);
+        }
+        int expectedLength = (int) Math.min(session.getChunkSize(), session.getLength() - offset);
+        if (contentLength != expectedLength) {
+            throw new InvalidChunkException("Chunk at offset " + offset + " must be " + expectedLength + " bytes", null);
+        }
+        int partNumber = (int) (offset / session.getChunkSize()) + 1;
+        // The chunk goes to the store as a single part, so at most one part is held per request
+        byte[] data = new byte[expectedLength];
+        try {
+            IOUtils.readFully(chunk, data);
+        } catch (IOException e) {
+            throw new InvalidChunkException("Chunk at offset " + offset + " is incomplete", e);
+        }
+        String eTag;
+        try {
+            eTag = s3Helper.uploadPart(session.getKey(), session.getUploadId(), partNumber, ByteBuffer.wrap(data)).join();
+        } catch (CompletionException e) {
+            log.error("Exception occurred while storing part={} of session={}: {}", partNumber, sessionId, e.getCause().getMessage(), e.getCause());
+            throw new DocumentException("Could not store chunk", e);
+        }
+        boolean received;
+        synchronized (session) {
+            // A chunk sent again after a lost response simply replaces its part
+            session.getParts().put(partNumber, eTag);
+            session.setUpdatedAt(Instant.now());
+            received = session.isReceived() && session.getState() == UploadSessionState.ACTIVE;
+            if (received) {
+                session.setState(UploadSessionState.COMPLETING);
+            }
+            uploadSessionStore.save(session);
+        }
+        log.debug("Stored part={} of session={}", partNumber, sessionId);
+        if (received) {
+            complete(session);
+        }
+        return session;
+    }
+
+    @Override
+    public void abort(String sessionId) {
+        UploadSession session = find(sessionId);
+        synchronized (session) {
+            if (session.getState() == UploadSessionState.ACTIVE) {
+                abortUpload(session);
+            }
+            sessions.remove(sessionId);
+            uploadSessionStore.delete(sessionId);
+        }
+        log.info("Removed upload session={}", sessionId);
+    }
+
+    // Only the request that delivered the last missing chunk gets here
+    private void complete(UploadSession session) {
+        List<BlobPart> parts;
+        synchronized (session) {
+            parts = session.getParts().entrySet().stream()
+                    .map(part -> new BlobPart(part.getKey(), part.getValue()))
+                    .collect(Collectors.toList());
+        }
+        try {
+            s3Helper.completeMultipartUpload(session.getKey(), session.getUploadId(), parts).join();
+        } catch (CompletionException e) {
+            synchronized (session) {
+                // Back to active, so that resending any chunk retries the completion
+                session.setState(UploadSessionState.ACTIVE);
+                uploadSessionStore.save(session);
+            }
+            log.error("Exception occurred while completing session={}: {}", session.getSessionId(), e.getCause().getMessage(), e.getCause());
+            throw new DocumentException("Could not complete upload", e);
+        }
+        synchronized (session) {
+            session.setState(UploadSessionState.COMPLETED);
+            session.setUpdatedAt(Instant.now());
+            uploadSessionStore.save(session);
+        }
+        log.info("Completed upload session={} of {} in {} parts", session.getSessionId(), session.getName(), parts.size());
+    }
+
+    private void abortUpload(UploadSession session) {
+        try {
+            s3Helper.abortMultipartUpload(session.getKey(), session.getUploadId()).join();
+        } catch (CompletionException e) {
+            log.error("Exception occurred while aborting session={}: {}", session.getSessionId(), e.getCause().getMessage());
+        }
+    }
+
+    // Sessions untouched for longer than the expiry are dropped together with their received parts
+    private void purgeExpiredSessions() {
+        Instant expiry = Instant.now().minus(sessionConfig.getExpiry());
+        for (UploadSession session : sessions.values()) {
+            synchronized (session) {
+                if (session.getUpdatedAt().isAfter(expiry)) {
+                    continue;
+                }
+                if (session.getState() != UploadSessionState.COMPLETED) {
+                    abortUpload(session);
+                }
+                sessions.remove(session.getSessionId());
+                uploadSessionStore.delete(session.getSessionId());
+                log.info("Expired upload session={}", session.getSessionId());
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.redquark.hotspring.uploader.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadJobTest {
+
+    @Test
+    void countsADocumentReadTwiceInAStageOnce() {
+        UploadJob job = new UploadJob("job-1", Path.of("job-1"));
+        job.setDocuments(List.of(document("a.jpg", 100), document("b.txt", 50)));
+        job.moveTo(UploadStage.ARCHIVING);
+
+        // a.jpg is read for its checksum, then again as it is written
+        job.recordRead(0, 60);
+        job.recordRead(0, 100);
+        job.recordRead(0, 60);
+        job.recordRead(0, 100);
+        job.recordRead(1, 50);
+
+        assertThat(job.toResponse().getBytesTransferred()).isEqualTo(150).isEqualTo(job.getTotalBytes());
+    }
+
+    @Test
+    void startsOverWithEachStage() {
+        UploadJob job = new UploadJob("job-1", Path.of("job-1"));
+        job.setDocuments(List.of(document("a.jpg", 100)));
+        job.moveTo(UploadStage.UPLOADING);
+        job.recordRead(0, 100);
+
+        job.moveTo(UploadStage.ARCHIVING);
+        job.recordRead(0, 40);
+
+        assertThat(job.toResponse().getBytesTransferred()).isEqualTo(40);
+    }
+
+    private static Document document(String name, long size) {
+        return Document.builder().name(name).size(size).build();
+    }
+}
@@ -0,0 +1,95 @@
+package org.redquark.hotspring.uploader.process;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.redquark.hotspring.uploader.configs.AdmissionConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ByteBudgetTest {
+
+    private static final Duration NO_WAIT = Duration.ofMillis(10);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void roundsRequestsUpToWholeKilobytes() throws InterruptedException {
+        ByteBudget budget = budget(DataSize.ofKilobytes(8));
+
+        assertThat(budget.tryAcquire(1, NO_WAIT)).isPresent();
+        assertThat(bytesInUse()).isEqualTo(1024);
+        assertThat(budget.tryAcquire(1025, NO_WAIT)).isPresent();
+        assertThat(bytesInUse()).isEqualTo(3 * 1024);
+        // Even an empty request holds one permit while it runs
+        assertThat(budget.tryAcquire(0, NO_WAIT)).isPresent();
+        assertThat(bytesInUse()).isEqualTo(4 * 1024);
+        assertThat(budget.tryAcquire(4 * 1024, NO_WAIT)).isPresent();
+        assertThat(budget.tryAcquire(1, NO_WAIT)).isEmpty();
+    }
+
+    @Test
+    void clampsRequestsLargerThanTheBudget() throws InterruptedException {
+        ByteBudget budget = budget(DataSize.ofKilobytes(4));
+
+        Optional<ByteBudget.Lease> oversized = budget.tryAcquire(DataSize.ofGigabytes(1).toBytes(), NO_WAIT);
+
+        assertThat(oversized).isPresent();
+        assertThat(bytesInUse()).isEqualTo(4 * 1024);
+        assertThat(budget.tryAcquire(1, NO_WAIT)).isEmpty();
+        assertThat(meterRegistry.get("uploader.admission.rejected").counter().count()).isEqualTo(1);
+        oversized.get().close();
+        assertThat(budget.tryAcquire(1, NO_WAIT)).isPresent();
+    }
+
+    @Test
+    void keepsAtLeastOnePermitForABudgetBelowAKilobyte() throws InterruptedException {
+        ByteBudget budget = budget(DataSize.ofBytes(100));
+
+        assertThat(meterRegistry.get("uploader.admission.budget").gauge().value()).isEqualTo(1024);
+        assertThat(budget.tryAcquire(5000, NO_WAIT)).isPresent();
+        assertThat(budget.tryAcquire(1, NO_WAIT)).isEmpty();
+    }
+
+    @Test
+    void releasesALeaseOnlyOnce() throws InterruptedException {
+        ByteBudget budget = budget(DataSize.ofKilobytes(4));
+        ByteBudget.Lease lease = budget.tryAcquire(2 * 1024, NO_WAIT).orElseThrow();
+
+        lease.close();
+        lease.close();
+
+        assertThat(bytesInUse()).isZero();
+        // A second release would have left more permits than the budget holds
+        assertThat(budget.tryAcquire(4 * 1024, NO_WAIT)).isPresent();
+        assertThat(budget.tryAcquire(1, NO_WAIT)).isEmpty();
+    }
+
+    @Test
+    void marksDetachedLeases() throws InterruptedException {
+        ByteBudget.Lease lease = budget(DataSize.ofKilobytes(4)).tryAcquire(1, NO_WAIT).orElseThrow();
+
+        assertThat(lease.isDetached()).isFalse();
+        assertThat(lease.detach()).isSameAs(lease);
+        assertThat(lease.isDetached()).isTrue();
+    }
+
+    private ByteBudget budget(DataSize size) {
+        AdmissionConfig admissionConfig = new AdmissionConfig();
+        admissionConfig.setBudget(size);
+        DocumentUploaderConfig documentUploaderConfig = mock(DocumentUploaderConfig.class);
+        when(documentUploaderConfig.getAdmissionConfig()).thenReturn(admissionConfig);
+        return new ByteBudget(documentUploaderConfig, meterRegistry);
+    }
+
+    private double bytesInUse() {
+        return meterRegistry.get("uploader.admission.in.use").gauge().value();
+    }
+}
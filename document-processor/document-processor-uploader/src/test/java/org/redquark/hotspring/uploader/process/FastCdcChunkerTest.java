@@ -0,0 +1,128 @@
+package org.redquark.hotspring.uploader.process;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FastCdcChunkerTest {
+
+    private static final int MIN_SIZE = 2 * 1024;
+    private static final int AVERAGE_SIZE = 8 * 1024;
+    private static final int MAX_SIZE = 32 * 1024;
+
+    private final FastCdcChunker chunker = new FastCdcChunker(MIN_SIZE, AVERAGE_SIZE, MAX_SIZE);
+
+    @Test
+    void keepsChunksWithinTheMinAndMaxSize() throws IOException {
+        byte[] data = random(4 * 1024 * 1024, 1);
+
+        List<byte[]> chunks = split(data);
+
+        // Only the tail of the stream may fall short of the minimum
+        for (byte[] chunk : chunks.subList(0, chunks.size() - 1)) {
+            assertThat(chunk.length).isBetween(MIN_SIZE, MAX_SIZE);
+        }
+        assertThat(chunks.get(chunks.size() - 1).length).isBetween(1, MAX_SIZE);
+        assertThat(concat(chunks)).isEqualTo(data);
+    }
+
+    @Test
+    void centresTheChunkSizesOnTheAverage() throws IOException {
+        byte[] data = random(16 * 1024 * 1024, 2);
+
+        List<byte[]> chunks = split(data);
+
+        double mean = (double) data.length / chunks.size();
+        assertThat(mean).isBetween(AVERAGE_SIZE * 0.5, AVERAGE_SIZE * 1.5);
+    }
+
+    @Test
+    void cutsAtTheMaxSizeWhenNoBoundaryIsFound() throws IOException {
+        // Every gear lookup of a constant byte is the same, so the fingerprint settles on one value
+        byte[] data = new byte[MAX_SIZE * 3 + 100];
+        Arrays.fill(data, (byte) 7);
+
+        List<byte[]> chunks = split(data);
+
+        assertThat(chunks).extracting(chunk -> chunk.length).containsExactly(MAX_SIZE, MAX_SIZE, MAX_SIZE, 100);
+    }
+
+    @Test
+    void returnsShortInputAsOneChunk() throws IOException {
+        byte[] data = random(MIN_SIZE - 1, 3);
+
+        assertThat(split(data)).hasSize(1).first().isEqualTo(data);
+        assertThat(split(new byte[0])).isEmpty();
+    }
+
+    @Test
+    void cutsTheSameDataAtTheSamePoints() throws IOException {
+        byte[] data = random(2 * 1024 * 1024, 4);
+
+        assertThat(chunkSizes(split(data))).isEqualTo(chunkSizes(split(data.clone())));
+    }
+
+    @Test
+    void realignsAfterDataIsShifted() throws IOException {
+        byte[] data = random(4 * 1024 * 1024, 5);
+        byte[] shifted = new byte[data.length + 123];
+        System.arraycopy(random(123, 6), 0, shifted, 0, 123);
+        System.arraycopy(data, 0, shifted, 123, data.length);
+
+        List<byte[]> original = split(data);
+        List<byte[]> afterShift = split(shifted);
+
+        // A prefix only disturbs the chunks around it; the boundaries after that depend on content alone
+        List<String> originalChunks = fingerprints(original);
+        List<String> shiftedChunks = fingerprints(afterShift);
+        long shared = shiftedChunks.stream().filter(originalChunks::contains).count();
+        assertThat(shared).isGreaterThanOrEqualTo(original.size() - 3);
+        assertThat(originalChunks.subList(originalChunks.size() - 10, originalChunks.size()))
+                .isEqualTo(shiftedChunks.subList(shiftedChunks.size() - 10, shiftedChunks.size()));
+    }
+
+    @Test
+    void rejectsInconsistentSizes() {
+        assertThatThrownBy(() -> new FastCdcChunker(0, 8, 16)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new FastCdcChunker(16, 8, 32)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new FastCdcChunker(4, 64, 32)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private List<byte[]> split(byte[] data) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        chunker.split(new ByteArrayInputStream(data), (bytes, offset, length) -> chunks.add(Arrays.copyOfRange(bytes, offset, offset + length)));
+        return chunks;
+    }
+
+    private static List<Integer> chunkSizes(List<byte[]> chunks) {
+        return chunks.stream().map(chunk -> chunk.length).toList();
+    }
+
+    private static List<String> fingerprints(List<byte[]> chunks) {
+        return chunks.stream().map(chunk -> chunk.length + ":" + Arrays.hashCode(chunk)).toList();
+    }
+
+    private static byte[] concat(List<byte[]> chunks) {
+        byte[] data = new byte[chunks.stream().mapToInt(chunk -> chunk.length).sum()];
+        int offset = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, data, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return data;
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,96 @@
+package org.redquark.hotspring.uploader.process;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GcmPartEncoderTest {
+
+    private final SecretKey dataKey = dataKey();
+    private final GcmPartEncoder encoder = new GcmPartEncoder(dataKey, new SecureRandom());
+
+    @Test
+    void roundTripsMultipleParts() throws GeneralSecurityException {
+        byte[] payload = "part one|part two|part three".getBytes(StandardCharsets.UTF_8);
+        byte[][] frames = {
+                encoder.encode(1, Arrays.copyOfRange(payload, 0, 9), 9, false),
+                encoder.encode(2, Arrays.copyOfRange(payload, 9, 18), 9, false),
+                encoder.encode(3, Arrays.copyOfRange(payload, 18, payload.length), payload.length - 18, true)
+        };
+
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        for (int i = 0; i < frames.length; i++) {
+            assertThat(frames[i].length).isEqualTo((i < 2 ? 9 : payload.length - 18) + GcmPartEncoder.OVERHEAD);
+            decrypted.writeBytes(decrypt(frames[i], i + 1, i == frames.length - 1));
+        }
+        assertThat(decrypted.toByteArray()).isEqualTo(payload);
+    }
+
+    @Test
+    void usesAFreshNonceForEveryPart() {
+        byte[] data = new byte[16];
+        byte[] first = encoder.encode(1, data, data.length, false);
+        byte[] second = encoder.encode(1, data, data.length, false);
+
+        assertThat(Arrays.copyOf(first, GcmPartEncoder.NONCE_LENGTH)).isNotEqualTo(Arrays.copyOf(second, GcmPartEncoder.NONCE_LENGTH));
+    }
+
+    @Test
+    void detectsAFlippedCiphertextOrTagByte() {
+        byte[] frame = encoder.encode(1, new byte[32], 32, true);
+        byte[] flippedCiphertext = frame.clone();
+        flippedCiphertext[GcmPartEncoder.NONCE_LENGTH] ^= 1;
+        byte[] flippedTag = frame.clone();
+        flippedTag[frame.length - 1] ^= 1;
+
+        assertThatThrownBy(() -> decrypt(flippedCiphertext, 1, true)).isInstanceOf(AEADBadTagException.class);
+        assertThatThrownBy(() -> decrypt(flippedTag, 1, true)).isInstanceOf(AEADBadTagException.class);
+    }
+
+    @Test
+    void bindsThePartNumberAndTheLastFlag() {
+        byte[] frame = encoder.encode(2, new byte[32], 32, false);
+
+        // A part moved to another position, or passed off as the last one, fails authentication
+        assertThatThrownBy(() -> decrypt(frame, 1, false)).isInstanceOf(AEADBadTagException.class);
+        assertThatThrownBy(() -> decrypt(frame, 2, true)).isInstanceOf(AEADBadTagException.class);
+    }
+
+    @Test
+    void encodesAnEmptyPayloadAsOneAuthenticatedPart() throws GeneralSecurityException {
+        byte[] frame = encoder.encode(1, new byte[0], 0, true);
+
+        assertThat(frame).hasSize(GcmPartEncoder.OVERHEAD);
+        assertThat(decrypt(frame, 1, true)).isEmpty();
+    }
+
+    private byte[] decrypt(byte[] frame, int partNumber, boolean last) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, dataKey, new GCMParameterSpec(GcmPartEncoder.TAG_LENGTH * 8, frame, 0, GcmPartEncoder.NONCE_LENGTH));
+        cipher.updateAAD(ByteBuffer.allocate(Integer.BYTES + 1).putInt(partNumber).put((byte) (last ? 1 : 0)).array());
+        return cipher.doFinal(frame, GcmPartEncoder.NONCE_LENGTH, frame.length - GcmPartEncoder.NONCE_LENGTH);
+    }
+
+    private static SecretKey dataKey() {
+        try {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(256);
+            return keyGenerator.generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
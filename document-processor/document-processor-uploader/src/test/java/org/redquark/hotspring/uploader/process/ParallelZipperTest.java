@@ -0,0 +1,119 @@
+package org.redquark.hotspring.uploader.process;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.redquark.hotspring.uploader.domains.CompressionDecision;
+import org.redquark.hotspring.uploader.domains.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelZipperTest {
+
+    private static final int BLOCK_SIZE = 4 * 1024;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final ParallelZipper zipper = new ParallelZipper(pool,
+            document -> document.getName().endsWith(".jpg")
+                    ? new CompressionDecision(ZipEntry.STORED, 0, "test")
+                    : new CompressionDecision(ZipEntry.DEFLATED, 6, "test"), BLOCK_SIZE);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void inflatesBackToTheDocuments() throws IOException {
+        byte[] text = repeated(random(3000, 1), 50 * BLOCK_SIZE + 17);
+        byte[] exact = random(2 * BLOCK_SIZE, 2);
+
+        Map<String, byte[]> entries = unzip(zip(document("text.txt", text), document("exact.bin", exact), document("empty.txt", new byte[0])));
+
+        assertThat(entries).containsOnlyKeys("text.txt", "exact.bin", "empty.txt");
+        assertThat(entries.get("text.txt")).isEqualTo(text);
+        assertThat(entries.get("exact.bin")).isEqualTo(exact);
+        assertThat(entries.get("empty.txt")).isEmpty();
+    }
+
+    @Test
+    void matchesAcrossBlockBoundaries() throws IOException {
+        // Each block on its own is random, but repeats what came up to 8 KiB before it
+        byte[] data = repeated(random(2 * BLOCK_SIZE, 3), 64 * BLOCK_SIZE);
+
+        byte[] archive = zip(document("repeated.bin", data));
+
+        assertThat(unzip(archive).get("repeated.bin")).isEqualTo(data);
+        assertThat(archive.length).isLessThan(data.length / 10);
+    }
+
+    @Test
+    void readsAStoredDocumentWithinABlockOnlyOnce() throws IOException {
+        byte[] small = random(BLOCK_SIZE - 1, 4);
+        byte[] large = random(3 * BLOCK_SIZE + 5, 5);
+        AtomicInteger smallOpens = new AtomicInteger();
+        AtomicInteger largeOpens = new AtomicInteger();
+
+        Map<String, byte[]> entries = unzip(zip(countingDocument("small.jpg", small, smallOpens),
+                countingDocument("large.jpg", large, largeOpens)));
+
+        assertThat(entries.get("small.jpg")).isEqualTo(small);
+        assertThat(entries.get("large.jpg")).isEqualTo(large);
+        assertThat(smallOpens).hasValue(1);
+        // The CRC of a larger stored entry has to be known before its first block is written
+        assertThat(largeOpens).hasValue(2);
+    }
+
+    private byte[] zip(Document... documents) throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        zipper.zip(List.of(documents), archive);
+        return archive.toByteArray();
+    }
+
+    private static Map<String, byte[]> unzip(byte[] archive) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zipStream = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zipStream.getNextEntry()) != null) {
+                entries.put(entry.getName(), zipStream.readAllBytes());
+            }
+        }
+        return entries;
+    }
+
+    private static Document document(String name, byte[] contents) {
+        return Document.builder().name(name).contents(contents).size(contents.length).build();
+    }
+
+    private static Document countingDocument(String name, byte[] contents, AtomicInteger opens) {
+        return Document.builder().name(name).size(contents.length).source(() -> {
+            opens.incrementAndGet();
+            return new ByteArrayInputStream(contents);
+        }).build();
+    }
+
+    private static byte[] repeated(byte[] pattern, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = pattern[i % pattern.length];
+        }
+        return data;
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,181 @@
+package org.redquark.hotspring.uploader.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redquark.hotspring.commons.executors.ExecutorRegistry;
+import org.redquark.hotspring.uploader.configs.ArchiveConfig;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.domains.ArchiveEntry;
+import org.redquark.hotspring.uploader.domains.ArchiveFormat;
+import org.redquark.hotspring.uploader.domains.ArchiveShard;
+import org.redquark.hotspring.uploader.domains.Document;
+import org.redquark.hotspring.uploader.domains.ShardManifest;
+import org.redquark.hotspring.uploader.domains.UploadNamespace;
+import org.redquark.hotspring.uploader.exceptions.DocumentException;
+import org.redquark.hotspring.uploader.process.ArchiveEncoder;
+import org.redquark.hotspring.uploader.process.DocumentDeduplicator;
+import org.redquark.hotspring.uploader.process.EncryptionStage;
+import org.redquark.hotspring.uploader.process.S3Helper;
+import org.redquark.hotspring.uploader.process.S3MultipartOutputStream;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DocumentServiceImplTest {
+
+    private static final String SHARD_MANIFEST = "archived.shards.json";
+    private static final String FAILING_DOCUMENT = "failing";
+
+    private final S3Helper s3Helper = mock(S3Helper.class);
+    private final ArchiveEncoder archiveEncoder = mock(ArchiveEncoder.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService shardPool = Executors.newFixedThreadPool(2);
+    // Names of the documents written to every archive key, and the metadata of that key
+    private final Map<String, List<String>> archives = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> archiveMetadata = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> uploads = new ConcurrentHashMap<>();
+    private final List<String> deletions = Collections.synchronizedList(new ArrayList<>());
+    private final UploadNamespace namespace = new UploadNamespace("session-1");
+    private DocumentServiceImpl documentService;
+
+    @BeforeEach
+    void setUp() {
+        ArchiveConfig archiveConfig = new ArchiveConfig();
+        archiveConfig.setFormat(ArchiveFormat.ZIP);
+        archiveConfig.setShardMaxSize(DataSize.ofBytes(100));
+        archiveConfig.setShardMaxEntries(3);
+        DocumentUploaderConfig documentUploaderConfig = mock(DocumentUploaderConfig.class);
+        when(documentUploaderConfig.getArchiveConfig()).thenReturn(archiveConfig);
+        ExecutorRegistry executorRegistry = mock(ExecutorRegistry.class);
+        when(executorRegistry.get("archive-shard")).thenReturn(shardPool);
+
+        when(archiveEncoder.getFormat()).thenReturn(ArchiveFormat.ZIP);
+        // Shards are archived on the pool, so every stream is traced back to its key instead of stubbed on its own
+        Map<OutputStream, String> streamKeys = new ConcurrentHashMap<>();
+        when(s3Helper.openMultipartStream(anyString(), anyMap(), any())).thenAnswer(invocation -> {
+            String key = invocation.getArgument(0);
+            archiveMetadata.put(key, invocation.getArgument(1));
+            S3MultipartOutputStream archiveStream = mock(S3MultipartOutputStream.class);
+            streamKeys.put(archiveStream, key);
+            return archiveStream;
+        });
+        when(archiveEncoder.archive(any(), any())).thenAnswer(invocation -> {
+            List<Document> documents = invocation.getArgument(0);
+            if (documents.stream().anyMatch(document -> document.getName().equals(FAILING_DOCUMENT))) {
+                throw new DocumentException("Could not archive " + FAILING_DOCUMENT, new IOException("broken"));
+            }
+            archives.put(streamKeys.get(invocation.<OutputStream>getArgument(1)), documents.stream().map(Document::getName).toList());
+            return documents.stream().map(document -> new ArchiveEntry(document.getName(), null)).toList();
+        });
+        doAnswer(invocation -> uploads.put(invocation.getArgument(0), invocation.getArgument(2)))
+                .when(s3Helper).upload(anyString(), anyMap(), any(byte[].class));
+        when(s3Helper.delete(anyList())).thenAnswer(invocation -> {
+            deletions.addAll(invocation.getArgument(0));
+            return List.of();
+        });
+
+        documentService = new DocumentServiceImpl(documentUploaderConfig, List.of(archiveEncoder), mock(EncryptionStage.class),
+                mock(DocumentDeduplicator.class), s3Helper, objectMapper, executorRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shardPool.shutdownNow();
+    }
+
+    @Test
+    void splitsOnTheByteAndTheEntryBudget() throws IOException {
+        // 40 + 40 fit into 100 bytes, a third 40 does not; three entries fill the next shard
+        upload(40, 40, 40, 10, 10, 10);
+
+        assertThat(archives).containsOnly(
+                Map.entry(key("archived-0001.zip"), List.of("doc-0", "doc-1")),
+                Map.entry(key("archived-0002.zip"), List.of("doc-2", "doc-3", "doc-4")),
+                Map.entry(key("archived-0003.zip"), List.of("doc-5")));
+        assertThat(archiveMetadata.get(key("archived-0002.zip"))).containsEntry("archive-shard", "2/3");
+        ShardManifest manifest = objectMapper.readValue(uploads.get(key(SHARD_MANIFEST)), ShardManifest.class);
+        assertThat(manifest.getSessionId()).isEqualTo("session-1");
+        assertThat(manifest.getShards()).containsExactly(
+                new ArchiveShard(key("archived-0001.zip"), 2, 80),
+                new ArchiveShard(key("archived-0002.zip"), 3, 60),
+                new ArchiveShard(key("archived-0003.zip"), 1, 10));
+    }
+
+    @Test
+    void givesADocumentLargerThanTheBudgetAShardOfItsOwn() {
+        upload(10, 500, 10);
+
+        assertThat(archives).containsOnly(
+                Map.entry(key("archived-0001.zip"), List.of("doc-0")),
+                Map.entry(key("archived-0002.zip"), List.of("doc-1")),
+                Map.entry(key("archived-0003.zip"), List.of("doc-2")));
+    }
+
+    @Test
+    void keepsASingleShardUnderTheArchiveName() {
+        upload(30, 30, 40);
+
+        assertThat(archives).containsOnly(Map.entry(key("archived.zip"), List.of("doc-0", "doc-1", "doc-2")));
+        assertThat(archiveMetadata.get(key("archived.zip"))).doesNotContainKey("archive-shard");
+        assertThat(uploads).containsKey(key("archived.zip.manifest.json")).doesNotContainKey(key(SHARD_MANIFEST));
+    }
+
+    @Test
+    void deletesTheCompletedShardsWhenOneFails() throws InterruptedException {
+        List<Document> documents = documents(40, 40, 40, 40, 40, 40);
+        documents.set(2, Document.builder().name(FAILING_DOCUMENT).contents(new byte[40]).size(40).build());
+
+        assertThatThrownBy(() -> documentService.upload(namespace, documents, stage -> {
+        })).isInstanceOf(DocumentException.class);
+        // Shards still running when the upload failed delete themselves once they complete
+        shardPool.shutdown();
+        assertThat(shardPool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(archives).isNotEmpty();
+        List<String> archivedKeys = new ArrayList<>();
+        archives.keySet().forEach(archiveKey -> {
+            archivedKeys.add(archiveKey);
+            archivedKeys.add(archiveKey + ".manifest.json");
+        });
+        assertThat(deletions).containsExactlyInAnyOrderElementsOf(archivedKeys);
+        assertThat(uploads).doesNotContainKey(key(SHARD_MANIFEST));
+    }
+
+    private void upload(long... sizes) {
+        documentService.upload(namespace, documents(sizes), stage -> {
+        });
+    }
+
+    private static List<Document> documents(long... sizes) {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            documents.add(Document.builder().name("doc-" + i).contents(new byte[(int) sizes[i]]).size(sizes[i]).build());
+        }
+        return documents;
+    }
+
+    private String key(String name) {
+        return namespace.key(name);
+    }
+}
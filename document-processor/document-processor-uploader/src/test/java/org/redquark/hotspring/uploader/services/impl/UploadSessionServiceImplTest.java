@@ -0,0 +1,152 @@
+package org.redquark.hotspring.uploader.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.redquark.hotspring.commons.domains.BlobPart;
+import org.redquark.hotspring.commons.domains.TransferDirection;
+import org.redquark.hotspring.commons.domains.TransferPlan;
+import org.redquark.hotspring.uploader.configs.DocumentUploaderConfig;
+import org.redquark.hotspring.uploader.configs.SessionConfig;
+import org.redquark.hotspring.uploader.domains.UploadSession;
+import org.redquark.hotspring.uploader.domains.UploadSessionState;
+import org.redquark.hotspring.uploader.exceptions.InvalidChunkException;
+import org.redquark.hotspring.uploader.process.S3Helper;
+import org.redquark.hotspring.uploader.process.ScratchSpace;
+import org.redquark.hotspring.uploader.process.UploadSessionStore;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UploadSessionServiceImplTest {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final long LENGTH = 2 * CHUNK_SIZE + 100;
+
+    @TempDir
+    Path sessionDirectory;
+
+    private final S3Helper s3Helper = mock(S3Helper.class);
+    private final DocumentUploaderConfig documentUploaderConfig = mock(DocumentUploaderConfig.class);
+    private UploadSessionStore uploadSessionStore;
+
+    @BeforeEach
+    void setUp() {
+        SessionConfig sessionConfig = new SessionConfig();
+        sessionConfig.setExpiry(Duration.ofHours(24));
+        when(documentUploaderConfig.getSessionConfig()).thenReturn(sessionConfig);
+        ScratchSpace scratchSpace = mock(ScratchSpace.class);
+        when(scratchSpace.getSessionDirectory()).thenReturn(sessionDirectory);
+        uploadSessionStore = new UploadSessionStore(scratchSpace, new ObjectMapper().findAndRegisterModules());
+
+        when(s3Helper.planUpload(anyLong())).thenAnswer(invocation -> new TransferPlan(TransferDirection.UPLOAD,
+                invocation.getArgument(0), true, CHUNK_SIZE, 3, 1, 0));
+        when(s3Helper.createMultipartUpload(anyString(), anyMap())).thenReturn(CompletableFuture.completedFuture("upload-1"));
+        when(s3Helper.uploadPart(anyString(), eq("upload-1"), anyInt(), any(ByteBuffer.class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture("etag-" + invocation.getArgument(2)));
+        when(s3Helper.completeMultipartUpload(anyString(), eq("upload-1"), any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    void resumesASessionAtThePartOffsetAfterARestart() {
+        UploadSessionServiceImpl service = startService();
+        UploadSession created = service.create("report.pdf", LENGTH);
+        service.uploadChunk(created.getSessionId(), 0, CHUNK_SIZE, chunk(CHUNK_SIZE));
+
+        // A new instance only knows what the store kept
+        UploadSessionServiceImpl restarted = startService();
+        UploadSession resumed = restarted.find(created.getSessionId());
+
+        assertThat(resumed.getOffset()).isEqualTo(CHUNK_SIZE);
+        assertThat(resumed.toResponse().getMissingOffsets()).containsExactly((long) CHUNK_SIZE, 2L * CHUNK_SIZE);
+        verify(s3Helper).abortStaleUploads(any(), eq(Set.of("upload-1")));
+
+        restarted.uploadChunk(created.getSessionId(), CHUNK_SIZE, CHUNK_SIZE, chunk(CHUNK_SIZE));
+        UploadSession completed = restarted.uploadChunk(created.getSessionId(), 2L * CHUNK_SIZE, 100, chunk(100));
+
+        assertThat(completed.getState()).isEqualTo(UploadSessionState.COMPLETED);
+        assertThat(completed.getOffset()).isEqualTo(LENGTH);
+        verify(s3Helper).uploadPart(eq(created.getKey()), eq("upload-1"), eq(2), any(ByteBuffer.class));
+        verify(s3Helper).uploadPart(eq(created.getKey()), eq("upload-1"), eq(3), any(ByteBuffer.class));
+        assertThat(completedParts()).containsExactly(new BlobPart(1, "etag-1"), new BlobPart(2, "etag-2"), new BlobPart(3, "etag-3"));
+    }
+
+    @Test
+    void keepsTheOffsetAtTheFirstGapWhenChunksArriveOutOfOrder() {
+        UploadSessionServiceImpl service = startService();
+        UploadSession session = service.create("report.pdf", LENGTH);
+
+        service.uploadChunk(session.getSessionId(), 2L * CHUNK_SIZE, 100, chunk(100));
+
+        assertThat(session.getOffset()).isZero();
+        assertThat(session.toResponse().getMissingOffsets()).containsExactly(0L, (long) CHUNK_SIZE);
+        verify(s3Helper, never()).completeMultipartUpload(anyString(), anyString(), any());
+    }
+
+    @Test
+    void retriesTheCompletionWhenAChunkIsResentAfterARestartMidCompletion() {
+        UploadSessionServiceImpl service = startService();
+        UploadSession session = service.create("report.pdf", LENGTH);
+        service.uploadChunk(session.getSessionId(), 0, CHUNK_SIZE, chunk(CHUNK_SIZE));
+        service.uploadChunk(session.getSessionId(), CHUNK_SIZE, CHUNK_SIZE, chunk(CHUNK_SIZE));
+        service.uploadChunk(session.getSessionId(), 2L * CHUNK_SIZE, 100, chunk(100));
+        // The store is left as a restart during the completion would leave it
+        session.setState(UploadSessionState.COMPLETING);
+        uploadSessionStore.save(session);
+
+        UploadSessionServiceImpl restarted = startService();
+        UploadSession resumed = restarted.uploadChunk(session.getSessionId(), 2L * CHUNK_SIZE, 100, chunk(100));
+
+        assertThat(resumed.getState()).isEqualTo(UploadSessionState.COMPLETED);
+    }
+
+    @Test
+    void rejectsOffsetsThatDoNotStartAChunk() {
+        UploadSessionServiceImpl service = startService();
+        UploadSession session = service.create("report.pdf", LENGTH);
+
+        assertThatThrownBy(() -> service.uploadChunk(session.getSessionId(), 100, CHUNK_SIZE, chunk(CHUNK_SIZE)))
+                .isInstanceOf(InvalidChunkException.class);
+        assertThatThrownBy(() -> service.uploadChunk(session.getSessionId(), LENGTH + CHUNK_SIZE, CHUNK_SIZE, chunk(CHUNK_SIZE)))
+                .isInstanceOf(InvalidChunkException.class);
+        assertThatThrownBy(() -> service.uploadChunk(session.getSessionId(), 2L * CHUNK_SIZE, CHUNK_SIZE, chunk(CHUNK_SIZE)))
+                .isInstanceOf(InvalidChunkException.class);
+    }
+
+    private UploadSessionServiceImpl startService() {
+        UploadSessionServiceImpl service = new UploadSessionServiceImpl(s3Helper, uploadSessionStore, documentUploaderConfig);
+        service.init();
+        return service;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<BlobPart> completedParts() {
+        ArgumentCaptor<List<BlobPart>> parts = ArgumentCaptor.forClass(List.class);
+        verify(s3Helper).completeMultipartUpload(anyString(), eq("upload-1"), parts.capture());
+        return parts.getValue();
+    }
+
+    private static ByteArrayInputStream chunk(int length) {
+        return new ByteArrayInputStream(new byte[length]);
+    }
+}